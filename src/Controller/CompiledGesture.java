@@ -0,0 +1,340 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A gesture lowered into flat primitive arrays for matching. The sequence of a
+ * {@link GestureController} is a Vector of Vectors of {@link JointRelation}s
+ * linked together with {@link Pair}s, which is convenient for building a
+ * gesture but slow to walk every frame. Compiling a gesture numbers every
+ * relation in step order (step 0 phase 0, step 0 phase 1, step 1 phase 0, ...)
+ * and stores everything the matcher needs in arrays indexed by that number.
+ * <p>
+ * The holding bounds used to detect a user moving between two steps are widened by
+ * {@link Euclidean#Epsilon} when the gesture is compiled, so a compiled
+ * gesture is only valid for the Epsilon it was compiled with, see
+ * {@link #isCurrent()}.
+ *
+ * @see GestureController#compile()
+ * @author Levi Lindsley
+ *
+ */
+class CompiledGesture implements StepEvaluator{
+	/**Result of a step that failed, the gesture should be reset*/
+	static final int FAIL = 0;
+	/**Result of a step that matched, the gesture should advance*/
+	static final int MATCH = 1;
+	/**Result of a step that is in a holding pattern*/
+	static final int HOLD = 2;
+
+	/**Number of steps*/
+	final int steps;
+
+	/**Index of the first relation of each step, stepStart[steps] is the number of relations*/
+	final int stepStart[];
+
+	/**First joint of each relation*/
+	final int first[];
+
+	/**Second joint of each relation*/
+	final int second[];
+
+	/**Number of values held by each relation, 3 per Euclidean in the angle list*/
+	final int width[];
+
+	/**Values of relation r start at r*stride*/
+	final int stride;
+
+	/**Value of each relation*/
+	final double target[];
+
+	/**Index of the previous relation of the same joint pair, -1 if there is none*/
+	final int prev[];
+
+	/**Lower bound of the holding interval between a relation and its previous*/
+	final double holdLo[];
+
+	/**Upper bound of the holding interval between a relation and its previous*/
+	final double holdHi[];
+
+	/**Lower bound of the holding interval between the previous relation and the one before it*/
+	final double backLo[];
+
+	/**Upper bound of the holding interval between the previous relation and the one before it*/
+	final double backHi[];
+
+	/**Marks relations that have a second holding interval in backLo/backHi*/
+	final boolean back[];
+
+	/**Value of Epsilon the holding intervals were widened by*/
+	final double epsilon;
+
+	/**
+	 * Lowers sequence into flat arrays.
+	 * @param sequence - Steps of the gesture, the prev link of each relation
+	 * must point at a relation in sequence
+	 */
+	CompiledGesture(Vector<Vector<JointRelation>> sequence){
+		steps = sequence.size();
+		stepStart = new int[steps+1];
+		int count = 0;
+		int maxWidth = 0;
+		for (int i=0;i<steps;i++){
+			stepStart[i] = count;
+			for (JointRelation jR : sequence.get(i)){
+				maxWidth = Math.max(maxWidth, jR.angle.size()*3);
+			}
+			count += sequence.get(i).size();
+		}
+		stepStart[steps] = count;
+		stride = maxWidth;
+
+		first = new int[count];
+		second = new int[count];
+		width = new int[count];
+		prev = new int[count];
+		target = new double[count*stride];
+		holdLo = new double[count*stride];
+		holdHi = new double[count*stride];
+		backLo = new double[count*stride];
+		backHi = new double[count*stride];
+		back = new boolean[count];
+		epsilon = Euclidean.epsilon();
+
+		//flatten the joints, values and links
+		int r = 0;
+		for (int i=0;i<steps;i++){
+			for (JointRelation jR : sequence.get(i)){
+				first[r] = jR.J.First;
+				second[r] = jR.J.Second;
+				width[r] = jR.angle.size()*3;
+				for (int a=0;a<jR.angle.size();a++){
+					Euclidean e = jR.angle.get(a);
+					target[r*stride+a*3] = e.x;
+					target[r*stride+a*3+1] = e.y;
+					target[r*stride+a*3+2] = e.z;
+				}
+				prev[r] = jR.prev == null ? -1 : stepStart[jR.prev.First]+jR.prev.Second;
+				r++;
+			}
+		}
+
+		bound();
+	}
+	/**
+	 * Builds a gesture from arrays already in compiled form, the arrays are
+	 * held rather than copied and the holding intervals are computed for the
+	 * current Epsilon.
+	 * @param stepStart - Index of the first relation of each step followed by
+	 * the number of relations
+	 * @param first - First joint of each relation
+	 * @param second - Second joint of each relation
+	 * @param width - Number of values of each relation
+	 * @param prev - Previous relation of the same joint pair, -1 if none
+	 * @param target - Values of each relation, relation r starts at r*stride
+	 * @param stride - Values held for each relation
+	 */
+	CompiledGesture(int stepStart[], int first[], int second[], int width[], int prev[], double target[], int stride){
+		steps = stepStart.length-1;
+		int count = stepStart[steps];
+		this.stepStart = stepStart;
+		this.first = first;
+		this.second = second;
+		this.width = width;
+		this.prev = prev;
+		this.target = target;
+		this.stride = stride;
+		holdLo = new double[count*stride];
+		holdHi = new double[count*stride];
+		backLo = new double[count*stride];
+		backHi = new double[count*stride];
+		back = new boolean[count];
+		epsilon = Euclidean.epsilon();
+		bound();
+	}
+	/**
+	 * Precomputes the holding intervals once every value is known.
+	 */
+	private void bound(){
+		for (int r=0;r<size();r++){
+			int p = prev[r];
+			if (p < 0)
+				continue;
+			bound(r, p, holdLo, holdHi, r*stride);
+			if (prev[p] >= 0){
+				back[r] = true;
+				bound(p, prev[p], backLo, backHi, r*stride);
+			}
+		}
+	}
+	/**
+	 * Fills lo and hi at offset with the interval between relations a and b
+	 * widened by half of Epsilon on each side, as done by
+	 * {@link Euclidean#isBoundedBy(Euclidean, Euclidean)}.
+	 */
+	private void bound(int a, int b, double lo[], double hi[], int offset){
+		for (int k=0;k<width[a];k++){
+			double ub = target[b*stride+k];
+			double lb = target[a*stride+k];
+			if (Double.compare(ub, lb) < 0){
+				double tmp = ub;
+				ub = lb;
+				lb = tmp;
+			}
+			hi[offset+k] = ub+(epsilon*.5);
+			lo[offset+k] = lb-(epsilon*.5);
+		}
+	}
+	/**
+	 * @return
+	 * 		True if this was compiled with the current value of Epsilon
+	 */
+	boolean isCurrent(){
+		return epsilon == Euclidean.epsilon();
+	}
+	/**
+	 * @return
+	 * 		Size of the scratch buffer needed by {@link #evaluate}
+	 */
+	int bufferSize(){
+		return Math.max(stride, JointRelation.width());
+	}
+	@Override
+	public int steps(){
+		return steps;
+	}
+	/**
+	 * @param step - Step of the gesture
+	 * @return
+	 * 		Number of phases in step
+	 */
+	int phases(int step){
+		return stepStart[step+1]-stepStart[step];
+	}
+	/**
+	 * Checks all phases of step against frame.
+	 *
+	 * @param frame - Snapshot of the user
+	 * @param step - Step to check
+	 * @param buf - Scratch space of at least {@link #bufferSize()} values
+	 * @return
+	 * 		{@link #MATCH} if every phase matched.
+	 * <p> {@link #HOLD} if no phase failed but at least one is holding.
+	 * <p> {@link #FAIL} if any phase failed or the user is not tracked.
+	 */
+	@Override
+	public int evaluate(SkeletonFrame frame, int step, double buf[]){
+		if (!frame.isTracked())
+			return FAIL;
+
+		int result = MATCH;
+		for (int r=stepStart[step];r<stepStart[step+1];r++){
+			int n = relate(frame, r, buf);
+			if (n < 0)
+				return FAIL;
+
+			if (matches(r, buf))
+				continue;
+
+			if (holds(r, buf, n)){
+				result = HOLD;
+				continue;
+			}
+			return FAIL;
+		}
+		return result;
+	}
+	/**
+	 * Computes the relation between the joints of relation r as they are
+	 * in frame and places the values into buf, nothing is allocated.
+	 * @return
+	 * 		Number of values placed into buf, -1 if a joint is missing
+	 */
+	int relate(SkeletonFrame frame, int r, double buf[]){
+		if (!frame.has(first[r]) || !frame.has(second[r]))
+			return -1;
+
+		return JointRelation.relate(frame.x(first[r]), frame.y(first[r]), frame.z(first[r]), 
+				frame.x(second[r]), frame.y(second[r]), frame.z(second[r]), buf, 0);
+	}
+	/**
+	 * Same check as {@link JointRelation#equalsCoordinates(JointRelation)}
+	 * with relation r as the target.
+	 */
+	boolean matches(int r, double val[]){
+		int base = r*stride;
+		for (int k=0;k<width[r];k++){
+			//bounds are taken around val as done by Euclidean.isAbout()
+			double t = target[base+k];
+			if (!(Double.compare(val[k]+epsilon, t) >= 0 && Double.compare(val[k]-epsilon, t) <= 0))
+				return false;
+		}
+		return true;
+	}
+	/**
+	 * Checks to see if val falls between relation r and the previous relation of
+	 * the same joint pair. This is used to check if a gesture may have paused but
+	 * not terminated such as the user is moving slow so they haven't made it to
+	 * the next step but did not do anything wrong yet, the controller just needs
+	 * to wait on the user to finish the gesture.
+	 * @param n - Number of values in val
+	 */
+	boolean holds(int r, double val[], int n){
+		//First step of joint type, there is no middle ground on the start
+		if (prev[r] < 0)
+			return false;
+
+		int base = r*stride;
+		n = Math.min(n, width[r]);
+		if (within(holdLo, holdHi, base, val, n))
+			return true;
+
+		//check if current position is between the previous point and the one before that,
+		//this is possible in a continuous gesture due to epsilon jumping ahead
+		return back[r] && within(backLo, backHi, base, val, n);
+	}
+	/**
+	 * @return
+	 * 		True if lo <= val <= hi for the first n values
+	 */
+	private static boolean within(double lo[], double hi[], int base, double val[], int n){
+		for (int k=0;k<n;k++){
+			if (!(Double.compare(lo[base+k], val[k]) <= 0 && Double.compare(val[k], hi[base+k]) <= 0))
+				return false;
+		}
+		return true;
+	}
+	/**
+	 * @return
+	 * 		Number of relations in the gesture
+	 */
+	int size(){
+		return stepStart[steps];
+	}
+	/**
+	 * Rebuilds the sequence this was compiled from.
+	 * @return
+	 * 		Steps of the gesture with the prev link of each relation set
+	 */
+	Vector<Vector<JointRelation>> expand(){
+		Vector<Vector<JointRelation>> sequence = new Vector<Vector<JointRelation>>();
+		int stepOf[] = new int[size()];
+		for (int i=0;i<steps;i++){
+			Vector<JointRelation> step = new Vector<JointRelation>();
+			for (int r=stepStart[i];r<stepStart[i+1];r++){
+				stepOf[r] = i;
+				List<Euclidean> angle = new ArrayList<Euclidean>();
+				for (int k=0;k<width[r];k+=3){
+					angle.add(new Euclidean(target[r*stride+k], target[r*stride+k+1], target[r*stride+k+2]));
+				}
+				int p = prev[r];
+				Pair link = p < 0 ? null : new Pair(stepOf[p], p-stepStart[stepOf[p]]);
+				step.add(JointRelation.of(new Pair(first[r], second[r]), angle, link));
+			}
+			sequence.add(step);
+		}
+		return sequence;
+	}
+}
@@ -0,0 +1,410 @@
+package controller;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import controller.xmlGestureParser.xmlStatics;
+
+/**
+ * Log of gesture completions written by a background thread so recognizing a
+ * gesture never waits on the disk. A completion is placed into a bounded
+ * queue that does not lock, the writer thread takes completions from the
+ * queue in batches and flushes once per batch.
+ * <p>
+ * The log is xml, each completion is written as
+ * <pre>
+ * {@literal <gestureCompletion>}
+ * {@literal <name>} gesture name {@literal </name>}
+ * {@literal <user>} user id {@literal </user>}
+ * {@literal <frame>} frame or tick the gesture completed at {@literal </frame>}
+ * {@literal <time>} System.currentTimeMillis() at completion {@literal </time>}
+ * {@literal <latency>} nanoseconds from capture of the frame to completion, -1 if unknown {@literal </latency>}
+ * {@literal </gestureCompletion>}
+ * </pre>
+ * inside a single {@literal <root>} element that is closed by
+ * {@link #close()}. When rotation is set the file is closed and renamed once
+ * it grows past the limit, logFile becomes logFile.1, logFile.1 becomes
+ * logFile.2 and so on, and a new logFile is started.
+ *
+ * @see GestureController#enableLog(CompletionLog)
+ * @author Levi Lindsley
+ *
+ */
+public class CompletionLog {
+	/**
+	 * What to do with a completion when the queue is full.
+	 *
+	 * @author Levi Lindsley
+	 *
+	 */
+	public enum Overflow{
+		/**The new completion is dropped and counted*/
+		DROP_NEWEST,
+		/**The oldest completion in the queue is dropped and counted to make room*/
+		DROP_OLDEST,
+		/**The completing thread waits for room, this stalls recognition while
+		 * the writer catches up*/
+		BLOCK
+	}
+
+	/**Default number of completions the queue holds*/
+	public static final int DEFAULT_CAPACITY = 1<<12;
+
+	/**Default most completions written between flushes*/
+	public static final int DEFAULT_BATCH = 256;
+
+	/**Default milliseconds the writer sleeps when the queue is empty*/
+	public static final int DEFAULT_INTERVAL = 50;
+
+	/**
+	 * A completion, the queue holds one per slot and reuses them so placing a
+	 * completion allocates nothing.
+	 */
+	private static class Record {
+		String name;
+		int user;
+		long frame;
+		long time;
+		long latency;
+
+		void set(String n, int u, long f, long t, long l){
+			name = n;
+			user = u;
+			frame = f;
+			time = t;
+			latency = l;
+		}
+	}
+
+	/**File being written*/
+	private String logFile;
+
+	/**Records of the queue*/
+	private Record slots[];
+
+	/**
+	 * Turn of each slot. A slot at position pos may be filled when its turn is
+	 * pos and read when its turn is pos+1, reading sets it to pos+capacity.
+	 */
+	private AtomicLongArray turn;
+
+	/**capacity-1, the capacity is a power of two*/
+	private int mask;
+
+	/**Position the next completion is placed at*/
+	private AtomicLong tail = new AtomicLong();
+
+	/**Position the next completion is taken from*/
+	private AtomicLong head = new AtomicLong();
+
+	private volatile Overflow overflow = Overflow.DROP_NEWEST;
+	private volatile int batch = DEFAULT_BATCH;
+	private volatile long interval = DEFAULT_INTERVAL*1000000L;
+
+	/**Bytes a file may grow to before it is rotated, 0 to never rotate*/
+	private volatile long rotateBytes = 0;
+
+	/**Number of rotated files kept*/
+	private volatile int keep = 5;
+
+	/**Completions dropped because the queue was full*/
+	private AtomicLong dropped = new AtomicLong();
+
+	/**Completions written*/
+	private volatile long written;
+
+	/**Set once {@link #close()} is called*/
+	private volatile boolean closed;
+
+	/**First error of the writer, the writer stops at an error*/
+	private volatile IOException error;
+
+	private FileOutputStream file;
+	private Writer out;
+	private Thread writer;
+
+	/**
+	 * Opens logFile with a queue of {@link #DEFAULT_CAPACITY} completions.
+	 * @param logFile - File to write, replaced if it exists
+	 * @throws IOException
+	 * 		If the file can not be opened
+	 */
+	public CompletionLog(String logFile) throws IOException{
+		this(logFile, DEFAULT_CAPACITY);
+	}
+	/**
+	 * Opens logFile and starts the writer thread.
+	 * @param logFile - File to write, replaced if it exists
+	 * @param capacity - Completions the queue holds, rounded up to a power of two
+	 * @throws IOException
+	 * 		If the file can not be opened
+	 */
+	public CompletionLog(String logFile, int capacity) throws IOException{
+		this.logFile = logFile;
+		int n = Integer.highestOneBit(Math.max(2, capacity)-1)<<1;
+		slots = new Record[n];
+		turn = new AtomicLongArray(n);
+		for (int i=0;i<n;i++){
+			slots[i] = new Record();
+			turn.set(i, i);
+		}
+		mask = n-1;
+		open();
+
+		writer = new Thread(new Runnable(){
+			public void run(){
+				drain();
+			}
+		}, "CompletionLog "+logFile);
+		writer.setDaemon(true);
+		writer.start();
+	}
+	/**
+	 * Sets what is done with a completion when the queue is full, defaults to
+	 * {@link Overflow#DROP_NEWEST}.
+	 */
+	public void setOverflow(Overflow o){
+		overflow = o;
+	}
+	public Overflow getOverflow(){
+		return overflow;
+	}
+	/**
+	 * Sets the most completions written between flushes.
+	 */
+	public void setBatch(int b){
+		batch = Math.max(1, b);
+	}
+	/**
+	 * Sets the milliseconds the writer sleeps when there is nothing to write,
+	 * this bounds how long a completion may wait in the queue.
+	 */
+	public void setInterval(int ms){
+		interval = Math.max(1, ms)*1000000L;
+	}
+	/**
+	 * Rotates the file once it grows past bytes.
+	 * @param bytes - Size a file may grow to, 0 to never rotate
+	 * @param files - Number of rotated files kept, older ones are deleted
+	 */
+	public void setRotation(long bytes, int files){
+		keep = Math.max(1, files);
+		rotateBytes = Math.max(0, bytes);
+	}
+	/**
+	 * @return
+	 * 		Number of completions dropped because the queue was full
+	 */
+	public long getDropped(){
+		return dropped.get();
+	}
+	/**
+	 * @return
+	 * 		Number of completions written and flushed
+	 */
+	public long getWritten(){
+		return written;
+	}
+	/**
+	 * Places a completion into the queue, nothing is written by the calling
+	 * thread.
+	 * @param name - Name of the gesture
+	 * @param user - User that completed the gesture
+	 * @param frame - Frame or tick the gesture completed at
+	 * @param captured - System.nanoTime() when the frame was captured, 0 if unknown
+	 * @return
+	 * 		True if the completion was queued.
+	 * <p> False if it was dropped or the log is closed.
+	 */
+	public boolean add(String name, int user, long frame, long captured){
+		if (closed)
+			return false;
+		long time = System.currentTimeMillis();
+		long latency = captured == 0 ? -1 : System.nanoTime()-captured;
+		while (!offer(name, user, frame, time, latency)){
+			switch (overflow){
+			case DROP_OLDEST:
+				if (poll(null))
+					dropped.incrementAndGet();
+				break;
+			case BLOCK:
+				if (closed || error != null)
+					return false;
+				LockSupport.parkNanos(100000);
+				break;
+			default:
+				dropped.incrementAndGet();
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * Places a completion into the next free slot.
+	 * @return
+	 * 		False if the queue is full
+	 */
+	private boolean offer(String name, int user, long frame, long time, long latency){
+		long pos = tail.get();
+		while (true){
+			int i = (int)(pos & mask);
+			long d = turn.get(i)-pos;
+			if (d == 0){
+				if (tail.compareAndSet(pos, pos+1)){
+					slots[i].set(name, user, frame, time, latency);
+					turn.lazySet(i, pos+1);
+					return true;
+				}
+				pos = tail.get();
+			}
+			else if (d < 0)
+				return false;
+			else
+				pos = tail.get();
+		}
+	}
+	/**
+	 * Takes the oldest completion from the queue.
+	 * @param dst - Record to copy the completion into, null to discard it
+	 * @return
+	 * 		False if the queue is empty
+	 */
+	private boolean poll(Record dst){
+		long pos = head.get();
+		while (true){
+			int i = (int)(pos & mask);
+			long d = turn.get(i)-(pos+1);
+			if (d == 0){
+				if (head.compareAndSet(pos, pos+1)){
+					Record r = slots[i];
+					if (dst != null)
+						dst.set(r.name, r.user, r.frame, r.time, r.latency);
+					r.name = null;
+					turn.lazySet(i, pos+mask+1);
+					return true;
+				}
+				pos = head.get();
+			}
+			else if (d < 0)
+				return false;
+			else
+				pos = head.get();
+		}
+	}
+	/**
+	 * Run by the writer thread, writes completions until the log is closed
+	 * and the queue is empty.
+	 */
+	private void drain(){
+		Record r = new Record();
+		try {
+			while (true){
+				boolean closing = closed;
+				int n = 0;
+				int b = batch;
+				while (n < b && poll(r)){
+					write(r);
+					n++;
+				}
+				if (n > 0){
+					//group commit, one flush for the whole batch
+					out.flush();
+					written += n;
+					long limit = rotateBytes;
+					if (limit > 0 && file.getChannel().position() >= limit)
+						rotate();
+					continue;
+				}
+				if (closing)
+					break;
+				LockSupport.parkNanos(this, interval);
+			}
+			finish();
+		} catch (IOException e) {
+			error = e;
+			System.err.println(e.getLocalizedMessage());
+			System.err.println("Completion log "+logFile+" failed, logging stopped");
+			closed = true;
+			try {
+				out.close();
+			} catch (IOException e1) {
+				//already reported the first error
+			}
+		}
+	}
+	private void write(Record r) throws IOException{
+		out.write("<gestureCompletion>"+'\n');
+		xmlStatics.writeElement(out, "name", r.name);
+		xmlStatics.writeElement(out, "user", Integer.toString(r.user));
+		xmlStatics.writeElement(out, "frame", Long.toString(r.frame));
+		xmlStatics.writeElement(out, "time", Long.toString(r.time));
+		xmlStatics.writeElement(out, "latency", Long.toString(r.latency));
+		out.write("</gestureCompletion>"+'\n');
+	}
+	/**
+	 * Opens logFile and writes the start of the document.
+	 */
+	private void open() throws IOException{
+		file = new FileOutputStream(logFile);
+		out = new BufferedWriter(new OutputStreamWriter(file, "UTF-8"), xmlStatics.BUFFER);
+		out.write("<?xml version=\"1.0\"?>"+'\n');
+		out.write("<root>"+'\n');
+		out.flush();
+	}
+	/**
+	 * Ends the document and closes the file.
+	 */
+	private void finish() throws IOException{
+		out.write("</root>");
+		out.close();
+	}
+	/**
+	 * Closes the current file, shifts the rotated files up by one and starts
+	 * a new file.
+	 */
+	private void rotate() throws IOException{
+		finish();
+		new File(logFile+"."+keep).delete();
+		for (int i=keep-1;i>=1;i--){
+			File f = new File(logFile+"."+i);
+			if (f.exists() && !f.renameTo(new File(logFile+"."+(i+1))))
+				throw new IOException("Could not rotate "+f);
+		}
+		if (!new File(logFile).renameTo(new File(logFile+".1")))
+			throw new IOException("Could not rotate "+logFile);
+		open();
+	}
+	/**
+	 * Writes every completion already queued, ends the document and stops the
+	 * writer. Completions added after this are ignored.
+	 * @throws IOException
+	 * 		If the writer failed at any point
+	 */
+	public void close() throws IOException{
+		closed = true;
+		LockSupport.unpark(writer);
+		boolean interrupted = false;
+		while (writer.isAlive()){
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (error != null)
+			throw error;
+	}
+	@Override
+	public String toString(){
+		return "{log: "+logFile+" written: "+written+" dropped: "+dropped.get()+" queued: "+(tail.get()-head.get())+"}";
+	}
+}
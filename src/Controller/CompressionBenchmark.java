@@ -0,0 +1,361 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import controller.GestureController.CompressionType;
+
+/**
+ * Measures what each {@link CompressionType} costs and what it does to
+ * recognition. Every session is recorded into a {@link GestureRecord} over
+ * the arm joint pairs, compressed as each type and replayed against every
+ * other session. Sessions with the same label are takes of the same motion,
+ * so a gesture should complete in the other takes of its label and in none
+ * of the rest.
+ * <p>
+ * For each session and type the table holds the time and bytes allocated by
+ * compressing, the steps before and after, the bytes held by the sequence
+ * of the gesture and by its compiled form, the time of matching a single
+ * frame and the recall and false positive rate over the held out sessions.
+ * Bytes are counted for a 64 bit HotSpot with compressed references. A row of type ALL times
+ * {@link GestureRecord#generateGestures(int)} producing every type at once,
+ * and rows of session * total each type over every session. The table is
+ * tab separated with a header so runs may be compared line by line.
+ * <p>
+ * Arguments, all optional: [-reps n] [-seconds s] [-takes t] [file ...]
+ * <p> Files are recordings written by {@link JointRecorder#saveBinary(String)}
+ * labeled by their name up to the first '-'. Without files every synthetic
+ * motion is recorded takes times, 3 by default, for 20 seconds of frames with
+ * a different speed and phase each take. Compression is timed reps times, 5
+ * by default, and the median is kept.
+ *
+ * @see Soak
+ * @author Levi Lindsley
+ *
+ */
+class CompressionBenchmark {
+	/**Joint pairs recorded, skipped if a session lacks either joint*/
+	static final SyntheticSource.Part PAIRS[][] = {
+		{SyntheticSource.Part.RIGHT_SHOULDER, SyntheticSource.Part.RIGHT_HAND},
+		{SyntheticSource.Part.RIGHT_ELBOW, SyntheticSource.Part.RIGHT_HAND},
+		{SyntheticSource.Part.LEFT_SHOULDER, SyntheticSource.Part.LEFT_HAND},
+		{SyntheticSource.Part.LEFT_ELBOW, SyntheticSource.Part.LEFT_HAND}
+	};
+
+	/**Columns of the table*/
+	static final String HEADER = "session\tlabel\ttype\tstepsBefore\tstepsAfter\trelations\tsequenceBytes"
+			+"\tcompiledBytes\tcompressUs\tallocBytes\tmatchNsPerFrame\tpositives\trecall\tnegatives\tfalsePositiveRate";
+
+	/**Bytes of an object header and of a reference*/
+	static final int OBJECT = 12, REF = 4;
+
+	int reps = 5;
+	int seconds = 20;
+	int takes = 3;
+	List<String> files = new ArrayList<String>();
+
+	/**A recording and the motion it is a take of*/
+	static class Session {
+		String name;
+		String label;
+		JointRecorder recording;
+		/**Every tick of recording, read a single time for all replays*/
+		SkeletonFrame frames[];
+	}
+
+	/**Totals of a type over every session*/
+	static class Total {
+		int sessions;
+		long before, after, relations, sequenceBytes, bytes, us, alloc, positives, hits, negatives, falsePositives;
+		double ns;
+	}
+
+	CompressionBenchmark(String args[]){
+		for (int i=0;i<args.length;i++){
+			if (args[i].equals("-reps"))
+				reps = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-seconds"))
+				seconds = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-takes"))
+				takes = Integer.parseInt(args[++i]);
+			else
+				files.add(args[i]);
+		}
+	}
+	void run(PrintStream out) throws IOException{
+		List<Session> sessions = files.isEmpty() ? synthetic() : load();
+		SyntheticSource names = new SyntheticSource(0, 0);
+		CompressionType types[] = CompressionType.values();
+		int all = 0;
+		for (CompressionType t : types){
+			all |= t.getMask();
+		}
+		Total total[] = new Total[types.length];
+		for (int i=0;i<total.length;i++){
+			total[i] = new Total();
+		}
+
+		out.println(HEADER);
+		for (Session s : sessions){
+			GestureRecord record = new GestureRecord();
+			for (SyntheticSource.Part p[] : PAIRS){
+				int a = names.getJoint(p[0]), b = names.getJoint(p[1]);
+				if (s.recording.contains(a) && s.recording.contains(b))
+					record.addFocusJoints(a, b);
+			}
+			record.record(s.recording);
+			int before = record.size();
+
+			for (CompressionType t : types){
+				long took[] = new long[reps];
+				GestureController g = null;
+				for (int r=0;r<reps;r++){
+					long start = System.nanoTime();
+					g = record.generateGesture(t);
+					took[r] = System.nanoTime()-start;
+				}
+				Arrays.sort(took);
+				long alloc = allocated();
+				record.generateGesture(t);
+				alloc = allocated()-alloc;
+
+				//compiled before the replay so it is not timed as matching
+				CompiledGesture c = g.compiled();
+
+				//replay against every other session
+				long ns = 0, frames = 0;
+				int positives = 0, hits = 0, negatives = 0, falsePositives = 0;
+				for (Session h : sessions){
+					if (h == s)
+						continue;
+					g.reset();
+					boolean done = false;
+					long start = System.nanoTime();
+					for (SkeletonFrame f : h.frames){
+						done |= g.isComplete(f);
+					}
+					ns += System.nanoTime()-start;
+					frames += h.frames.length;
+					if (h.label.equals(s.label)){
+						positives++;
+						if (done) hits++;
+					}
+					else{
+						negatives++;
+						if (done) falsePositives++;
+					}
+				}
+
+				long sequenceBytes = sequenceBytes(g);
+				long bytes = compiledBytes(c);
+				int relations = relations(g);
+				double perFrame = frames == 0 ? 0 : (double)ns/frames;
+				out.println(s.name+"\t"+s.label+"\t"+t+"\t"+before+"\t"+g.size()+"\t"+relations+"\t"+sequenceBytes+"\t"+bytes
+						+"\t"+took[reps/2]/1000+"\t"+alloc+"\t"+(long)perFrame
+						+"\t"+positives+"\t"+rate(hits, positives)+"\t"+negatives+"\t"+rate(falsePositives, negatives));
+
+				Total o = total[t.ordinal()];
+				o.sessions++;
+				o.before += before;
+				o.after += g.size();
+				o.relations += relations;
+				o.sequenceBytes += sequenceBytes;
+				o.bytes += bytes;
+				o.us += took[reps/2]/1000;
+				o.alloc += alloc;
+				o.ns += perFrame;
+				o.positives += positives;
+				o.hits += hits;
+				o.negatives += negatives;
+				o.falsePositives += falsePositives;
+			}
+
+			long took[] = new long[reps];
+			for (int r=0;r<reps;r++){
+				long start = System.nanoTime();
+				record.generateGestures(all);
+				took[r] = System.nanoTime()-start;
+			}
+			Arrays.sort(took);
+			long alloc = allocated();
+			record.generateGestures(all);
+			alloc = allocated()-alloc;
+			out.println(s.name+"\t"+s.label+"\tALL\t"+before+"\t\t\t\t\t"+took[reps/2]/1000+"\t"+alloc+"\t\t\t\t\t");
+		}
+		for (CompressionType t : types){
+			Total o = total[t.ordinal()];
+			if (o.sessions == 0)
+				continue;
+			out.println("*\t*\t"+t+"\t"+o.before+"\t"+o.after+"\t"+o.relations+"\t"+o.sequenceBytes+"\t"+o.bytes+"\t"+o.us+"\t"+o.alloc
+					+"\t"+(long)(o.ns/o.sessions)+"\t"+o.positives+"\t"+rate(o.hits, o.positives)
+					+"\t"+o.negatives+"\t"+rate(o.falsePositives, o.negatives));
+		}
+	}
+	/**
+	 * Records takes of every synthetic motion, each take is its own source so
+	 * it moves at its own speed and phase.
+	 */
+	List<Session> synthetic(){
+		List<Session> sessions = new ArrayList<Session>();
+		SyntheticSource.Motion motions[] = SyntheticSource.Motion.values();
+		for (int m=0;m<motions.length;m++){
+			for (int k=0;k<takes;k++){
+				SyntheticSource source = new SyntheticSource(0, 1000L*m+k);
+				int user = source.addUser(motions[m]);
+				JointRecorder r = new JointRecorder();
+				for (int j : source.getJoints()){
+					r.addJoint(j);
+				}
+				for (int f=0;f<seconds*source.getFrameRate();f++){
+					source.update();
+					r.record(source, user);
+				}
+				sessions.add(session(motions[m]+"-"+k, motions[m].toString(), r));
+			}
+		}
+		return sessions;
+	}
+	/**
+	 * Opens every file given.
+	 */
+	List<Session> load() throws IOException{
+		List<Session> sessions = new ArrayList<Session>();
+		for (String f : files){
+			String name = new File(f).getName();
+			int dash = name.indexOf('-');
+			sessions.add(session(name, dash > 0 ? name.substring(0, dash) : name, JointRecorder.loadBinary(f)));
+		}
+		return sessions;
+	}
+	static Session session(String name, String label, JointRecorder r){
+		Session s = new Session();
+		s.name = name;
+		s.label = label;
+		s.recording = r;
+		Set<Integer> joints = new TreeSet<Integer>();
+		r.getJoints(joints);
+		int j[] = new int[joints.size()];
+		int i = 0;
+		for (Integer k : joints){
+			j[i++] = k;
+		}
+		s.frames = new SkeletonFrame[r.getTicks()];
+		for (int t=0;t<s.frames.length;t++){
+			s.frames[t] = new SkeletonFrame();
+			s.frames[t].capture(r, t, j);
+		}
+		return s;
+	}
+	static int relations(GestureController g){
+		int n = 0;
+		for (List<JointRelation> step : g.getSequence()){
+			n += step.size();
+		}
+		return n;
+	}
+	/**
+	 * @return
+	 * 		Bytes held by the sequence of g, the vectors of steps and every
+	 * relation with its pairs, lists, Euclideans and their Doubles. Joint ids
+	 * are small enough that their Integers are shared by the whole library
+	 * and are not counted.
+	 */
+	static long sequenceBytes(GestureController g){
+		List<? extends List<JointRelation>> sequence = g.getSequence();
+		//a Vector holds its array, count, increment and modCount
+		long n = object(REF+12)+array(sequence.size(), REF);
+		for (List<JointRelation> step : sequence){
+			n += object(REF+12)+array(step.size(), REF);
+			for (JointRelation jR : step){
+				//tag, pair, angle, angle types and prev
+				n += object(5*REF);
+				n += object(3*REF);
+				if (jR.prev != null)
+					n += object(3*REF);
+				//an ArrayList holds its array, size and modCount
+				n += object(REF+8)+array(jR.angle.size(), REF);
+				n += object(REF+8)+array(jR.angleType.size(), REF);
+				//each Euclidean holds three Doubles
+				n += jR.angle.size()*(object(3*REF)+3*object(8));
+			}
+		}
+		return n;
+	}
+	/**
+	 * @return
+	 * 		Bytes held by c and its arrays
+	 */
+	static long compiledBytes(CompiledGesture c){
+		//steps, stride, epsilon and 12 arrays
+		long n = object(16+12*REF);
+		n += array(c.stepStart.length, 4);
+		n += array(c.first.length, 4)+array(c.second.length, 4)+array(c.width.length, 4)+array(c.prev.length, 4);
+		n += array(c.target.length, 8)+array(c.holdLo.length, 8)+array(c.holdHi.length, 8);
+		n += array(c.backLo.length, 8)+array(c.backHi.length, 8);
+		n += array(c.back.length, 1);
+		return n;
+	}
+	/**
+	 * @return
+	 * 		Bytes of an object with fields bytes of fields, padded to 8
+	 */
+	static long object(long fields){
+		return (OBJECT+fields+7)/8*8;
+	}
+	/**
+	 * @return
+	 * 		Bytes of an array of n elements of size bytes each, padded to 8
+	 */
+	static long array(long n, int size){
+		return (OBJECT+4+n*size+7)/8*8;
+	}
+	static String rate(long n, long of){
+		return of == 0 ? "" : String.format("%.3f", (double)n/of);
+	}
+	/**
+	 * @return
+	 * 		Bytes allocated by every live thread so far, the chains are
+	 * compressed on the threads of a pool. -1 if the virtual machine does not
+	 * count allocation.
+	 */
+	static long allocated(){
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		try {
+			//only HotSpot counts allocation, found by name so this builds anywhere
+			Method m = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long[].class);
+			long bytes[] = (long[])m.invoke(bean, bean.getAllThreadIds());
+			long sum = 0;
+			for (long b : bytes){
+				if (b > 0)
+					sum += b;
+			}
+			return sum;
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+	public static void main(String args[]) throws IOException{
+		//the library prints as it works, that would break up the table
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream(){
+			public void write(int b){
+			}
+		}));
+		try {
+			new CompressionBenchmark(args).run(out);
+		}
+		finally{
+			System.setOut(out);
+		}
+	}
+}
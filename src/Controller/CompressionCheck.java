@@ -0,0 +1,124 @@
+package controller;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.CRC32;
+
+import controller.GestureController.CompressionType;
+
+/**
+ * Checks that gestures of a single joint pair compress exactly as they did
+ * before the chains of each pair were compressed apart, see {@link PairChain}.
+ * A gesture of one pair has one chain so the result must not have changed,
+ * gestures of more than one pair are expected to differ.
+ * <p>
+ * Each synthetic motion is recorded for 300 frames over one joint pair and
+ * compressed as SIMPLE, AVG and DBL_AVG. The checksum of the xml of every
+ * gesture is compared with {@link #EXPECTED}, which was taken from the
+ * compressor that walked the whole sequence. Prints each case and exits
+ * with 1 if any gesture changed.
+ *
+ * @see Soak
+ * @author Levi Lindsley
+ *
+ */
+class CompressionCheck {
+	/**Joint pair recorded for each case*/
+	static final SyntheticSource.Part PAIRS[][] = {
+		{SyntheticSource.Part.RIGHT_ELBOW, SyntheticSource.Part.RIGHT_HAND},
+		{SyntheticSource.Part.RIGHT_SHOULDER, SyntheticSource.Part.RIGHT_HAND}
+	};
+
+	static final SyntheticSource.Motion MOTIONS[] = {
+		SyntheticSource.Motion.WAVE, SyntheticSource.Motion.STIR, SyntheticSource.Motion.CIRCLE
+	};
+
+	static final CompressionType TYPES[] = {
+		CompressionType.SIMPLE, CompressionType.AVG, CompressionType.DBL_AVG
+	};
+
+	/**Frames recorded for each case*/
+	static final int FRAMES = 300;
+
+	/**Motion, index into PAIRS, type and checksum of the xml of each case*/
+	static final String EXPECTED[] = {
+		"WAVE 0 SIMPLE 47956d23",
+		"WAVE 0 AVG 3dc90b47",
+		"WAVE 0 DBL_AVG 90e2f74d",
+		"WAVE 1 SIMPLE 6d66eab2",
+		"WAVE 1 AVG 7539041c",
+		"WAVE 1 DBL_AVG 8640446b",
+		"STIR 0 SIMPLE b2d335be",
+		"STIR 0 AVG fa1c32b7",
+		"STIR 0 DBL_AVG 6a50e39c",
+		"STIR 1 SIMPLE 12c15a3c",
+		"STIR 1 AVG cfcfd46a",
+		"STIR 1 DBL_AVG a8b1e2",
+		"CIRCLE 0 SIMPLE 947910c4",
+		"CIRCLE 0 AVG f3fe7ed7",
+		"CIRCLE 0 DBL_AVG 690d5dbd",
+		"CIRCLE 1 SIMPLE 699cc0d3",
+		"CIRCLE 1 AVG 7a2aa49",
+		"CIRCLE 1 DBL_AVG 234a0ebb"
+	};
+
+	/**
+	 * @return
+	 * 		Number of cases that changed
+	 */
+	static int run(PrintStream out) throws UnsupportedEncodingException{
+		int changed = 0;
+		int i = 0;
+		for (SyntheticSource.Motion m : MOTIONS){
+			for (int p=0;p<PAIRS.length;p++){
+				for (CompressionType t : TYPES){
+					String got = m+" "+p+" "+t+" "+checksum(gesture(m, p, t));
+					boolean same = got.equals(EXPECTED[i++]);
+					if (!same)
+						changed++;
+					out.println((same ? "ok      " : "CHANGED ")+got);
+				}
+			}
+		}
+		return changed;
+	}
+	/**
+	 * @return
+	 * 		Gesture of motion m over PAIRS[p] compressed as t
+	 */
+	static GestureController gesture(SyntheticSource.Motion m, int p, CompressionType t){
+		SyntheticSource source = new SyntheticSource(0, 7+p);
+		int user = source.addUser(m);
+		GestureRecord r = new GestureRecord();
+		r.addFocusJoints(source.getJoint(PAIRS[p][0]), source.getJoint(PAIRS[p][1]));
+		for (int f=0;f<FRAMES;f++){
+			source.update();
+			r.record(source, user);
+		}
+		return r.generateGesture(t);
+	}
+	static String checksum(GestureController g) throws UnsupportedEncodingException{
+		CRC32 c = new CRC32();
+		c.update(g.toXML().getBytes("UTF-8"));
+		return Long.toHexString(c.getValue());
+	}
+	public static void main(String args[]) throws UnsupportedEncodingException{
+		//the library prints as it works, that would bury the results
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream(){
+			public void write(int b){
+			}
+		}));
+		int changed;
+		try {
+			changed = run(out);
+		}
+		finally{
+			System.setOut(out);
+		}
+		out.println(changed == 0 ? "All gestures compress as before" : changed+" gestures changed");
+		if (changed != 0)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,256 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index over the first step of every gesture of a library so gestures that
+ * have not started do not need to be evaluated. Almost every gesture is
+ * waiting on its first step almost all of the time, and a gesture waiting on
+ * its first step does nothing when the step fails, so only the gestures whose
+ * first step could match the current frame need to be evaluated.
+ * <p>
+ * The first relation of the first step of each gesture is hashed into a
+ * uniform grid with cells {@link Euclidean#Epsilon} wide over its first three
+ * values, keyed by joint pair. A frame is looked up by computing the relation
+ * of each indexed joint pair once and visiting every cell within Epsilon of
+ * it, any gesture not found this way can not match the frame. Cells that
+ * collide in the hash only add candidates so the lookup never misses a
+ * gesture that would have matched.
+ *
+ * @see GestureEngine#setIndexed(boolean)
+ * @author Levi Lindsley
+ *
+ */
+class FirstStepIndex {
+	/**Compiled form of each gesture of the library, in library order*/
+	private CompiledGesture gestures[];
+
+	/**First joint of each indexed joint pair*/
+	private int first[];
+
+	/**Second joint of each indexed joint pair*/
+	private int second[];
+
+	/**Gestures found in each cell, keyed by the hash of the joint pair and cell*/
+	private Map<Long, int[]> cells;
+
+	/**Gestures that can not be indexed and are always candidates*/
+	private int always[];
+
+	/**Value of stamp when each gesture was last found to be a candidate*/
+	private int stamp[];
+
+	/**Current frame, gestures marked with any other stamp are not candidates*/
+	private int current;
+
+	/**Value of Epsilon the index was built with, also the width of a cell*/
+	private double epsilon;
+
+	/**
+	 * Builds an index over the first step of each gesture of library.
+	 * @param library - Gestures to index
+	 */
+	FirstStepIndex(List<GestureController> library){
+		this(library, null);
+	}
+	/**
+	 * Builds an index over the first step of each gesture of library as the
+	 * steps are evaluated through trie, a gesture whose first step is shared
+	 * is indexed with the values the shared step is evaluated with.
+	 * @param library - Gestures to index
+	 * @param trie - Trie built over library, may be null
+	 */
+	FirstStepIndex(List<GestureController> library, GestureTrie trie){
+		gestures = new CompiledGesture[library.size()];
+		for (int g=0;g<gestures.length;g++){
+			gestures[g] = library.get(g).compiled();
+		}
+		epsilon = Euclidean.epsilon();
+
+		Map<Pair, Integer> pairs = new HashMap<Pair, Integer>();
+		Map<Long, int[]> c = new HashMap<Long, int[]>();
+		int a[] = new int[0];
+		for (int g=0;g<gestures.length;g++){
+			CompiledGesture cg = gestures[g];
+			if (cg.steps == 0 || cg.phases(0) == 0)
+				continue; //a gesture without steps never completes
+			if (trie != null)
+				cg = trie.evaluatedBy(g, 0);
+
+			int r = cg.stepStart[0];
+			double t[] = cg.target;
+			int base = r*cg.stride;
+			if (!(epsilon > 0) || cg.width[r] < 3 || !finite(t[base]) || !finite(t[base+1]) || !finite(t[base+2])){
+				a = append(a, g);
+				continue;
+			}
+
+			Pair p = new Pair(cg.first[r], cg.second[r]);
+			Integer id = pairs.get(p);
+			if (id == null){
+				id = pairs.size();
+				pairs.put(p, id);
+			}
+			Long key = key(id, cell(t[base]), cell(t[base+1]), cell(t[base+2]));
+			int found[] = c.get(key);
+			c.put(key, found == null ? new int[]{g} : append(found, g));
+		}
+
+		first = new int[pairs.size()];
+		second = new int[pairs.size()];
+		for (Map.Entry<Pair, Integer> e : pairs.entrySet()){
+			first[e.getValue()] = e.getKey().First;
+			second[e.getValue()] = e.getKey().Second;
+		}
+		cells = c;
+		always = a;
+		stamp = new int[gestures.length];
+		current = 0;
+	}
+	/**
+	 * @return
+	 * 		True if v is neither NaN nor infinite
+	 */
+	private static boolean finite(double v){
+		return !Double.isNaN(v) && !Double.isInfinite(v);
+	}
+	/**
+	 * @return
+	 * 		Copy of a with v added to the end
+	 */
+	private static int[] append(int a[], int v){
+		int n[] = new int[a.length+1];
+		System.arraycopy(a, 0, n, 0, a.length);
+		n[a.length] = v;
+		return n;
+	}
+	/**
+	 * @return
+	 * 		Cell holding v along one axis
+	 */
+	private long cell(double v){
+		return (long)Math.floor(v/epsilon);
+	}
+	/**
+	 * @return
+	 * 		Hash of a joint pair and cell, different cells may share a hash
+	 */
+	private static Long key(int pair, long x, long y, long z){
+		return (pair*73856093L) ^ (x*19349663L) ^ (y*83492791L) ^ (z*50331653L);
+	}
+	/**
+	 * Checks if this was built from the current form of every gesture of library.
+	 * @param library - Gestures the index was built from
+	 * @return
+	 * 		True if the index does not need to be rebuilt
+	 * @see GestureTrie#isCurrent(List)
+	 */
+	boolean isCurrent(List<GestureController> library){
+		if (epsilon != Euclidean.epsilon() || library.size() != gestures.length)
+			return false;
+		for (int g=0;g<gestures.length;g++){
+			if (library.get(g).compiled() != gestures[g])
+				return false;
+		}
+		return true;
+	}
+	/**
+	 * Finds every gesture whose first step could match frame, afterwards
+	 * {@link #isCandidate(int)} answers for frame until the next lookup.
+	 *
+	 * @param frame - Snapshot of the user
+	 * @param buf - Scratch space of at least {@link JointRelation#width()} values
+	 * @return
+	 * 		Number of candidates found, a gesture may be counted more than once
+	 */
+	int lookup(SkeletonFrame frame, double buf[]){
+		current++;
+		if (current == 0){
+			//stamp wrapped around, clear old stamps so none look current
+			Arrays.fill(stamp, 0);
+			current = 1;
+		}
+		int found = 0;
+		for (int g : always){
+			stamp[g] = current;
+			found++;
+		}
+		if (!frame.isTracked())
+			return found;
+
+		for (int p=0;p<first.length;p++){
+			int a = first[p];
+			int b = second[p];
+			if (!frame.has(a) || !frame.has(b))
+				continue;
+			JointRelation.relate(frame.x(a), frame.y(a), frame.z(a), frame.x(b), frame.y(b), frame.z(b), buf, 0);
+			if (!finite(buf[0]) || !finite(buf[1]) || !finite(buf[2]))
+				continue; //can not be within Epsilon of an indexed target
+
+			//every target within Epsilon of the relation lies in these cells, the bounds
+			//are taken the same way as CompiledGesture.matches() so none are missed
+			long x0 = cell(buf[0]-epsilon), x1 = cell(buf[0]+epsilon);
+			long y0 = cell(buf[1]-epsilon), y1 = cell(buf[1]+epsilon);
+			long z0 = cell(buf[2]-epsilon), z1 = cell(buf[2]+epsilon);
+			for (long x=x0;x<=x1;x++){
+				for (long y=y0;y<=y1;y++){
+					for (long z=z0;z<=z1;z++){
+						int c[] = cells.get(key(p, x, y, z));
+						if (c == null)
+							continue;
+						for (int g : c){
+							stamp[g] = current;
+						}
+						found += c.length;
+					}
+				}
+			}
+		}
+		return found;
+	}
+	/**
+	 * @param g - Index of gesture
+	 * @return
+	 * 		True if the first step of gesture g could match the frame of the
+	 * last lookup
+	 */
+	boolean isCandidate(int g){
+		return stamp[g] == current;
+	}
+	/**
+	 * Wraps the evaluator of gesture g so its first step fails without being
+	 * evaluated when g is not a candidate of the last lookup.
+	 * @param g - Index of gesture
+	 * @param next - Evaluator of gesture g
+	 * @return
+	 * 		Evaluator for the steps of gesture g that checks this index first
+	 */
+	StepEvaluator view(final int g, final StepEvaluator next){
+		return new StepEvaluator(){
+			@Override
+			public int steps(){
+				return next.steps();
+			}
+			@Override
+			public int evaluate(SkeletonFrame frame, int step, double buf[]){
+				if (step == 0 && !isCandidate(g))
+					return CompiledGesture.FAIL;
+				return next.evaluate(frame, step, buf);
+			}
+		};
+	}
+	/**
+	 * @return
+	 * 		Number of joint pairs computed per lookup
+	 */
+	int pairs(){
+		return first.length;
+	}
+	@Override
+	public String toString(){
+		return "{gestures: "+gestures.length+" pairs: "+first.length+" cells: "+cells.size()+" always: "+always.length+"}";
+	}
+}
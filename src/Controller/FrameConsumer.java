@@ -0,0 +1,102 @@
+package controller;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thread that reads every frame published to a {@link FrameRing} and hands
+ * it to {@link #accept(SkeletonFrame)}. Each consumer has its own cursor and
+ * its own copy of the frame so consumers run at their own pace, one consumer
+ * falling behind never slows the capture thread or the other consumers.
+ *
+ * @see SkeletonCapture
+ * @author Levi Lindsley
+ *
+ */
+public abstract class FrameConsumer implements Runnable{
+	/**Time to sleep when no frame is waiting, a Kinect publishes every ~33ms*/
+	private static final long IDLE_NANOS = 1000000L;
+
+	/**Ring being read*/
+	private FrameRing ring;
+
+	/**Position of this in ring*/
+	private FrameRing.Cursor cursor;
+
+	/**Copy of the frame being handled, reused for every frame*/
+	private SkeletonFrame frame;
+
+	/**Thread running this, null if not started*/
+	private Thread thread;
+
+	/**Cleared to stop the thread*/
+	private volatile boolean running;
+
+	/**
+	 * @param r - Ring to read frames from
+	 */
+	public FrameConsumer(FrameRing r){
+		ring = r;
+		frame = new SkeletonFrame();
+		running = false;
+	}
+	/**
+	 * Handles a single frame, called on the thread of this consumer in the
+	 * order the frames were published.
+	 * @param f - Frame to handle, only valid until this returns
+	 */
+	protected abstract void accept(SkeletonFrame f);
+
+	/**
+	 * Starts a daemon thread reading frames published from now on.
+	 * @param name - Name of the thread
+	 */
+	public synchronized void start(String name){
+		if (thread != null)
+			return;
+		cursor = ring.cursor();
+		running = true;
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	/**
+	 * Stops the thread after the frame being handled and waits for it to finish.
+	 */
+	public synchronized void stop(){
+		if (thread == null)
+			return;
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+	@Override
+	public void run(){
+		while (running){
+			if (cursor.poll(frame))
+				accept(frame);
+			else
+				LockSupport.parkNanos(this, IDLE_NANOS);
+		}
+	}
+	/**
+	 * @return
+	 * 		True if the thread of this consumer is running
+	 */
+	public boolean isRunning(){
+		return running;
+	}
+	/**
+	 * @return
+	 * 		Number of frames missed because this fell more than the capacity
+	 * of the ring behind, 0 if not started
+	 */
+	public long getDropped(){
+		FrameRing.Cursor c = cursor;
+		return c == null ? 0 : c.getDropped();
+	}
+}
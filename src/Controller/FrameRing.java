@@ -0,0 +1,210 @@
+package controller;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A preallocated ring of {@link SkeletonFrame}s written by a single capture
+ * thread and read by any number of consumer threads without locks. Every
+ * frame published is given the next sequence number, consumers follow the
+ * sequence with their own {@link Cursor} so a slow consumer never holds up
+ * the producer or the other consumers.
+ * <p>
+ * The producer never waits, a consumer that falls more than the capacity of
+ * the ring behind skips ahead to the oldest frame still held and counts the
+ * frames it missed. Each slot holds the sequence number of the frame in it,
+ * the producer marks a slot with -1 while writing it, and a consumer checks
+ * the number before and after copying a slot so a copy torn by the producer
+ * lapping the consumer is thrown away rather than used. Marking the slot and
+ * checking it after the copy are atomic updates rather than plain volatile
+ * accesses, as a volatile access alone does not order the plain accesses to
+ * the frame on the far side of it.
+ *
+ * @see SkeletonCapture
+ * @see FrameConsumer
+ * @author Levi Lindsley
+ *
+ */
+public class FrameRing {
+	/**Capacity used when none is given*/
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**Frames of the ring, slot i holds the frames whose sequence & mask == i*/
+	private final SkeletonFrame slots[];
+
+	/**Sequence number of the frame held by each slot, -1 while being written*/
+	private final AtomicLongArray held;
+
+	/**capacity-1, capacity is a power of two*/
+	private final int mask;
+
+	/**Sequence number of the last frame published, -1 before the first*/
+	private final AtomicLong published;
+
+	/**Sequence number of the frame being written, only touched by the producer*/
+	private long claimed;
+
+	/**
+	 * Creates a ring holding {@link #DEFAULT_CAPACITY} frames.
+	 */
+	public FrameRing(){
+		this(DEFAULT_CAPACITY);
+	}
+	/**
+	 * Creates a ring holding at least capacity frames, capacity is rounded up
+	 * to a power of two. All frames are allocated here.
+	 * @param capacity - Minimum number of frames held
+	 */
+	public FrameRing(int capacity){
+		if (capacity < 2)
+			throw new IllegalArgumentException("capacity must be at least 2: "+capacity);
+		int size = Integer.highestOneBit(capacity-1)<<1;
+		slots = new SkeletonFrame[size];
+		held = new AtomicLongArray(size);
+		for (int i=0;i<size;i++){
+			slots[i] = new SkeletonFrame();
+			held.set(i, -1);
+		}
+		mask = size-1;
+		published = new AtomicLong(-1);
+		claimed = -1;
+	}
+	/**
+	 * Hands the producer the next slot to write into. The slot is not seen by
+	 * consumers until {@link #publish()} is called, calling claim again
+	 * without publishing hands back the same slot.
+	 * <p>
+	 * Must only be called from the producer thread.
+	 * @return
+	 * 		Frame to fill
+	 */
+	public SkeletonFrame claim(){
+		claimed = published.get()+1;
+		int i = (int)(claimed & mask);
+		//read and write in one, unlike a volatile write this keeps the writes
+		//to the frame that follow from being seen before the mark
+		held.getAndSet(i, -1);
+		return slots[i];
+	}
+	/**
+	 * Makes the frame handed out by the last {@link #claim()} visible to
+	 * consumers. Must only be called from the producer thread.
+	 */
+	public void publish(){
+		if (claimed <= published.get())
+			throw new IllegalStateException("No frame was claimed");
+		held.set((int)(claimed & mask), claimed);
+		published.set(claimed);
+	}
+	/**
+	 * @return
+	 * 		Sequence number of the last frame published, -1 if nothing has been
+	 * published
+	 */
+	public long getPublished(){
+		return published.get();
+	}
+	/**
+	 * @return
+	 * 		Number of frames held by the ring
+	 */
+	public int capacity(){
+		return slots.length;
+	}
+	/**
+	 * Copies the frame with sequence number seq into dst.
+	 * @param seq - Sequence number of the frame to copy
+	 * @param dst - Frame to copy into
+	 * @return
+	 * 		True if the frame was copied.
+	 * <p> False if the slot no longer holds seq, dst is then garbage.
+	 */
+	public boolean read(long seq, SkeletonFrame dst){
+		int i = (int)(seq & mask);
+		if (held.get(i) != seq)
+			return false;
+		dst.copy(slots[i]);
+		//read and write in one, unlike a volatile read this keeps the reads of
+		//the copy from being moved after the check
+		return held.compareAndSet(i, seq, seq);
+	}
+	/**
+	 * Copies the most recent frame of user into dst. Used by a thread that
+	 * only needs the current pose, such as the render loop.
+	 * @param user - Id of user
+	 * @param dst - Frame to copy into
+	 * @return
+	 * 		True if a frame of user is held by the ring and was copied.
+	 */
+	public boolean latest(int user, SkeletonFrame dst){
+		long last = published.get();
+		for (long seq=last;seq>=0 && seq>last-slots.length;seq--){
+			if (read(seq, dst) && dst.getUser() == user)
+				return true;
+		}
+		return false;
+	}
+	/**
+	 * @return
+	 * 		New cursor that starts at the next frame to be published
+	 */
+	public Cursor cursor(){
+		return new Cursor();
+	}
+	/**
+	 * Position of a single consumer in the ring. A cursor must only be used
+	 * by one thread.
+	 */
+	public class Cursor{
+		/**Sequence number of the next frame to read*/
+		private long next;
+
+		/**Number of frames skipped because the producer overwrote them*/
+		private long dropped;
+
+		private Cursor(){
+			next = published.get()+1;
+		}
+		/**
+		 * Copies the next frame into dst.
+		 * @param dst - Frame to copy into
+		 * @return
+		 * 		True if a frame was copied.
+		 * <p> False if every published frame has been read.
+		 */
+		public boolean poll(SkeletonFrame dst){
+			long last = published.get();
+			while (next <= last){
+				if (last-next >= slots.length){
+					//the producer lapped this cursor, skip to the oldest frame held
+					long skip = last-slots.length+1;
+					dropped += skip-next;
+					next = skip;
+				}
+				if (read(next++, dst))
+					return true;
+				dropped++;
+				last = published.get();
+			}
+			return false;
+		}
+		/**
+		 * @return
+		 * 		Number of frames published but not yet read
+		 */
+		public long pending(){
+			return Math.max(0, published.get()+1-next);
+		}
+		/**
+		 * @return
+		 * 		Number of frames this cursor missed because it fell behind
+		 */
+		public long getDropped(){
+			return dropped;
+		}
+	}
+	@Override
+	public String toString(){
+		return "{capacity: "+slots.length+" published: "+published.get()+"}";
+	}
+}
@@ -1,17 +1,21 @@
 package controller;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import processing.core.PVector;
 import SimpleOpenNI.*;
@@ -30,10 +34,11 @@ import SimpleOpenNI.*;
  * to declare a relationship for all three axes, declaring an axis to be null will disregard that
  * axis while calculating if the constraint is upheld.
  * <p>
- * An instance of this class should be used for each individual gesture.
+ * An instance of this class should be used for each individual gesture. The progress
+ * of a user through the gesture is held in a {@link MatchState} so a single instance
+ * may follow any number of users.
  * 
  *@Bug
- * Currently does NOT work with multiple users.
  * Probably some with relation to concurrent and constant constraints not much testing has been done
  * 
  * @author Levi Lindsley
@@ -63,7 +68,7 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 * Different types of compression available for use on a gesture
 	 * The compression ranges from least(NONE), to most(DBL_AVG).
 	 * The mask values for each are as follows: NONE = 0x1, SIMPLE = 0x2, 
-	 * AVG = 0x4, DBL_AVG = 0x8. 
+	 * AVG = 0x4, DBL_AVG = 0x8, PIECEWISE = 0x10. 
 	 * <p>
 	 * DBL_AVG may and or may not work as expected it gets reworked often.
 	 * 
@@ -93,7 +98,16 @@ public class GestureController implements xmlGestureParser<GestureController>{
 		 * of the secondary Epsilon nodes created in this way is taken as the value
 		 * <p> mask = 0x8
 		 */
-		DBL_AVG(0x8);
+		DBL_AVG(0x8),
+		/**
+		 * Keeps the fewest steps that trace the path of every joint pair to
+		 * within {@link GestureController#getMaxDeviation()}, steps that are
+		 * dropped lie on the straight line between the steps kept on either
+		 * side of them. Unlike the node based types this bounds how far the
+		 * gesture strays from the recording.
+		 * <p> mask = 0x10
+		 */
+		PIECEWISE(0x10);
 		
 		private int mask;
 		CompressionType(int m){
@@ -125,8 +139,8 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	/** classTag used for xml documents */
 	final private String classTag = "gesture";
 	
-	/** Used to enable/disable logging completion of a gesture*/
-	private static BufferedWriter logWriter;
+	/** Log of gesture completions, null when logging is disabled*/
+	private static volatile CompletionLog log;
 	
 	/**
 	 * This is used in conjunction with {@linkplain #getRealCoordinites(SimpleOpenNI, int, int) 
@@ -162,10 +176,23 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 */
 	private static Double Epsilon = Euclidean.getEpsilon(); 
 	
-	/**Number of completed steps of the gesture */
-	private Integer step; 
-	/**Concurrent phase the gesture is on*/
-	private Integer phase;
+	/**Greatest distance a dropped step may lie from the path kept by
+	 * {@link CompressionType#PIECEWISE}, 0 uses half of Epsilon*/
+	private static double maxDeviation = 0;
+	
+	/**Pool the chains of each joint pair are compressed on*/
+	private static ForkJoinPool compressor;
+	
+	/**Progress of each user through the gesture, keyed by user id. Only used by
+	 * the functions that do not take a {@link MatchState} directly*/
+	private transient Map<Integer, MatchState> users;
+	
+	/**Flat form of sequence used for matching, rebuilt whenever sequence changes*/
+	private transient CompiledGesture compiled;
+	
+	/**Scratch space for the relation being matched by the functions that do not
+	 * take a buffer directly*/
+	private transient double relation[];
 
 	/**
 	 * Default Constructor:
@@ -183,18 +210,55 @@ public class GestureController implements xmlGestureParser<GestureController>{
 		init();
 		Name = N;
 	}
+	/**
+	 * Constructs a gesture held only in compiled form, the sequence is built
+	 * from c the first time it is needed. Used by {@link MappedLibrary} so a
+	 * loaded library can be matched without creating a JointRelation.
+	 * @param N : Value to set name to
+	 * @param c : Compiled form of the gesture
+	 */
+	GestureController(String N, CompiledGesture c){
+		init();
+		Name = N;
+		sequence = null;
+		compiled = c;
+	}
 	/**
 	 * Initializes sequence and constants vector, creates a new map for link and
-	 * sets step and phase to 0.
-	 * logWriter is explicitly set to null here as well.
+	 * clears the progress of all users.
 	 * Used with constructor and may be useful for reseting gesture sequences.
 	 */
 	private void init(){
 		sequence = new Vector<Vector<JointRelation>>();
 		link = new HashMap<Pair, Pair>();
-		logWriter = null;
-		step = 0;
-		phase = 0;
+		users = new HashMap<Integer, MatchState>();
+	}
+	/**
+	 * Retrieves the progress of user through this gesture, creating it if
+	 * user has not been seen before.
+	 * @param user : Id of user
+	 * @return
+	 * 		MatchState of user
+	 */
+	private MatchState getState(int user){
+		//users is transient so it is missing after deserialization
+		if (users == null)
+			users = new HashMap<Integer, MatchState>();
+		
+		MatchState state = users.get(user);
+		if (state == null){
+			state = new MatchState();
+			users.put(user, state);
+		}
+		return state;
+	}
+	/**
+	 * Discards the progress of user, should be called when a user is lost.
+	 * @param user : Id of user to remove
+	 */
+	public void removeUser(int user){
+		if (users != null)
+			users.remove(user);
 	}
 	/**
 	 * Adds a joint relation into this, also sets the previous point if there
@@ -209,14 +273,15 @@ public class GestureController implements xmlGestureParser<GestureController>{
 		//Add a new concurrent vector if:
 		//1. sequence is empty
 		//2. The jointRelation has been seen in final step already 
-		if (sequence.isEmpty() || (link.get(j.J)!= null && link.get(j.J).First==sequence.size()-1))
-			sequence.add(new Vector<JointRelation>());	
+		if (sequence().isEmpty() || (link.get(j.J)!= null && link.get(j.J).First==sequence().size()-1))
+			sequence().add(new Vector<JointRelation>());	
 		
 		//Add j to the end of sequence
-		sequence.lastElement().add(j);
+		sequence().lastElement().add(j);
+		compiled = null;
 		
 		//update link to the new location of j.J
-		link.put(j.J, new Pair(sequence.size()-1, sequence.lastElement().size()-1));
+		link.put(j.J, new Pair(sequence().size()-1, sequence().lastElement().size()-1));
 	}
 	/**
 	 * Adds a point to this as with {@link #add(JointRelation)} but processes
@@ -254,52 +319,26 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 *  Gesture is incremented if not complete. 
 	 */
 	public boolean isComplete(SimpleOpenNI context, int user){
-		
-		Boolean N = true;//call next function
-		boolean wait = false; //Used to initiate holding pattern on concurrent gestures
-		
-		/*
-		 * Checks for concurrent gesture completion, holding, or failure.
-		 * Concurrency is defined as all phases of a step.
-		 */
-		phase = 0;
-		while (phase < sequence.get(step).size()){
-			N = next(context, user); //continue to the next part of the gesture
-			
-			/*
-			 * A part hit a holding pattern thus forcing the entire concurrent sequence into
-			 * a holding pattern but all parts of the concurrent sequence must be checked for
-			 * failure before so can't stop the while loop
-			 */
-			if (N == null){
-				wait = true; //holding pattern true
-			}
-			
-			//Some part of the gesture failed, reset the entire gesture
-			else if (N == false){
-				step = 0; //Reset gesture
-				return false; //end the while loop a step failed
-			}
-			//check next phase
-			phase++;	
-		}
-		
-		//If no part of this step hit a holding pattern then proceed to the
-		//next step
-		if (!wait){
-			step ++;
-		}
-		
-		//if step == seq.size then all steps of the gesture have been completed
-		//reset and return true
-		if (step == sequence.size()){
-			step = 0; //reset gesture
-			logGesture();
-			return true; //return the successful completion
-		}
-		
-		//The gesture was not finished return false
-		return false;
+		//only the joints of the current step are needed to check the gesture
+		MatchState state = getState(user);
+		SkeletonFrame frame = new SkeletonFrame();
+		frame.capture(context, user, getStepJoints(state));
+		return isComplete(frame, state);
+	}
+	/**
+	 * Same as {@link #isComplete(SimpleOpenNI, int)} with the skeleton taken
+	 * from any source.
+	 * 
+	 * @param source : Source of the skeleton of user
+	 * @param user : Id for users to check skeleton
+	 * @return
+	 * 	True if gesture is compete.
+	 */
+	public boolean isComplete(SkeletonSource source, int user){
+		MatchState state = getState(user);
+		SkeletonFrame frame = new SkeletonFrame();
+		frame.capture(source, user, getStepJoints(state));
+		return isComplete(frame, state);
 	}
 	/**
 	 * The isComplete function that places the location of the bounds into a PVector
@@ -325,40 +364,77 @@ public class GestureController implements xmlGestureParser<GestureController>{
 			return true;
 		}
 		
+		MatchState state = getState(user);
+		SkeletonFrame frame = new SkeletonFrame();
+		frame.capture(context, user, getStepJoints(state));
+		getBounds(frame, state, points);
+		return false;
+	}
+	/**
+	 * Same as {@link #isComplete(SimpleOpenNI, int, Vector)} with the skeleton
+	 * taken from any source.
+	 * 
+	 * @param source : Source of the skeleton of user
+	 * @param user : user to extract joint information for
+	 * @param points : PVector to place point location information into
+	 * @return
+	 * 		True if the gesture is complete, points is unchanged.
+	 * <p> False if the gesture has steps left to complete, points is updated.
+	 */
+	public boolean isComplete(SkeletonSource source, int user, Vector<PVector> points){
+		if (isComplete(source, user)){
+			return true;
+		}
+		
+		MatchState state = getState(user);
+		SkeletonFrame frame = new SkeletonFrame();
+		frame.capture(source, user, getStepJoints(state));
+		getBounds(frame, state, points);
+		return false;
+	}
+	/**
+	 * Places the previous, current and next location of each relation of the
+	 * current step into points for {@link #isComplete(SimpleOpenNI, int, Vector)}.
+	 * 
+	 * @param frame : Joints of the current step
+	 * @param state : Progress of the user
+	 * @param points : Cleared and filled with three PVectors per relation
+	 */
+	private void getBounds(SkeletonFrame frame, MatchState state, Vector<PVector> points){
 		//clear display vector
 		points.clear();
 		
 		Euclidean pos;
+		int step = state.step;
 		
-		phase = 0;
+		int phase = 0;
 		//Add position data using the last angle type available
-		while (phase < sequence.get(step).size()){
+		while (phase < sequence().get(step).size()){
 			//if this is the first step then there are no previous steps so 
 			//add an empty vector
 			if (step == 0)
 				points.add(new PVector());
 			//for all other steps add the previous point
 			else{
-				pos = sequence.get(step-1).firstElement().angle.get(sequence.get(step-1).get(phase).angle.size()-1);
+				pos = sequence().get(step-1).firstElement().angle.get(sequence().get(step-1).get(phase).angle.size()-1);
 				points.add(new PVector(pos.x.floatValue(),pos.y.floatValue(),pos.z.floatValue()));
 			}
 
 			//Retrieve and add the Current location
-			PVector JointOneReal = getRealCoordinites(context,user, sequence.get(step).get(phase).J.First);
-			PVector JointTwoReal = getRealCoordinites(context,user, sequence.get(step).get(phase).J.Second);
-			JointRelation rel = compareJointPositions(sequence.get(step).firstElement().J,JointOneReal, JointTwoReal);
+			PVector JointOneReal = frame.getJoint(sequence().get(step).get(phase).J.First);
+			PVector JointTwoReal = frame.getJoint(sequence().get(step).get(phase).J.Second);
+			JointRelation rel = compareJointPositions(sequence().get(step).firstElement().J,JointOneReal, JointTwoReal);
 
 			pos = rel.angle.get(rel.angle.size()-1);
 			points.add(new PVector(pos.x.floatValue(),pos.y.floatValue(),pos.z.floatValue()));
 
 			//Add the next step
-			pos = sequence.get(step).get(phase).angle.get(sequence.get(step).get(phase).angle.size()-1);
+			pos = sequence().get(step).get(phase).angle.get(sequence().get(step).get(phase).angle.size()-1);
 			points.add(new PVector(pos.x.floatValue(),pos.y.floatValue(),pos.z.floatValue()));
 				
 			//move to the next phase
 			phase ++;
 		}
-		return false;
 	}
 	/**
 	 * Uses a JointRecorder to parse gesture data. returns the 
@@ -373,52 +449,214 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 * @see GestureController#isComplete(SimpleOpenNI, int)
 	 */
 	public boolean isComplete(JointRecorder context, int tick){
-		Boolean N = true;//call next function
-		boolean wait = false; //Used to initiate holding pattern on concurrent gestures
+		MatchState state = getState(SkeletonFrame.RECORDING_USER);
+		SkeletonFrame frame = new SkeletonFrame();
+		frame.capture(context, tick, getStepJoints(state));
+		return isComplete(frame, state);
+	}
+	/**
+	 * Checks the gesture against a snapshot of the skeleton, this is the same
+	 * check that is done by {@link #isComplete(SimpleOpenNI, int)} but the joint
+	 * positions are read from frame so a single snapshot may be shared by any
+	 * number of gestures.
+	 * 
+	 * @param frame : Snapshot of the user to check the gesture against
+	 * @return
+	 * 	True if gesture is compete.
+	 * 	Gesture is reset if complete. 
+	 *  Gesture is incremented if not complete. 
+	 * @see GestureEngine
+	 */
+	public boolean isComplete(SkeletonFrame frame){
+		return isComplete(frame, getState(frame.getUser()));
+	}
+	/**
+	 * Checks the gesture against a snapshot of the skeleton tracking the 
+	 * progress of the user in state rather than the progress held by this.
+	 * This allows the caller to own the progress of each user.
+	 * 
+	 * @param frame : Snapshot of the user to check the gesture against
+	 * @param state : Progress of the user through this gesture
+	 * @return
+	 * 	True if gesture is compete.
+	 * 	state is reset if complete. 
+	 *  state is incremented if not complete. 
+	 * @see #isComplete(SkeletonFrame)
+	 */
+	public boolean isComplete(SkeletonFrame frame, MatchState state){
+		CompiledGesture c = compiled();
+		if (relation == null || relation.length < c.bufferSize())
+			relation = new double[c.bufferSize()];
+		return isComplete(frame, state, relation);
+	}
+	/**
+	 * Same as {@link #isComplete(SkeletonFrame, MatchState)} but uses buf as 
+	 * scratch space so that a caller checking from multiple threads can give
+	 * each thread its own buffer.
+	 * 
+	 * @param frame : Snapshot of the user to check the gesture against
+	 * @param state : Progress of the user through this gesture
+	 * @param buf : Scratch space of at least {@link CompiledGesture#bufferSize()} values
+	 * @return
+	 * 	True if gesture is compete.
+	 * @see #isComplete(SkeletonFrame, MatchState)
+	 */
+	boolean isComplete(SkeletonFrame frame, MatchState state, double buf[]){
+		return isComplete(frame, state, compiled(), buf, true);
+	}
+	/**
+	 * Same as {@link #isComplete(SkeletonFrame, MatchState, double[])} but the
+	 * steps are evaluated by c, which allows steps shared with other gestures
+	 * to be evaluated once.
+	 * 
+	 * @param c : Evaluates the steps of this gesture
+	 * @param log : False if a completion is not a live one and must not be logged
+	 * @see GestureTrie
+	 */
+	boolean isComplete(SkeletonFrame frame, MatchState state, StepEvaluator c, double buf[], boolean log){
+		int steps = c.steps();
+		if (steps == 0)
+			return false;
 		
 		/*
 		 * Checks for concurrent gesture completion, holding, or failure.
-		 * Concurrency is defined as all phases of a step.
+		 * Concurrency is defined as all phases of a step, if any phase fails
+		 * the step fails and if any phase is holding the step is holding.
 		 */
-		phase = 0;
-		while (phase < sequence.get(step).size()){
-			N = next(context, tick); //continue to the next part of the gesture
-			
-			/*
-			 * A part hit a holding pattern thus forcing the entire concurrent sequence into
-			 * a holding pattern but all parts of the concurrent sequence must be checked for
-			 * failure before so can't stop the while loop
-			 */
-			if (N == null){
-				wait = true; //holding pattern true
-			}
-			
-			//Some part of the gesture failed, reset the entire gesture
-			else if (N == false){
-				step = 0; //Reset gesture
-				return false; //end the while loop a step failed
-			}
-			//check next phase
-			phase++;	
-		}
-		
-		//If no part of this step hit a holding pattern then proceed to the
-		//next step
-		if (!wait){
-			step ++;
+		switch (c.evaluate(frame, state.step, buf)){
+		case CompiledGesture.FAIL:
+			state.reset(); //Reset gesture
+			return false;
+		case CompiledGesture.HOLD:
+			state.hold ++; //holding pattern, wait on the user
+			return false;
+		default:
+			//no part of this step hit a holding pattern so proceed to the next step
+			if (state.step == 0)
+				state.start = frame.getFrame();
+			state.step ++;
+			state.hold = 0;
 		}
 		
 		//if step == seq.size then all steps of the gesture have been completed
 		//reset and return true
-		if (step == sequence.size()){
-			step = 0; //reset gesture
-			logGesture();
+		if (state.step == steps){
+			state.reset(); //reset gesture
+			if (log)
+				logGesture(frame);
 			return true; //return the successful completion
 		}
 		
 		//The gesture was not finished return false
 		return false;
 	}
+	/**
+	 * Checks the gesture against a snapshot of the skeleton following every
+	 * partial match held in hypotheses rather than a single one, see
+	 * {@link HypothesisSet}.
+	 *
+	 * @param frame : Snapshot of the user to check the gesture against
+	 * @param hypotheses : Partial matches of the user through this gesture
+	 * @return
+	 * 	True if any partial match completed the gesture.
+	 * @see GestureEngine.MatchMode#MULTI
+	 */
+	public boolean isComplete(SkeletonFrame frame, HypothesisSet hypotheses){
+		CompiledGesture c = compiled();
+		if (relation == null || relation.length < c.bufferSize())
+			relation = new double[c.bufferSize()];
+		return isComplete(frame, hypotheses, relation);
+	}
+	/**
+	 * Same as {@link #isComplete(SkeletonFrame, HypothesisSet)} but uses buf
+	 * as scratch space.
+	 *
+	 * @param buf : Scratch space of at least {@link CompiledGesture#bufferSize()} values
+	 * @see #isComplete(SkeletonFrame, MatchState, double[])
+	 */
+	boolean isComplete(SkeletonFrame frame, HypothesisSet hypotheses, double buf[]){
+		return isComplete(frame, hypotheses, compiled(), buf, true);
+	}
+	/**
+	 * Same as {@link #isComplete(SkeletonFrame, HypothesisSet, double[])} but
+	 * the steps are evaluated by c.
+	 *
+	 * @param c : Evaluates the steps of this gesture
+	 * @param log : False if a completion is not a live one and must not be logged
+	 * @see GestureTrie
+	 */
+	boolean isComplete(SkeletonFrame frame, HypothesisSet hypotheses, StepEvaluator c, double buf[], boolean log){
+		if (hypotheses.advance(c, frame, buf)){
+			if (log)
+				logGesture(frame);
+			return true;
+		}
+		return false;
+	}
+	/**
+	 * Lowers the gesture into the flat form used for matching. The gesture is
+	 * compiled automatically when it is first checked and after it changes, this
+	 * only needs to be called to force a rebuild.
+	 * 
+	 * @return
+	 * 		The compiled form of this
+	 * @see CompiledGesture
+	 */
+	CompiledGesture compile(){
+		if (sequence == null){
+			//loaded in compiled form, only the holding bounds need rebuilding
+			CompiledGesture c = compiled;
+			compiled = new CompiledGesture(c.stepStart, c.first, c.second, c.width, c.prev, c.target, c.stride);
+		}
+		else
+			compiled = new CompiledGesture(sequence);
+		return compiled;
+	}
+	/**
+	 * @return
+	 * 		The compiled form of this, compiling if sequence or Epsilon changed 
+	 * since it was last compiled
+	 */
+	CompiledGesture compiled(){
+		CompiledGesture c = compiled;
+		if (c == null || !c.isCurrent())
+			c = compile();
+		return c;
+	}
+	/**
+	 * @param state : Progress of a user through this gesture
+	 * @return
+	 * 		The joints required by the current step of the gesture
+	 */
+	private int[] getStepJoints(MatchState state){
+		Vector<JointRelation> current = sequence().get(state.step);
+		int joints[] = new int[current.size()*2];
+		for (int i=0;i<current.size();i++){
+			joints[i*2] = current.get(i).J.First;
+			joints[i*2+1] = current.get(i).J.Second;
+		}
+		return joints;
+	}
+	/**
+	 * Adds all joints that are required to complete this gesture to j.
+	 * @param j - Collection to add the joints to
+	 */
+	public void getJoints(Collection<Integer> j){
+		if (sequence == null){
+			CompiledGesture c = compiled;
+			for (int r=0;r<c.size();r++){
+				j.add(c.first[r]);
+				j.add(c.second[r]);
+			}
+			return;
+		}
+		for (Vector<JointRelation> v : sequence){
+			for (JointRelation jR : v){
+				j.add(jR.J.First);
+				j.add(jR.J.Second);
+			}
+		}
+	}
 	/**
 	 * Not sure what this function is for, it seems to be incomplete?
 	 * Try not to use this.
@@ -428,20 +666,30 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 * <p> False all other times.
 	 */
 	private boolean isComplete(Vector<JointRelation> context){
-		if (step == size()){
-			logGesture();
+		MatchState state = getState(SkeletonFrame.RECORDING_USER);
+		if (state.step == size()){
+			logGesture(null);
 			return true;
 		}
 		//TODO finish this function, it is just another isComplete function
 		return false;
 	}
 	/**
-	 * Manually restart the gesture may be useful to impose other restrictions on the gesture
-	 * that the controller does not account for such as being within a bounding box or holding
-	 * an object
+	 * Manually restart the gesture for all users may be useful to impose other restrictions 
+	 * on the gesture that the controller does not account for such as being within a bounding
+	 * box or holding an object
 	 */
 	public void reset(){
-		step = 0; //reset gesture
+		if (users != null)
+			users.clear(); //reset gesture
+	}
+	/**
+	 * Manually restart the gesture for a single user
+	 * @param user : Id of user to reset
+	 * @see #reset()
+	 */
+	public void reset(int user){
+		getState(user).reset();
 	}
 	/**
 	 * Compares to double point values taking {@link #Epsilon} into account for equality.
@@ -515,58 +763,6 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	public boolean equalAxes(PVector a, PVector b){
 		return comp(a.x, b.x) == 0 && comp(a.y,b.y) ==0 && comp(a.z, b.z)==0;
 	}
-	/**
-	 * Check if the current step matches the relationship given by x,y,z perfectly 
-	 * 
-	 * @param V : PVector containing the relationship of the joints
-	 * @return
-	 * 		True if the V.x,V.y,and V.z all match the respective relationship given by the current
-	 * step in the sequence
-	 */
-	private boolean stepMatch(JointRelation V){
-		JointRelation target = sequence.get(step).get(phase); //get current step
-		//check for x,y,and z matches against target
-		return target.equalsCoordinates(V);
-	}
-	/**
-	 * Checks to see if the given x,y,z relationships fall between the relationships given by
-	 * the current step and the previous step. This is used to check if a gesture may have paused
-	 * but not terminated such as the user is moving slow so they haven't made it to the next step
-	 * but did not do anything wrong yet the controller just needs to wait on the user to finish the
-	 * gesture.
-	 * 
-	 * @param V : PVector containing the relationship of the joints
-	 * 
-	 * @return
-	 * 		True if the given relationships fall between the current and previous step.
-	 */
-	private boolean midMatch(JointRelation V){
-		
-		JointRelation cur = sequence.get(step).get(phase); //get current step
-		
-		//First step of joint type
-		if(cur.prev == null){
-			return false; //There is no middle ground on the start
-		}
-			
-		/*All Other steps*/
-		
-		//get previous of equal joint pair step as denoted by cur.prev
-		JointRelation prev = sequence.get(cur.prev.First).get(cur.prev.Second); 
-
-		//check relation between all coordinates return true if all are within range else false
-		boolean range =  V.boundedBy(cur, prev);
-		
-	
-		//check if current position is between the previous point and the one before that, this is possible
-		//in a continuous gesture due to epsilon jumping ahead
-		if (!range && prev.prev != null){
-			cur = prev;
-			prev = sequence.get(cur.prev.First).get(cur.prev.Second);
-			range = V.boundedBy(cur, prev);
-		}
-		return range;
-	}
 	/**
 	 * Checks if val is between cur and prev, the bounds do not need to be in any order thus
 	 * if prev > cur, cur > prev, or cur = prev this will still return the proper value
@@ -610,6 +806,22 @@ public class GestureController implements xmlGestureParser<GestureController>{
 		PVector proj = new PVector();
 		PVector real = new PVector();
 		
+		return getCoordinites(c, user, joint, proj, real);
+	}
+	/**
+	 * Same as {@link #getRealCoordinites(SimpleOpenNI, int, int)} but does not
+	 * check if user is tracked and places the data into proj and real rather than 
+	 * creating new PVectors. Used when many joints of a user are retrieved at once.
+	 * 
+	 * @param c : A SimpleOpenNI context
+	 * @param user : A user id to retrieve joint data on, must be tracked
+	 * @param joint : A SimpleOpenNI constant representing a joint
+	 * @param proj : PVector to store the raw joint position in
+	 * @param real : PVector to store the converted joint position in
+	 * @return
+	 * 		Either proj or real as determined by {@link #projType}
+	 */
+	static PVector getCoordinites(SimpleOpenNI c, int user, int joint, PVector proj, PVector real){
 		//get joint data from context as determined by the c
 		c.getJointPositionSkeleton(user, joint, proj);
 		
@@ -624,522 +836,175 @@ public class GestureController implements xmlGestureParser<GestureController>{
 			return proj; 
 	}
 	/**
-	 * Checks the next step to see if the skeletal model derived from context matches the expected
-	 * values and increments step accordingly
-	 * @param context : SimpleOpenNI instance
-	 * @param user : Id of user to get skeletal model data from
+	 * Same as {@link #getRealCoordinites(SimpleOpenNI, int, int)} with the
+	 * joint taken from any source.
 	 * @return
-	 * 		True if the gesture step completed and step was incremented
-	 * 		False if the gesture failed and step was reset
-	 * 		null if the gesture hit a holding pattern and step did not change
+	 * 		Position of the joint, null if source does not know it
 	 */
-	private Boolean next(SimpleOpenNI context, int user){
-
-		//if not tracking user then that user auto fails
-		if (!context.isTrackingSkeleton(user)){
-			step = 0; //reset gesture 
-			return false;
-		}
-		
-		//Get Joint Positions in converted format
-		PVector JointOneReal = getRealCoordinites(context,user, sequence.get(step).get(phase).J.First);
-		PVector JointTwoReal = getRealCoordinites(context,user, sequence.get(step).get(phase).J.Second);
-
-		//compare each joint locations at each axis
-		JointRelation rel = compareJointPositions(sequence.get(step).get(phase).J,JointOneReal, JointTwoReal);
-
-
-		//IF stepMach() Position is exactly what is expected
-		if (stepMatch(rel)){
-//			step ++; //Increment Gesture done with isComplete()
-//			if (debug) System.out.print("! ");
-			return true;
-		}
-
-		//IF midMatch() Position is not quite right but not wrong yet either
-		if (midMatch(rel)){
-//  		step = step; //maintain position
-//			if (debug) System.out.print(".");
+	protected static PVector getRealCoordinites(SkeletonSource source, int user, int joint){
+		PVector p = new PVector();
+		if (!source.getJoint(user, joint, p))
 			return null;
-		}
-
-		//Position has nothing to do with what was expected
-		//Gesture Failed 
-//		if (debug && step > 0) System.out.println("X");
-		step = 0; //reset gesture
-		return false;
-	} 
-	/**
-	 * Functionally the same as {@link #next(SimpleOpenNI, int)} but checks
-	 * a JointRecorder instance to determine the current value to compare to.
-	 * 
-	 * @param context - JointRecorder to parse data data from
-	 * @param tick - time tick of the recorder to view
-	 * 
-	 * @see #next(SimpleOpenNI, int)
-	 */
-	private Boolean next(JointRecorder context, int tick){
-		//Get Joint Positions in converted format
-		PVector JointOneReal = context.getJoint(tick, sequence.get(step).get(phase).J.First);
-		PVector JointTwoReal = context.getJoint(tick, sequence.get(step).get(phase).J.Second);
-
-		if (JointOneReal == null || JointTwoReal == null){
-			return false;
-		}
-		//compare each joint locations at each axis
-		JointRelation rel = compareJointPositions(sequence.get(step).get(phase).J,JointOneReal, JointTwoReal);
-		
-		//IF stepMach() Position is exactly what is expected
-		if (stepMatch(rel)){
-//			step ++; //Increment Gesture handled by isComplete()
-//			if (debug) System.out.println(Name+" continue");
-			return true;
-		}
-
-		//IF midMatch() Position is not quite right but not wrong yet either
-		if (midMatch(rel)){
-			//  step = step; //maintain position
-//			if (debug) System.out.println(Name+" Holding");
-			return null;
-		}
-
-		//Position has nothing to do with what was expected
-		//Gesture Failed 
-		
-		step = 0; //reset gesture
-		return false;
+		return p;
 	}
 	/**
 	 * Converts a gesture into only discreetly detectable steps, the method of
 	 * converting is determined by type
 	 * 
-	 * <p> There may be issues with concurrent pieces if type is not NONE, most bugs 
-	 * have been worked out but fair warning has been given.
+	 * <p> The relations of each joint pair form a chain through their prev
+	 * links that is compressed apart from every other pair, the chains are
+	 * compressed at the same time and zipped back into steps in their
+	 * original order through {@link #add(JointRelation)}, so the steps of the
+	 * result follow the same concurrency rules as a recorded gesture.
 	 * 
 	 * @param type : The type of compression to be used
 	 * @see CompressionType
+	 * @see #compress(int)
 	 * 
 	 */
 	protected void simplifyGesture(CompressionType type){
 		//If no compression then return
 		if (type == CompressionType.NONE) return;
 		
-		link.clear();
-		
-		//array to track what elements have been reduced already
-		boolean reduced[] = new boolean[sequence.size()];
-		
-		//list of lists that shows what points are within epsilon of each other
-		List<List<Vector<JointRelation>>> compress = new ArrayList<List<Vector<JointRelation>>>();
-		
-		//list of vectors showing the index of the point in the corresponding compress list
-		List<Vector<Integer>> compIndex = new ArrayList<Vector<Integer>>();
-		
-		//vector used to add to compIndex
-		Vector<Integer> localIndex = new Vector<Integer>();
-		
-		/* This plays through backwards because if there is multiple sets of focus
-		 * joints in the sequence then it must use previous to determine the relationship
-		 * between the values of sequence and in a move of utter brilliance I though that
-		 * if I could navigate a list in one fashion that it should be a singly linked
-		 * list in reverse.
-		 */
-		for (int i = sequence.size()-1;i>=0;i--){
-			//if the point has not been reduced start compress with it
-			if(!reduced[i]){
-				if (debug) System.out.print("X ");
-				
-				//create new index array for reduce to populate
-				localIndex = new Vector<Integer>();
-				
-				//add the list that is returned from reduce to compress
-				compress.add(reduce(i,reduced, localIndex));
-				
-				//add the index that goes along with the compress list
-				compIndex.add(localIndex);
-			}
-		}
-		
-		if (debug) System.out.println("nodes: "+compress.size());
-		//if the type is simple compression then just take the head of each list
-		//and add it to a new vector of JointRelaitons and replace sequence with
-		//the new vector
-		if (type == CompressionType.SIMPLE){
-			//clear sequence and link
-			sequence.clear();
-			link.clear();
-			
-			//walk the reversed list in reverse for correct direction
-			for (int i=compress.size()-1;i>=0;i--){
-				//get the head of the list
-				Vector<JointRelation> head = compress.get(i).get(0);
-				
-				for (JointRelation h : head){
-					//directly add JointRelation into sequence cause functions are
-					//there to be used
-					add(h);
-				}
-			}
-			//the simple compression has been completed, return
-			return;
-		}
-		
-		//the compression type is at least average so run averageReduction
-		//on the compress list
-		Vector<Vector<JointRelation>> average = averageReduction(compress);
-		
-		//TODO DBL_AVG still needs work
-		
-		//If the compression is DBL_AVG then there is still more to do
-		//namely use the average values as the alpha values for computing
-		//the list that comprise compress.
-		if (type == CompressionType.DBL_AVG){
-//			if(debug) System.out.println(compIndex);
-			int i=average.size()-1; //average is now correctly ordered
-			reduced = new boolean [size()]; //reset reduced
-			compress.clear(); //clear the compress array 
-			
-			//for all the vectors in the list of compIndex use the value of
-			//average that corresponded to that compress list to rebuild compress
-			for (i=0;i<compIndex.size();i++){
-//				if (debug) System.out.println(compIndex.get(i));
-				if (debug) System.out.print("X ");
-				
-				//clearing reduce here allows points to be placed into more than
-				//one node. comment this out to prevent that
-				reduced = new boolean [size()];
-				
-				//get the current index
-				Vector<Integer> nodeIndex = compIndex.get(i);
-				
-				//create a new list to add points to 
-				List<Vector<JointRelation>> l = new ArrayList<Vector<JointRelation>>();
-				
-				//grab the value from average to use as alpha
-				Vector<JointRelation> alpha = average.get(i);
-				
-				//add prev nodes, runs the reduce function in reverse on the node
-				//to see what this is doing go look at reduce()
-				if (i > 0){
-					Vector<Integer> index = compIndex.get(i-1);
-					
-					List<Vector<JointRelation>> s = reduce(alpha,index, true);
-					if (!s.isEmpty())
-						l.addAll(s);
-				}
-				
-				//add current node
-				//add all points in the current node to the average sequence as
-				//averaging the points across the node guarantees that all the 
-				//points within the node are within epsilon as both ends are
-				//bound by +- epsilon and the average moves the start into the 
-				//center so that both ends are still within epsilon of the average
-				//point that is being used to compare.
-				for (Integer k : nodeIndex){
-					if (debug) System.out.print(k+" ");
-					l.add(sequence.get(k));
-				}
-				
-				//add next nodes
-				//iterate through the nodes in the order that the reverse index
-				//dictates, when one fails then break
-				if (i < compIndex.size()-1){
-					Vector<Integer> index = compIndex.get(i+1);
-					List<Vector<JointRelation>> s = reduce(alpha, index, false);
-					if (!s.isEmpty())
-						l.addAll(s);
-				}
-				
-				//add the list to compress
-				compress.add(l);
-			}
-			if (debug) System.out.println("nodes: "+compress.size());
-			
-			//average the compression list
-			average = averageReduction(compress);
-		}
-		
-		//set sequence to the appropriate average value
-		sequence = average;
-
+		GestureController c = compress(type.getMask()).get(type);
+		sequence = c.sequence;
+		link = c.link;
+		compiled = null;
+		if (debug) System.out.println("nodes: "+size());
 	}
 	/**
-	 * Process alpha across index and compute a list of matching points in index
-	 * that are within {@link Epsilon} of alpha.
+	 * Compresses this as every CompressionType in mask without changing
+	 * this, so the same sequence may be compressed any number of ways.
+	 * <p>
+	 * The sequence is split into the chain of each joint pair a single time
+	 * and every type is produced from those chains. Each chain is grouped into
+	 * Epsilon nodes a single time for SIMPLE, AVG and DBL_AVG and the averages
+	 * of the nodes are shared by AVG and DBL_AVG, PIECEWISE marks the steps it
+	 * keeps from the same chains. The chains are compressed at the same time.
 	 * 
-	 * @param alpha - Value to compare to values in index
-	 * @param index - Index of values to process against alpha
-	 * @param rev - Process index in reverse?
+	 * @param mask : Masks of the types to produce ORed together
 	 * @return
-	 * 		List<Vector<JointRelation> matching all values that alpha overlaps.
+	 * 		New gesture for each type in mask, in the order of CompressionType
+	 * @see CompressionType#getMask()
 	 */
-	private List<Vector<JointRelation>> reduce(Vector<JointRelation> alpha, Vector<Integer> index, boolean rev){
-		//create list to return
-		List<Vector<JointRelation>> l = new ArrayList<Vector<JointRelation>>();
-		
-		//beta value to compare to alpha
-		Vector<JointRelation> beta;
-		
-		//gamma to determine matching pairs
-		Vector<Pair> gamma = new Vector<Pair>();
-		
-		//fill gamma with the previous values of jR to easily track matching
-		//values in the next block
-		for (JointRelation jR : alpha){
-			//if there is no previous value then return
-			if (jR.prev == null){
-				gamma = null;
-				return l;
-			}
-			
-			//if there is data in gamma and the jR.prev.First != gamma.last.First
-			//then alpha is pointing at two different steps in sequence and thus 
-			//no single step will match so it stands alone
-			if (gamma.size()>0 &&  !jR.prev.First.equals(gamma.lastElement().First)){
-				gamma = null;
-				break;
-			}
-			gamma.add(jR.prev);
-		}
-		
-		//start and end values based on if the processing is in reverse or not
-		int inc = rev ? -1 : 1;
-		int start = rev ? index.size()-1 : 0;
-		int end = rev ? -1 : index.size();
-		
-		//boolean to determine if a loop was terminated early
-		boolean br = false;
-		
-		for (int j=start;j != end;j+=inc){
-			if (debug) System.out.print(index.get(j)+" ");
-			
-			beta = new Vector<JointRelation>();
-			if (gamma == null) return l;
-			
-			//Add the value specified by gamma into beta and then compare those
-			//values with alpha for all values in gamma.
-			for (int k=0;k<gamma.size();k++){
-				beta.add(sequence.get(index.get(j)).get(gamma.get(k).Second));
-				//compare alpha to beta 
-				if (alpha.get(k).equalsCoordinates(beta.get(k))){
-					//smoothing goes here if it is ever added back
+	Map<CompressionType, GestureController> compress(int mask){
+		Map<CompressionType, GestureController> result = new EnumMap<CompressionType, GestureController>(CompressionType.class);
+		Vector<Vector<JointRelation>> seq = sequence();
+		
+		//split the sequence into the chain of each pair, the slot of a
+		//relation is its position in the sequence read step by step
+		Map<Pair, PairChain> chain = new LinkedHashMap<Pair, PairChain>();
+		int slots = 0;
+		for (int t=0;t<seq.size();t++){
+			for (JointRelation jR : seq.get(t)){
+				PairChain c = chain.get(jR.J);
+				if (c == null){
+					c = new PairChain(jR.J);
+					chain.put(jR.J, c);
 				}
-				else{
-					br = true;
-					break;
-				}
-			}
-			//all of beta passed so add it to the list
-			if (!br){
-				l.add(beta);
-			}
-			//beta did not pass so return
-			else
-				return l;
-			
-//			if (debug) System.out.print(gamma.firstElement().First+" ");
-			
-			//Regenerate the gamma values using beta as the seed
-			gamma = new Vector<Pair>();
-			for (JointRelation jR : beta){
-				if (jR.prev == null){
-					gamma = null;
-					break;
-				}
-				if (gamma.size()>0 && jR.prev.First != gamma.lastElement().First){
-						gamma = null;
-						break;
-				}
-				gamma.add(jR.prev);
+				c.add(slots++, t, jR);
 			}
 		}
-		return l;
-	}
-	/**
-	 * Iteratively walk through a vector following the prev link and create a list
-	 * of maximum size of continuous points that are within epsilon of i
-	 * @param i : Index of sequence to begin on
-	 * @param visit : Shows which indexes have been visited
-	 * @param index : An index of the positions in the returned list
-	 * @return
-	 * 		A list of the points that are within epsilon of sequence.get(i)<p>
-	 * 		Null if i is outOfBounds or visit[i] is true
-	 */
-	private List<Vector<JointRelation>> reduce(int i, boolean visit[], Vector<Integer> index){
-		//If i is out of bounds or the point has been visited return null
-		if (i < 0 || i >= size() || visit[i]){
-			index.clear();
-			return null;
+		PairChain chains[] = chain.values().toArray(new PairChain[chain.size()]);
+		
+		//each chain places the relation of each of its nodes into the slot of
+		//the last relation of the node
+		Map<CompressionType, JointRelation[]> out = new EnumMap<CompressionType, JointRelation[]>(CompressionType.class);
+		for (CompressionType type : CompressionType.values()){
+			if ((mask & type.getMask()) != 0 && type != CompressionType.NONE && type != CompressionType.PIECEWISE)
+				out.put(type, new JointRelation[slots]);
 		}
-		
-		//set visit to true so this point is marked as seen
-		visit[i] = true;
-		List<Vector<JointRelation>> l = new ArrayList<Vector<JointRelation>>();
-		
-		//clear the index and then add i to it
-		index.clear();
-		index.add(i);
-		
-		//set sequence[i] as alpha to be used for comparison of other points
-		Vector<JointRelation> alpha = sequence.get(i);
-		Vector<JointRelation> beta;
-		
-		//Create a gamma vector that contains the link to all previous points
-		//from alpha in the order determined by alpha.
-		Vector<Pair> gamma = new Vector<Pair>();
-		for(JointRelation jR : alpha){
-			//if there is no previous point then this is the first point and the
-			//beginnig of the list has been reached so break;
-			if (jR.prev == null){
-				gamma = null;
-				break;
-			}
-			//if there is data in gamma and the jR.prev points to a different step than
-			//gamma.lastElement, alpha points to two different steps in sequence so no
-			//individual step could match thus stop wasting time and break.
-			if (gamma.size()>0 && !jR.prev.First.equals(gamma.lastElement().First)){
-				gamma = null;
-				break;
+		boolean keep[] = (mask & CompressionType.PIECEWISE.getMask()) != 0 ? new boolean[seq.size()] : null;
+		double max = getMaxDeviation();
+		if (chains.length == 1)
+			chains[0].compress(out, keep, max);
+		else if (chains.length > 1 && (keep != null || !out.isEmpty()))
+			compressor().invoke(new ChainCompression(chains, 0, chains.length, out, keep, max));
+		
+		for (CompressionType type : CompressionType.values()){
+			if ((mask & type.getMask()) == 0)
+				continue;
+			GestureController g = new GestureController();
+			g.Name = Name;
+			if (type == CompressionType.NONE){
+				for (Vector<JointRelation> step : seq){
+					for (JointRelation jR : step){
+						g.add(jR.copy());
+					}
+				}
 			}
-			gamma.add(jR.prev);
-		}
-		
-		//add alpha vector to the return list
-		l.add(sequence.get(i));
-		if (debug) System.out.print(i+" ");
-		
-		//while the gamma values remain usable continue
-		while (gamma != null){
-			//get beta
-			beta = new Vector<JointRelation>();
-			boolean br = false; //signals a break
-			for (int j=0;j<gamma.size();j++){
-				
-				beta.add(sequence.get(gamma.get(j).First).get(gamma.get(j).Second));
-				//compare alpha to beta 
-				if (alpha.get(j).equalsCoordinates(beta.get(j))){
-//					if (debug) System.out.print("?");
-					
-					//TODO look at re-enabling smoothing
-					
-					//This just smoothing, while things are being reworked this 
-					//is temporarily disabled
-					
-/*
-					//if the size of the list is greater than 1 (2+) then check
-					//that beta fits at the end of the list by checking if the 
-					//beginning of the list and beta bound a middle value that has
-					//already been put into the list, the value that is randomly 
-					//selected is always the end of the list.
-					if (l.size() > 1){
-						JointRelation outer = l.get(0);
-						JointRelation inner = l.get(l.size()-1);
-						//if the bound holds then add beta to the list
-						if (inner.boundedBy(outer, beta)){
-							l.add(beta);
-						}
-						//beta did not fit within the bounds of the list so it 
-						//does not belong thus the list is finished
-						else
-							return l;
+			else if (type == CompressionType.PIECEWISE){
+				//a step kept for one pair may push another past max
+				boolean changed = true;
+				while (changed){
+					changed = false;
+					for (PairChain c : chains){
+						changed |= c.repair(keep, max);
 					}
-*/
-					
-					//there was not enough elements to create a bound so add beta
-					//to the list as it was in range
-//					else{
-//						index.add(prev);
-//					}
 				}
-				//beta does not fit, break and mark as broken
-				else{
-					br = true;
-					break;
+				for (int t=0;t<seq.size();t++){
+					if (!keep[t])
+						continue;
+					for (JointRelation jR : seq.get(t)){
+						g.add(jR.copy());
+					}
 				}
 			}
-			//all of beta passed so add it to the list
-			if (!br){
-				l.add(beta);
-			}
-			//beta did not pass so return
-			else
-				return l;
-			
-			if (debug) System.out.print(gamma.firstElement().First+" ");
-			//mark beta as visited and continue following the prev link through
-			//sequence until it terminates or a point fails to that fails to fit
-			//into the list is found
-			visit[gamma.firstElement().First] = true;
-			index.add(gamma.firstElement().First);
-			
-			//reset and regenerate gamma using beta as the seed
-			gamma = new Vector<Pair>();
-			for (JointRelation jR : beta){
-				if (jR.prev == null){
-					gamma = null;
-					break;
-				}
-				if (gamma.size()>0 &&  !jR.prev.First.equals(gamma.lastElement().First)){
-						gamma = null;
-						break;
+			else{
+				//zip the chains back into steps in the order of their slots
+				for (JointRelation jR : out.get(type)){
+					if (jR != null)
+						g.add(jR);
 				}
-				gamma.add(jR.prev);
 			}
+			result.put(type, g);
 		}
-		return l;
+		return result;
 	}
 	/**
-	 * Averages all the points within the sublists of compress and returns a vector
-	 * of the result
-	 * @param compress : List of lists to average
 	 * @return
-	 * 		Vector<JointRelation> where each element is the average of a sub-list
-	 * of compress.
+	 * 		Pool that compresses the chains of each joint pair, created on first use
+	 */
+	private static synchronized ForkJoinPool compressor(){
+		if (compressor == null)
+			compressor = new ForkJoinPool();
+		return compressor;
+	}
+	/**
+	 * Compresses a range of chains, splitting the range in half until it
+	 * holds a single chain. The chains only read their own relations and
+	 * write their own slots of out, the steps marked in keep are only ever
+	 * set to true.
 	 */
-	private Vector<Vector<JointRelation>> averageReduction(List<List<Vector<JointRelation>>> compress){
+	private static class ChainCompression extends RecursiveAction{
+		/**Generated serialVersionUID for serialization*/
+		private static final long serialVersionUID = -6094826364307911735L;
 
-		/* Basic average of all equal points.
-		 * 
-		 * Upholds concurrency by equating if there is a terminating
-		 * concurrent condition then the average will be a terminating
-		 * condition.
-		 */
-		Vector<Vector<JointRelation>> average = new Vector<Vector<JointRelation>>();
-		link = new HashMap<Pair, Pair>();
-		
-		for (int i=compress.size()-1;i>=0;i--){
-			
-			JointRelation sum;
-			List<Vector<JointRelation>> current = compress.get(i);
-			
-			for (int j=0;j<current.get(0).size();j++){
-				sum = new JointRelation();
-				sum.J = current.get(0).get(j).J;
-				sum.angle = new ArrayList<Euclidean>();
-				sum.angleType = current.get(0).get(j).angleType;
-				
-				Vector<Vector<Euclidean>> innerAngle = new Vector<Vector<Euclidean>>();
-				for (int k=0;k<current.size();k++){
-					JointRelation jR = current.get(k).get(j);
-					for (int e=0;e<jR.angle.size();e++){
-						if (innerAngle.size()==e)
-							innerAngle.add(new Vector<Euclidean>());
-						innerAngle.get(e).add(jR.angle.get(e));
-					}
-				}
-				for (Vector<Euclidean> v : innerAngle){
-					sum.angle.add(Euclidean.average(v));
-				}
-				sum.setPrev(link.get(sum.J));
+		private PairChain chains[];
+		private int from;
+		private int to;
+		private Map<CompressionType, JointRelation[]> out;
+		private boolean keep[];
+		private double max;
 
-				if (average.isEmpty() || (link.get(sum.J)!= null && link.get(sum.J).First==average.size()-1))
-					average.add(new Vector<JointRelation>());	
-				
-				average.lastElement().add(sum);
-				link.put(sum.J, new Pair(average.size()-1, average.lastElement().size()-1));
+		ChainCompression(PairChain chains[], int from, int to, Map<CompressionType, JointRelation[]> out, boolean keep[], double max){
+			this.chains = chains;
+			this.from = from;
+			this.to = to;
+			this.out = out;
+			this.keep = keep;
+			this.max = max;
+		}
+		@Override
+		protected void compute(){
+			if (to-from > 1){
+				int mid = (from+to)>>>1;
+				invokeAll(new ChainCompression(chains, from, mid, out, keep, max),
+						new ChainCompression(chains, mid, to, out, keep, max));
+				return;
 			}
+			chains[from].compress(out, keep, max);
 		}
-		return average;
 	}
 	/**
 	 * Modifies Epsilon by delta, a positive delta will make position detection less 
@@ -1154,6 +1019,25 @@ public class GestureController implements xmlGestureParser<GestureController>{
 		Euclidean.changeEpsilon(delta);
 		Epsilon = Euclidean.getEpsilon();
 	}
+	/**
+	 * Sets the greatest distance, in any value of a relation, that a step
+	 * dropped by {@link CompressionType#PIECEWISE} may lie from the path that
+	 * is kept.
+	 * @param max : Greatest deviation, 0 to use half of Epsilon
+	 */
+	public static void setMaxDeviation(double max){
+		maxDeviation = Math.max(0, max);
+	}
+	/**
+	 * @return
+	 * 		Greatest deviation allowed by {@link CompressionType#PIECEWISE}. When
+	 * not set this is half of Epsilon, the amount the holding bounds between
+	 * two steps are widened by, so a user following the recorded path is
+	 * always holding between the steps that were kept.
+	 */
+	public static double getMaxDeviation(){
+		return maxDeviation > 0 ? maxDeviation : Euclidean.getEpsilon()*.5;
+	}
 	/** 
 	 * Returns the value of {@link Euclidean#Epsilon}
 	 * 
@@ -1177,63 +1061,63 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	}
 	/**
 	 * Enables logging of gestures upon completion, gestures will be logged
-	 * until {@link #closeLog()} is called.
+	 * until {@link #closeLog()} is called. The log is written by a
+	 * {@link CompletionLog} with its default settings, any log already
+	 * enabled is closed first.
 	 * <p> For valid XML format closeLog() must be called.
 	 *  
 	 * @param logFile : String indicating what file should be used for log
-	 * @throws IOException
 	 */
 	public static void enableLog(String logFile){
 		try{
-		logWriter = new BufferedWriter(new FileWriter(logFile));
-		String content = new String();
-		content +="<?xml version=\"1.0\"?>"+'\n';
-		content +="<root>"+'\n';
-		logWriter.write(content);
+			enableLog(new CompletionLog(logFile));
 		}catch(IOException e){
 			System.err.println(e.getLocalizedMessage());
 			System.err.println("Log file "+logFile+" failed to open");
 		}
 	}
 	/**
-	 * Logs a gesture upon completion if log is enabled the log format is
-	 * <p> {@literal <gestureCompletion>}
-	 * <p> {@link #Name}
-	 * <p> {@literal <time> current time </time>}
-	 * <p> {@literal </gestureCompletion>}
+	 * Enables logging of gestures upon completion to l, any log already
+	 * enabled is closed first.
+	 * @param l : Log to write completions to
 	 */
-	private void logGesture(){
-		if (logWriter == null)
-			return;
-		
-		String content = new String();
-		Long time = System.currentTimeMillis();
-		content += "<gestureCompletion>"+'\n';
-		content += Name+'\n';
-		content += xmlStatics.createElement("time", time.toString());
-		content += "</gestureCompletion>"+'\n';
+	public static synchronized void enableLog(CompletionLog l){
 		try {
-			logWriter.write(content);
-			logWriter.flush();
+			closeLog();
 		} catch (IOException e) {
 			System.err.println(e.getLocalizedMessage());
-			System.err.println("Gesture failed to log."+'\n'+"Gesture: "+Name+
-					'\n'+"Time: "+System.currentTimeMillis()+'\n'+"logWriter reset");
-			logWriter = null;
 		}
+		log = l;
 	}
 	/**
-	 * If log is enabled this closes the log and disables logging until it is
-	 * re-enabled through {@link #enableLog(String)}
+	 * Logs a gesture upon completion if log is enabled, see
+	 * {@link CompletionLog} for the format. The completion is only queued,
+	 * nothing is written by the calling thread.
+	 * @param frame : Frame the gesture completed on, null if unknown
+	 */
+	private void logGesture(SkeletonFrame frame){
+		CompletionLog l = log;
+		if (l == null)
+			return;
+		
+		if (frame == null)
+			l.add(Name, SkeletonFrame.RECORDING_USER, -1, 0);
+		else
+			l.add(Name, frame.getUser(), frame.getFrame(), frame.getCaptured());
+	}
+	/**
+	 * If log is enabled this writes every completion already logged, closes
+	 * the log and disables logging until it is re-enabled through
+	 * {@link #enableLog(String)}
 	 * @throws IOException
 	 */
-	public static void closeLog() throws IOException{
-		if (logWriter == null)
+	public static synchronized void closeLog() throws IOException{
+		CompletionLog l = log;
+		if (l == null)
 			return;
 		
-		logWriter.write("</root>");
-		logWriter.close();
-		logWriter = null;
+		log = null;
+		l.close();
 	}
 	/**
 	 * @return
@@ -1241,7 +1125,7 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 */
 	public Vector<Vector<JointRelation>> getSequence(){
 		@SuppressWarnings("unchecked") //this is OK, casting back to Vector<JointRelation>
-		Vector<Vector<JointRelation>> r = (Vector<Vector<JointRelation>>) sequence.clone();
+		Vector<Vector<JointRelation>> r = (Vector<Vector<JointRelation>>) sequence().clone();
 		return r;
 	}
 	/**
@@ -1271,9 +1155,9 @@ public class GestureController implements xmlGestureParser<GestureController>{
 		//see how many times o.sequence matches up with this.sequence if any
 		//and where those matches occur
 		Vector<Integer> strikes = new Vector<Integer>();
-		for (int i=0;i<o.sequence.size();i++){
-			if (this.isComplete(o.sequence.get(i))){
-				strikes.add(o.step);
+		for (int i=0;i<o.sequence().size();i++){
+			if (this.isComplete(o.sequence().get(i))){
+				strikes.add(o.getState(SkeletonFrame.RECORDING_USER).step);
 			}
 		}
 		
@@ -1307,10 +1191,10 @@ public class GestureController implements xmlGestureParser<GestureController>{
 		int min=0;
 		for (int i=0;i<o.size();i++){
 			if (this.size()==0) break;
-			Vector<JointRelation> ins = o.sequence.get(i);
+			Vector<JointRelation> ins = o.sequence().get(i);
 			for (int j=min;j<this.size()-1;i++){
-				Vector<JointRelation> lb = this.sequence.get(j);
-				Vector<JointRelation> ub = this.sequence.get(j+1);
+				Vector<JointRelation> lb = this.sequence().get(j);
+				Vector<JointRelation> ub = this.sequence().get(j+1);
 
 				//if the vectors are different sized then they represent different
 				//gestures and don't mesh so don't even try
@@ -1385,6 +1269,7 @@ public class GestureController implements xmlGestureParser<GestureController>{
 			}
 		}
 		if (!valid) return false;
+		compiled = null;
 		
 		//marks that unmeshed elements will be placed at the beginning
 		boolean begin = true;
@@ -1399,18 +1284,18 @@ public class GestureController implements xmlGestureParser<GestureController>{
 			if (position == 0 ){
 				//if begin add unmeshed steps to the front
 				if (begin){
-					sequence.insertElementAt(o.sequence.get(i), position);
+					sequence().insertElementAt(o.sequence().get(i), position);
 				}
 				//if !begin then add unmeshed steps to the end
 				else{
-					sequence.add(o.sequence.get(i));
+					sequence().add(o.sequence().get(i));
 				}
 			}
 			//when a meshed point is hit add it at the appropriate position
 			//then mark begin as false to place unmeshed points at the end
 			else{
 				begin = false;
-				sequence.insertElementAt(o.sequence.get(i), position);
+				sequence().insertElementAt(o.sequence().get(i), position);
 			}
 		}
 		return true;
@@ -1423,7 +1308,8 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 * <p> False if append failed.
 	 */
 	public boolean append(GestureController o){
-		return sequence.addAll(o.sequence);
+		compiled = null;
+		return sequence().addAll(o.sequence);
 	}
 	/**
 	 * Finds the pair represented by s in target. guess is used as the first
@@ -1462,10 +1348,11 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 */
 	public void mirror(){
 		//reset gesture
-		step = 0;
+		reset();
+		compiled = null;
 		
 		//iterator for sequence
-		Iterator<Vector<JointRelation>> seq = sequence.iterator();
+		Iterator<Vector<JointRelation>> seq = sequence().iterator();
 		//map from current to mirror values
 		Map<Integer, Integer> m = new HashMap<Integer, Integer>();
 		//set of values previously processed
@@ -1497,22 +1384,54 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 * 		Number of steps that this gesture contains
 	 */
 	public int size(){
-		return sequence.size();
+		return sequence == null ? compiled.steps : sequence.size();
 	}
 	/**
 	 * Clears ALL steps from this gesture
 	 */
 	public void clear(){
-		sequence.clear();
+		sequence().clear();
+		link.clear();
+		compiled = null;
+	}
+	/**
+	 * Replaces every step of this gesture with steps, the previous location
+	 * of each relation is expected to already be set. Used by
+	 * {@link GestureLoader} to place a loaded sequence without the cost of
+	 * {@link #add(JointRelation)} for each relation.
+	 * @param steps - Sequence to take, held rather than copied
+	 */
+	void setSequence(Vector<Vector<JointRelation>> steps){
+		sequence = steps;
 		link.clear();
+		for (int i=0;i<sequence.size();i++){
+			Vector<JointRelation> step = sequence.get(i);
+			for (int k=0;k<step.size();k++){
+				link.put(step.get(k).J, new Pair(i, k));
+			}
+		}
+		compiled = null;
+	}
+	/**
+	 * @return
+	 * 		Sequence of this, built from the compiled form if this was loaded
+	 * without one
+	 */
+	private Vector<Vector<JointRelation>> sequence(){
+		if (sequence == null){
+			CompiledGesture c = compiled;
+			setSequence(c.expand());
+			compiled = c;
+		}
+		return sequence;
 	}
 	public String toString(){
 		String info = new String();
 		info += "Steps: "+size()+'\n';
-		info += "current step: "+step+'\n';
+		info += "users: "+(users == null ? "{}" : users.toString())+'\n';
 		int i=0;
 		info +=i+": ";
-		for (Vector<JointRelation> v : sequence){
+		for (Vector<JointRelation> v : sequence()){
 			for(JointRelation jR : v){
 				info += jR.toString()+" ";
 			}
@@ -1521,47 +1440,45 @@ public class GestureController implements xmlGestureParser<GestureController>{
 		return info;
 	}
 	public void save(String fileName, List<GestureController> g){
-		BufferedWriter wr;
-		try {
-			wr = new BufferedWriter(new FileWriter(fileName));
-		} catch (IOException e) {
-			System.out.println("IOException: "+e.getMessage());
-			e.printStackTrace();
-			return;
-		}
-		String content = new String();
-		
-		content +="<?xml version=\"1.0\"?>"+'\n';
-		content +="<root>"+'\n';
 //		content += xmlStatics.createElement("epsilon",Epsilon.toString());
-		xmlGestureParser.xmlStatics.write(wr,content);
-		
-		for(GestureController c : g){
-			xmlStatics.write(wr,c.toXML());
-		}
-		
-		xmlStatics.write(wr,"</root>");
-
+		xmlStatics.save(fileName, g, "</root>");
 	}
 	public void save(String fileName){
-		BufferedWriter wr;
-		try {
-			wr = new BufferedWriter(new FileWriter(fileName));
-		} catch (IOException e) {
-			System.out.println("IOException: "+e.getMessage());
-			e.printStackTrace();
-			return;
-		}
-		
-		String content = new String();
-		
-		content +="<?xml version=\"1.0\"?>"+'\n';
-		content +="<root>"+'\n';
 //		content += xmlStatics.createElement("epsilon", Epsilon.toString());
-		content += toXML();
-		content +="</root>"; 
-		xmlStatics.write(wr,content);
+		xmlStatics.save(fileName, Collections.singletonList(this), "</root>");
+	}
+	/**
+	 * Writes every gesture of g to fileName in the binary library form, which
+	 * loads far faster than xml but is only read back with the same
+	 * {@link JointRelation#Interpretation}.
+	 * @param fileName - File to write, replaced if it exists
+	 * @param g - Gestures to write
+	 * @throws IOException
+	 * 		If the file can not be written
+	 * @see MappedLibrary
+	 */
+	public static void saveBinary(String fileName, List<GestureController> g) throws IOException{
+		MappedLibrary.write(g, fileName);
+	}
+	/**
+	 * Loads every gesture of a file written by
+	 * {@link #saveBinary(String, List)}. The gestures are held in compiled
+	 * form and build their sequence only when it is needed.
+	 * @param fileName - File to read
+	 * @return
+	 * 		Gestures in the order they were written
+	 * @throws IOException
+	 * 		If the file can not be read, is damaged or is not a library
+	 * @see MappedLibrary
+	 */
+	public static List<GestureController> loadBinary(String fileName) throws IOException{
+		return MappedLibrary.read(fileName);
 	}
+	/**
+	 * Loads the next gesture of xmlInput, only the first value of each angle
+	 * list is read.
+	 * @see GestureLoader#load(String) to load every gesture of a file
+	 */
 	public GestureController load(Scanner xmlInput){
 		GestureController gC = new GestureController();
 		String next = xmlInput.next();
@@ -1575,17 +1492,17 @@ public class GestureController implements xmlGestureParser<GestureController>{
 		
 		gC.Name = xmlStatics.parseElement(xmlInput);
 		xmlInput.next();
-		gC.sequence.clear();
+		gC.sequence().clear();
 
 		next = xmlInput.next();
-		gC.sequence.add(new Vector<JointRelation>());
+		gC.sequence().add(new Vector<JointRelation>());
 		while (xmlInput.hasNext() && next.compareTo("</sequence>")!=0){
 			if (next.compareTo("</step>")==0){
 				next = xmlInput.next();
-				gC.sequence.add(new Vector<JointRelation>());
+				gC.sequence().add(new Vector<JointRelation>());
 				continue;
 			}
-			gC.sequence.lastElement().add(JointRelation.load(xmlInput));
+			gC.sequence().lastElement().add(JointRelation.load(xmlInput));
 			next = xmlInput.next();
 		}
 
@@ -1600,35 +1517,38 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 * 	String in xml format representative of this
 	 */
 	public String toXML(){
-
-		
-		String content = new String();
-		content +="<"+classTag+">"+'\n';
-		content += xmlStatics.createElement("name", Name);
-		
-		content +="<sequence>"+'\n';
-		for (Vector<JointRelation> v : sequence){
-			content += "<step>"+'\n';
+		return xmlStatics.toXML(this);
+	}
+	/**
+	 * Writes the xml representation of a gesture to w.
+	 * @see #toXML()
+	 */
+	@Override
+	public void writeXML(Writer w) throws IOException{
+		w.write("<"+classTag+">"+'\n');
+		xmlStatics.writeElement(w, "name", Name);
+		
+		w.write("<sequence>"+'\n');
+		for (Vector<JointRelation> v : sequence()){
+			w.write("<step>"+'\n');
 			for (JointRelation e : v){
-				content += e.toXML();
+				e.writeXML(w);
 			}
-			content += "</step>"+'\n';
+			w.write("</step>"+'\n');
 		}
-		content +="</sequence>"+'\n';
-		content +="</"+classTag+">"+'\n';
-		
-		return content;
+		w.write("</sequence>"+'\n');
+		w.write("</"+classTag+">"+'\n');
 	}
 	/**
 	 * @return
 	 * 	True if and only if there is no steps to this gesture, false otherwise.
 	 */
 	public boolean isEmpty() {
-		return sequence.isEmpty();
+		return size() == 0;
 	}
 	/**
 	 * Returns a new GestureConroller will a different sequence that is a 
-	 * a copy if this.sequence and with the same current step.
+	 * a copy if this.sequence, the clone does not share the progress of any users.
 	 * <p> The clone will not return true for either this.equals(clone) or
 	 * this.hashCode() == clone.hashCode()
 	 * @return
@@ -1636,8 +1556,8 @@ public class GestureController implements xmlGestureParser<GestureController>{
 	 */
 	protected GestureController clone(){
 		GestureController o = new GestureController();
-		o.sequence.addAll(this.sequence);
-		o.step = this.step;
+		//setSequence rebuilds link so relations may be added to the clone
+		o.setSequence(new Vector<Vector<JointRelation>>(sequence()));
 		return o;
 	}
 }
\ No newline at end of file
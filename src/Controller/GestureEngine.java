@@ -0,0 +1,944 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import SimpleOpenNI.SimpleOpenNI;
+
+/**
+ * Owns a library of gestures and checks all of them against a user at once.
+ * Rather than having each {@link GestureController} retrieve the joints it
+ * needs from SimpleOpenNI on its own, the engine retrieves the union of all
+ * joints required by the library a single time per user per frame into a
+ * {@link SkeletonFrame} and hands that snapshot to every gesture.
+ * <p>
+ * The engine owns the progress of each user through each gesture as a
+ * {@link MatchState}, so the gestures in the library are shared between all
+ * users. States are created with {@link #addUser(int)} and discarded with
+ * {@link #removeUser(int)}, a user that is processed without being added is
+ * added automatically.
+ * <p>
+ * By default each user follows a single partial match per gesture, see
+ * {@link MatchMode} to follow several at once. Gestures that start with the
+ * same steps may have those steps evaluated once per frame, see
+ * {@link #setShared(boolean)}. Gestures waiting on their first step are only
+ * evaluated when a {@link FirstStepIndex} finds that the step could match,
+ * see {@link #setIndexed(boolean)}. Large libraries may be split across
+ * several threads each frame, see {@link #setParallelism(int)}.
+ * <p>
+ * The public functions of the engine are synchronized so a library may be
+ * changed from one thread while frames are processed on another.
+ * <p>
+ * The joint union is recomputed when gestures are added or removed through
+ * the engine. If a gesture is modified after being added {@link #refresh()}
+ * should be called.
+ *
+ * @author Levi Lindsley
+ *
+ */
+public class GestureEngine {
+	/**
+	 * How the progress of a user through a gesture is followed.
+	 */
+	public enum MatchMode{
+		/**
+		 * One partial match per gesture held in a {@link MatchState}, a failed
+		 * frame resets the gesture. This is the behavior of
+		 * {@link GestureController#isComplete(SkeletonFrame)}.
+		 */
+		SINGLE,
+		/**
+		 * A bounded number of partial matches per gesture held in a
+		 * {@link HypothesisSet}, every frame may also start a new attempt.
+		 */
+		MULTI
+	}
+
+	/**Used only to toggle debug output*/
+	@SuppressWarnings("unused")
+	private boolean debug = true;
+
+	/**All gestures that are checked each frame*/
+	private Vector<GestureController> library;
+
+	/**Union of the joints required by the gestures in library*/
+	private int joints[];
+
+	/**Marks that the library changed and joints needs to be rebuilt*/
+	private boolean dirty;
+
+	/**Snapshot reused from frame to frame*/
+	private SkeletonFrame frame;
+
+	/**Progress of each user through the library, indexed in library order*/
+	private Map<Integer, MatchState[]> users;
+
+	/**Partial matches of each user through the library in MULTI mode, indexed in library order*/
+	private Map<Integer, HypothesisSet[]> hypotheses;
+
+	/**How progress through the library is followed*/
+	private MatchMode mode;
+
+	/**Maximum number of partial matches per gesture per user in MULTI mode*/
+	private int limit;
+
+	/**Marks that steps shared between gestures are evaluated once per frame*/
+	private boolean shared;
+
+	/**Leading steps shared across the library, null until needed*/
+	private GestureTrie trie;
+
+	/**Marks that gestures waiting on their first step are looked up in index*/
+	private boolean indexed;
+
+	/**First steps of the library, null until needed*/
+	private FirstStepIndex index;
+
+	/**Evaluator of each gesture through trie and index, in library order*/
+	private StepEvaluator views[];
+
+	/**Scratch space of the gestures evaluated on the calling thread*/
+	private double buf[];
+
+	/**Marks an engine searching a recording, its completions are not logged*/
+	private boolean batch;
+
+	/**Smallest number of gestures given to a thread when a frame is split*/
+	static final int MIN_RANGE = 16;
+
+	/**Number of threads a frame is split across, 1 evaluates on the calling thread*/
+	private int parallelism;
+
+	/**Threads used to split frames, null until needed*/
+	private ForkJoinPool pool;
+
+	/**Number of ranges a frame is split into*/
+	private int ranges;
+
+	/**Scratch space of each range*/
+	private double rangeBuf[][];
+
+	/**Marks the gestures completed by the ranges this frame, in library order*/
+	private boolean hit[];
+
+	/**
+	 * Default constructor, creates an engine with an empty library.
+	 */
+	public GestureEngine(){
+		library = new Vector<GestureController>();
+		joints = new int[0];
+		dirty = false;
+		frame = new SkeletonFrame();
+		users = new HashMap<Integer, MatchState[]>();
+		hypotheses = new HashMap<Integer, HypothesisSet[]>();
+		mode = MatchMode.SINGLE;
+		limit = HypothesisSet.DEFAULT_LIMIT;
+		shared = false;
+		trie = null;
+		indexed = true;
+		index = null;
+		parallelism = 1;
+		pool = null;
+		batch = false;
+	}
+	/**
+	 * Changes how progress through the library is followed, the progress of
+	 * every user is discarded.
+	 * @param m - Mode to use
+	 */
+	public synchronized void setMode(MatchMode m){
+		if (m == null)
+			throw new NullPointerException("mode");
+		mode = m;
+		users.clear();
+		hypotheses.clear();
+	}
+	/**
+	 * Changes how progress through the library is followed.
+	 * @param m - Mode to use
+	 * @param maxHypotheses - Maximum number of partial matches followed per
+	 * gesture per user, only used by {@link MatchMode#MULTI}
+	 */
+	public synchronized void setMode(MatchMode m, int maxHypotheses){
+		if (maxHypotheses < 1)
+			throw new IllegalArgumentException("maxHypotheses must be at least 1: "+maxHypotheses);
+		limit = maxHypotheses;
+		setMode(m);
+	}
+	/**
+	 * @return
+	 * 		How progress through the library is followed
+	 */
+	public MatchMode getMode(){
+		return mode;
+	}
+	/**
+	 * Enables or disables sharing of leading steps. When enabled gestures
+	 * whose leading steps are equal within {@link Euclidean#Epsilon} are merged
+	 * into a {@link GestureTrie} and each shared step is evaluated once per frame
+	 * per user. A shared step is evaluated with the values of the first gesture
+	 * in library order that has it, so gestures whose steps differ by less than
+	 * Epsilon may complete on slightly different frames than they do alone.
+	 * @param s - True to share steps
+	 */
+	public synchronized void setShared(boolean s){
+		shared = s;
+		trie = null;
+		views = null;
+	}
+	/**
+	 * @return
+	 * 		True if leading steps are shared between gestures
+	 */
+	public boolean isShared(){
+		return shared;
+	}
+	/**
+	 * Enables or disables the index over first steps, enabled by default.
+	 * Skipping a gesture that is not a candidate is exact as a first step that
+	 * fails changes nothing, so this only changes the cost of a frame.
+	 * @param i - True to use the index
+	 */
+	public synchronized void setIndexed(boolean i){
+		indexed = i;
+		index = null;
+		views = null;
+	}
+	/**
+	 * @return
+	 * 		True if gestures waiting on their first step are looked up in an index
+	 */
+	public boolean isIndexed(){
+		return indexed;
+	}
+	/**
+	 * Sets the number of threads the gestures of a frame are split across.
+	 * The library is split into ranges of at least {@link #MIN_RANGE} gestures
+	 * that are evaluated at the same time, completions are merged back in
+	 * library order so the result is the same as evaluating on one thread.
+	 * A library too small to split is evaluated on the calling thread.
+	 * @param threads - Number of threads to use, 1 or less disables splitting
+	 */
+	public synchronized void setParallelism(int threads){
+		threads = Math.max(1, threads);
+		if (threads == parallelism)
+			return;
+		shutdown();
+		parallelism = threads;
+		views = null;
+	}
+	/**
+	 * @return
+	 * 		Number of threads the gestures of a frame are split across
+	 */
+	public int getParallelism(){
+		return parallelism;
+	}
+	/**
+	 * Stops the threads used to split frames, they are started again if
+	 * needed. Should be called when the engine is no longer used.
+	 */
+	public synchronized void shutdown(){
+		if (pool != null){
+			pool.shutdown();
+			pool = null;
+		}
+	}
+	/**
+	 * Rebuilds trie, index and the evaluator of each gesture if the library
+	 * or any gesture in it changed.
+	 */
+	private void checkViews(){
+		boolean stale = views == null || views.length != library.size();
+		if (shared && (trie == null || !trie.isCurrent(library))){
+			trie = new GestureTrie(library);
+			stale = true;
+		}
+		if (indexed && (stale || index == null || !index.isCurrent(library))){
+			index = new FirstStepIndex(library, shared ? trie : null);
+			stale = true;
+		}
+		if (!stale && !shared && !indexed){
+			//a gesture that was swapped, edited or recompiled for a new Epsilon
+			for (int i=0;i<views.length && !stale;i++){
+				stale = views[i] != library.get(i).compiled();
+			}
+		}
+		if (!stale)
+			return;
+
+		views = new StepEvaluator[library.size()];
+		int size = JointRelation.width();
+		for (int i=0;i<views.length;i++){
+			CompiledGesture c = library.get(i).compiled();
+			size = Math.max(size, c.bufferSize());
+			views[i] = shared ? trie.view(i) : c;
+			if (indexed)
+				views[i] = index.view(i, views[i]);
+		}
+		buf = new double[size];
+
+		ranges = Math.min(parallelism, library.size()/MIN_RANGE);
+		if (ranges > 1){
+			rangeBuf = new double[ranges][size];
+			hit = new boolean[library.size()];
+		}
+	}
+	/**
+	 * Adds g to the library, g will be checked on the next call to process.
+	 * @param g - GestureController to add
+	 */
+	public synchronized void add(GestureController g){
+		library.add(g);
+		dirty = true;
+	}
+	/**
+	 * Adds all gestures in c to the library.
+	 * @param c - Collection of gestures to add
+	 */
+	public synchronized void addAll(Collection<GestureController> c){
+		library.addAll(c);
+		dirty = true;
+	}
+	/**
+	 * Removes g from the library.
+	 * @param g - GestureController to remove
+	 * @return
+	 * 		True if g was part of the library
+	 */
+	public synchronized boolean remove(GestureController g){
+		int i = library.indexOf(g);
+		if (i < 0)
+			return false;
+		
+		library.remove(i);
+		
+		//drop the state of the removed gesture for every user
+		for (Map.Entry<Integer, MatchState[]> e : users.entrySet()){
+			MatchState old[] = e.getValue();
+			if (i >= old.length)
+				continue;
+			MatchState s[] = new MatchState[old.length-1];
+			System.arraycopy(old, 0, s, 0, i);
+			System.arraycopy(old, i+1, s, i, old.length-i-1);
+			e.setValue(s);
+		}
+		for (Map.Entry<Integer, HypothesisSet[]> e : hypotheses.entrySet()){
+			HypothesisSet old[] = e.getValue();
+			if (i >= old.length)
+				continue;
+			HypothesisSet s[] = new HypothesisSet[old.length-1];
+			System.arraycopy(old, 0, s, 0, i);
+			System.arraycopy(old, i+1, s, i, old.length-i-1);
+			e.setValue(s);
+		}
+		dirty = true;
+		return true;
+	}
+	/**
+	 * Removes all gestures from the library.
+	 */
+	public synchronized void clear(){
+		library.clear();
+		users.clear();
+		hypotheses.clear();
+		dirty = true;
+	}
+	/**
+	 * Starts tracking the progress of user, if user is already tracked
+	 * their progress is reset.
+	 * @param user - Id of user to add
+	 */
+	public synchronized void addUser(int user){
+		if (mode == MatchMode.MULTI)
+			hypotheses.put(user, createHypotheses(0, new HypothesisSet[library.size()]));
+		else
+			users.put(user, createStates(0, new MatchState[library.size()]));
+	}
+	/**
+	 * Discards the progress of user, should be called when the user is lost.
+	 * @param user - Id of user to remove
+	 * @return
+	 * 		True if user was tracked
+	 */
+	public synchronized boolean removeUser(int user){
+		boolean removed = users.remove(user) != null;
+		return hypotheses.remove(user) != null || removed;
+	}
+	/**
+	 * Restarts every gesture for user.
+	 * @param user - Id of user to reset
+	 */
+	public synchronized void reset(int user){
+		MatchState s[] = users.get(user);
+		if (s != null){
+			for (int i=0;i<s.length;i++){
+				s[i].reset();
+			}
+		}
+		HypothesisSet h[] = hypotheses.get(user);
+		if (h != null){
+			for (int i=0;i<h.length;i++){
+				h[i].reset();
+			}
+		}
+	}
+	/**
+	 * Retrieves the progress of user through the library, the returned
+	 * array matches library order and is sized to the current library.
+	 * @param user - Id of user
+	 * @return
+	 * 		States of user
+	 */
+	private MatchState[] getStates(int user){
+		MatchState s[] = users.get(user);
+		if (s == null){
+			s = createStates(0, new MatchState[library.size()]);
+			users.put(user, s);
+		}
+		else if (s.length < library.size()){
+			//gestures were added since user was last seen
+			int old = s.length;
+			s = createStates(old, Arrays.copyOf(s, library.size()));
+			users.put(user, s);
+		}
+		return s;
+	}
+	/**
+	 * Fills s with new states starting at from.
+	 * @param from - First index to fill
+	 * @param s - Array to fill
+	 * @return
+	 * 		s
+	 */
+	private MatchState[] createStates(int from, MatchState s[]){
+		for (int i=from;i<s.length;i++){
+			s[i] = new MatchState();
+		}
+		return s;
+	}
+	/**
+	 * Same as {@link #getStates(int)} for the partial matches followed in
+	 * {@link MatchMode#MULTI}.
+	 * @param user - Id of user
+	 * @return
+	 * 		Partial matches of user
+	 */
+	private HypothesisSet[] getHypotheses(int user){
+		HypothesisSet h[] = hypotheses.get(user);
+		if (h == null){
+			h = createHypotheses(0, new HypothesisSet[library.size()]);
+			hypotheses.put(user, h);
+		}
+		else if (h.length < library.size()){
+			int old = h.length;
+			h = createHypotheses(old, Arrays.copyOf(h, library.size()));
+			hypotheses.put(user, h);
+		}
+		return h;
+	}
+	/**
+	 * Fills h with new empty sets starting at from.
+	 * @param from - First index to fill
+	 * @param h - Array to fill
+	 * @return
+	 * 		h
+	 */
+	private HypothesisSet[] createHypotheses(int from, HypothesisSet h[]){
+		for (int i=from;i<h.length;i++){
+			h[i] = new HypothesisSet(limit);
+		}
+		return h;
+	}
+	/**
+	 * Rebuilds the set of joints the library requires. Must be called if a
+	 * gesture in the library is changed after it was added.
+	 */
+	public synchronized void refresh(){
+		Set<Integer> s = new TreeSet<Integer>();
+		for (GestureController g : library){
+			g.getJoints(s);
+		}
+		joints = new int[s.size()];
+		int i=0;
+		for (Integer j : s){
+			joints[i++] = j;
+		}
+		views = null;
+		dirty = false;
+	}
+	/**
+	 * Checks every gesture in the library against user. The joints of user
+	 * are retrieved from context a single time.
+	 *
+	 * @param context - SimpleOpenNI instance to retrieve joints from
+	 * @param user - Id of user to check
+	 * @return
+	 * 		List of the gestures completed by user this frame in library order,
+	 * the list is empty if nothing was completed.
+	 */
+	public synchronized List<GestureController> process(SimpleOpenNI context, int user){
+		if (dirty) refresh();
+		frame.capture(context, user, joints);
+		return process(frame);
+	}
+	/**
+	 * Checks every gesture in the library against user as given by source.
+	 *
+	 * @param source - Source to retrieve joints from
+	 * @param user - Id of user to check
+	 * @return
+	 * 		List of the gestures completed by user this frame in library order
+	 * @see #process(SimpleOpenNI, int)
+	 */
+	public synchronized List<GestureController> process(SkeletonSource source, int user){
+		if (dirty) refresh();
+		frame.capture(source, user, joints);
+		return process(frame);
+	}
+	/**
+	 * Checks every gesture in the library against every user of the current
+	 * frame of source.
+	 *
+	 * @param source - Source to retrieve joints from
+	 * @return
+	 * 		Completions of every user in user order and then library order
+	 */
+	public synchronized List<GestureEvent> processEvents(SkeletonSource source){
+		if (dirty) refresh();
+		List<GestureEvent> events = new ArrayList<GestureEvent>();
+		for (int u : source.getUsers()){
+			if (frame.capture(source, u, joints))
+				match(frame, null, events);
+		}
+		return events;
+	}
+	/**
+	 * Checks every gesture in the library against the recording held in
+	 * context at tick.
+	 *
+	 * @param context - JointRecorder to retrieve joints from
+	 * @param tick - Tick of context to view
+	 * @return
+	 * 		List of the gestures completed at tick in library order
+	 * @see #process(SimpleOpenNI, int)
+	 */
+	public synchronized List<GestureController> process(JointRecorder context, int tick){
+		if (dirty) refresh();
+		frame.capture(context, tick, joints);
+		return process(frame);
+	}
+	/**
+	 * Checks every gesture in the library against a snapshot, the snapshot
+	 * must hold all joints the library requires.
+	 *
+	 * @param f - Snapshot to check
+	 * @return
+	 * 		List of the gestures completed in library order
+	 */
+	public synchronized List<GestureController> process(SkeletonFrame f){
+		List<GestureController> complete = new ArrayList<GestureController>();
+		match(f, complete, null);
+		return complete;
+	}
+	/**
+	 * Same as {@link #process(SkeletonFrame)} but reports each completion as
+	 * a {@link GestureEvent} holding the frames the gesture started and ended.
+	 *
+	 * @param f - Snapshot to check
+	 * @return
+	 * 		List of the completions in library order
+	 */
+	public synchronized List<GestureEvent> processEvents(SkeletonFrame f){
+		List<GestureEvent> events = new ArrayList<GestureEvent>();
+		match(f, null, events);
+		return events;
+	}
+	/**
+	 * Checks every gesture in the library against a snapshot.
+	 *
+	 * @param f - Snapshot to check
+	 * @param complete - Gestures completed are added here in library order, may be null
+	 * @param events - Completions are added here in library order, may be null
+	 */
+	private void match(SkeletonFrame f, List<GestureController> complete, List<GestureEvent> events){
+		int user = f.getUser();
+		if (parallelism > 1 && library.size() >= MIN_RANGE*2){
+			matchParallel(f, complete, events);
+			return;
+		}
+		if (!shared && !indexed){
+			//every gesture evaluates itself, in scratch space owned by this
+			if (mode == MatchMode.MULTI){
+				HypothesisSet h[] = getHypotheses(user);
+				for (int i=0;i<library.size();i++){
+					GestureController g = library.get(i);
+					if (g.isComplete(f, h[i], g.compiled(), scratch(g), !batch))
+						completed(i, h[i].getLastStart(), f, complete, events);
+				}
+				return;
+			}
+			MatchState state[] = getStates(user);
+			for (int i=0;i<library.size();i++){
+				GestureController g = library.get(i);
+				if (g.isComplete(f, state[i], g.compiled(), scratch(g), !batch))
+					completed(i, state[i].start, f, complete, events);
+			}
+			return;
+		}
+
+		checkViews();
+		if (shared)
+			trie.next();
+		if (indexed)
+			index.lookup(f, buf);
+
+		if (mode == MatchMode.MULTI)
+			evaluate(f, null, getHypotheses(user), 0, library.size(), buf, null, complete, events);
+		else
+			evaluate(f, getStates(user), null, 0, library.size(), buf, null, complete, events);
+	}
+	/**
+	 * @return
+	 * 		buf grown to fit the compiled form of g. The scratch space held by
+	 * g is shared by every engine checking it so it is never used here.
+	 */
+	private double[] scratch(GestureController g){
+		int size = g.compiled().bufferSize();
+		if (buf == null || buf.length < size)
+			buf = new double[size];
+		return buf;
+	}
+	/**
+	 * Same as {@link #match} but the library is split into ranges that are
+	 * evaluated on the threads of pool. The snapshot, trie and index are only
+	 * read while the ranges run, each range has its own scratch space and
+	 * the progress of each gesture is only touched by the range holding it.
+	 */
+	private void matchParallel(SkeletonFrame f, List<GestureController> complete, List<GestureEvent> events){
+		checkViews();
+		if (shared)
+			trie.next();
+		if (indexed)
+			index.lookup(f, buf);
+
+		MatchState state[] = null;
+		HypothesisSet h[] = null;
+		if (mode == MatchMode.MULTI)
+			h = getHypotheses(f.getUser());
+		else
+			state = getStates(f.getUser());
+
+		if (ranges <= 1){
+			//library is too small to split, evaluate on this thread
+			evaluate(f, state, h, 0, library.size(), buf, null, complete, events);
+			return;
+		}
+		if (pool == null)
+			pool = new ForkJoinPool(parallelism);
+		pool.invoke(new FrameSearch(f, state, h, 0, ranges));
+
+		//merge in library order
+		for (int i=0;i<hit.length;i++){
+			if (!hit[i])
+				continue;
+			hit[i] = false;
+			completed(i, h != null ? h[i].getLastStart() : state[i].start, f, complete, events);
+		}
+	}
+	/**
+	 * Evaluates gestures [from, to) against f through views. Completions are
+	 * marked in done if it is given, otherwise they are added to complete and
+	 * events.
+	 */
+	private void evaluate(SkeletonFrame f, MatchState state[], HypothesisSet h[], int from, int to, double b[], 
+			boolean done[], List<GestureController> complete, List<GestureEvent> events){
+		for (int i=from;i<to;i++){
+			boolean c;
+			if (h != null){
+				c = library.get(i).isComplete(f, h[i], views[i], b, !batch);
+			}
+			else{
+				//an idle gesture that is not a candidate can not change
+				if (indexed && state[i].step == 0 && !index.isCandidate(i))
+					continue;
+				c = library.get(i).isComplete(f, state[i], views[i], b, !batch);
+			}
+			if (done != null)
+				done[i] = c;
+			else if (c)
+				completed(i, h != null ? h[i].getLastStart() : state[i].start, f, complete, events);
+		}
+	}
+	/**
+	 * Evaluates ranges [lo, hi) of the library against one frame, splitting
+	 * in half until a single range is left.
+	 */
+	private class FrameSearch extends RecursiveAction{
+		/**Generated serialVersionUID for serialization*/
+		private static final long serialVersionUID = -1693425071338471040L;
+
+		private SkeletonFrame f;
+		private MatchState state[];
+		private HypothesisSet h[];
+		private int lo;
+		private int hi;
+
+		FrameSearch(SkeletonFrame f, MatchState state[], HypothesisSet h[], int lo, int hi){
+			this.f = f;
+			this.state = state;
+			this.h = h;
+			this.lo = lo;
+			this.hi = hi;
+		}
+		@Override
+		protected void compute(){
+			if (hi-lo > 1){
+				int mid = (lo+hi)>>>1;
+				invokeAll(new FrameSearch(f, state, h, lo, mid), new FrameSearch(f, state, h, mid, hi));
+				return;
+			}
+			int n = library.size();
+			evaluate(f, state, h, (int)((long)lo*n/ranges), (int)((long)hi*n/ranges), rangeBuf[lo], hit, null, null);
+		}
+	}
+	/**
+	 * Records that gesture i was completed on f.
+	 */
+	private void completed(int i, long start, SkeletonFrame f, List<GestureController> complete, List<GestureEvent> events){
+		if (complete != null)
+			complete.add(library.get(i));
+		if (events != null)
+			events.add(new GestureEvent(library.get(i), i, f.getUser(), start, f.getFrame()));
+	}
+	/**
+	 * Finds every completion of every gesture in the library over the whole
+	 * of recording in a single pass, each tick of recording is read once.
+	 * The progress of the users being processed live is not touched, the
+	 * search starts every gesture from the beginning and uses the current
+	 * mode, sharing and indexing of this engine. The completions found are
+	 * not live ones so they are not written to the {@link CompletionLog}.
+	 *
+	 * @param recording - JointRecorder to search
+	 * @return
+	 * 		Every completion ordered by the tick it ended at and then by
+	 * library order
+	 */
+	public List<GestureEvent> recognize(JointRecorder recording){
+		return recognize(recording, 1);
+	}
+	/**
+	 * Same as {@link #recognize(JointRecorder)} but the library is split into
+	 * up to parallelism ranges searched at the same time. The recording is
+	 * read into memory once and shared by all ranges, the result is the same
+	 * as searching sequentially.
+	 * <p>
+	 * When sharing is enabled only gestures in the same range share steps, so
+	 * a shared step is not always evaluated with the same gesture's values as
+	 * it is sequentially.
+	 *
+	 * @param recording - JointRecorder to search
+	 * @param parallelism - Number of ranges to search at once, 1 or less
+	 * searches sequentially
+	 * @return
+	 * 		Every completion ordered by the tick it ended at and then by
+	 * library order
+	 */
+	public List<GestureEvent> recognize(JointRecorder recording, int parallelism){
+		//search a copy so live processing is only held up while copying
+		GestureEngine copy;
+		synchronized (this){
+			copy = worker(0, library.size());
+		}
+		return copy.search(recording, parallelism);
+	}
+	/**
+	 * Body of {@link #recognize(JointRecorder, int)}, run on a copy of the
+	 * engine that no other thread can see.
+	 */
+	private List<GestureEvent> search(JointRecorder recording, int parallelism){
+		List<GestureEvent> events = new ArrayList<GestureEvent>();
+		if (library.isEmpty() || recording.getTicks() == 0)
+			return events;
+
+		if (parallelism <= 1 || library.size() < 2){
+			//this is already a private copy
+			if (dirty) refresh();
+			SkeletonFrame f = new SkeletonFrame();
+			for (int t=0;t<recording.getTicks();t++){
+				f.capture(recording, t, joints);
+				match(f, null, events);
+			}
+			return events;
+		}
+
+		//read every tick a single time, the ranges only read the frames
+		if (dirty) refresh();
+		for (GestureController g : library){
+			g.compiled(); //compile up front rather than racing to from each range
+		}
+		SkeletonFrame frames[] = new SkeletonFrame[recording.getTicks()];
+		for (int t=0;t<frames.length;t++){
+			frames[t] = new SkeletonFrame();
+			frames[t].capture(recording, t, joints);
+		}
+		int ranges = Math.min(parallelism, library.size());
+		ForkJoinPool pool = new ForkJoinPool(ranges);
+		try{
+			pool.invoke(new RangeSearch(frames, 0, library.size(), (library.size()+ranges-1)/ranges, events));
+		}
+		finally{
+			pool.shutdown();
+		}
+		Collections.sort(events);
+		return events;
+	}
+	/**
+	 * Creates an engine over gestures [from, to) of the library with the same
+	 * settings as this and no users, that does not log its completions.
+	 */
+	private GestureEngine worker(int from, int to){
+		GestureEngine w = new GestureEngine();
+		w.addAll(library.subList(from, to));
+		w.mode = mode;
+		w.limit = limit;
+		w.shared = shared;
+		w.indexed = indexed;
+		w.batch = true;
+		w.refresh();
+		return w;
+	}
+	/**
+	 * Searches a range of the library over a recording that was read into
+	 * memory, splitting the range in half until it is no larger than grain.
+	 */
+	private class RangeSearch extends RecursiveAction{
+		/**Generated serialVersionUID for serialization*/
+		private static final long serialVersionUID = 4407405432917436117L;
+
+		private SkeletonFrame frames[];
+		private int from;
+		private int to;
+		private int grain;
+		/**Shared by all ranges, guarded by itself*/
+		private List<GestureEvent> out;
+
+		RangeSearch(SkeletonFrame frames[], int from, int to, int grain, List<GestureEvent> out){
+			this.frames = frames;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.out = out;
+		}
+		@Override
+		protected void compute(){
+			if (to-from > grain){
+				int mid = (from+to)>>>1;
+				invokeAll(new RangeSearch(frames, from, mid, grain, out), 
+						new RangeSearch(frames, mid, to, grain, out));
+				return;
+			}
+			GestureEngine worker = worker(from, to);
+			List<GestureEvent> found = new ArrayList<GestureEvent>();
+			for (SkeletonFrame f : frames){
+				worker.match(f, null, found);
+			}
+			synchronized (out){
+				for (GestureEvent e : found){
+					//the worker numbers its gestures from 0
+					out.add(new GestureEvent(e.getGesture(), e.getIndex()+from, e.getUser(), e.getStart(), e.getEnd()));
+				}
+			}
+		}
+	}
+	/**
+	 * Finds every completion of the gestures in library over recording.
+	 * @param recording - JointRecorder to search
+	 * @param library - Gestures to search for
+	 * @return
+	 * 		Every completion ordered by the tick it ended at and then by
+	 * the order of library
+	 * @see #recognize(JointRecorder)
+	 */
+	public static List<GestureEvent> recognize(JointRecorder recording, Collection<GestureController> library){
+		GestureEngine e = new GestureEngine();
+		e.addAll(library);
+		return e.recognize(recording);
+	}
+
+	/**
+	 * @param user - Id of user
+	 * @param i - Index of gesture
+	 * @return
+	 * 		Progress of user through the gesture at position i of the library
+	 */
+	public synchronized MatchState getState(int user, int i){
+		return getStates(user)[i];
+	}
+	/**
+	 * @param user - Id of user
+	 * @param i - Index of gesture
+	 * @return
+	 * 		Partial matches of user through the gesture at position i of the
+	 * library, only advanced in {@link MatchMode#MULTI}
+	 */
+	public synchronized HypothesisSet getHypotheses(int user, int i){
+		return getHypotheses(user)[i];
+	}
+	/**
+	 * @param i - index of gesture
+	 * @return
+	 * 		Gesture at position i of the library
+	 */
+	public GestureController get(int i){
+		return library.get(i);
+	}
+	/**
+	 * @return
+	 * 		Copy of the library
+	 */
+	public synchronized List<GestureController> getLibrary(){
+		return new ArrayList<GestureController>(library);
+	}
+	/**
+	 * @return
+	 * 		Copy of the joints retrieved for each user each frame
+	 */
+	public synchronized int[] getJoints(){
+		if (dirty) refresh();
+		return joints.clone();
+	}
+	/**
+	 * @return
+	 * 		Number of gestures in the library
+	 */
+	public int size(){
+		return library.size();
+	}
+	/**
+	 * @return
+	 * 		True if the library holds no gestures
+	 */
+	public boolean isEmpty(){
+		return library.isEmpty();
+	}
+	@Override
+	public synchronized String toString(){
+		String ret = library.toString();
+		if (shared && trie != null)
+			ret += " "+trie;
+		if (indexed && index != null)
+			ret += " "+index;
+		return ret;
+	}
+}
@@ -0,0 +1,79 @@
+package controller;
+
+/**
+ * A single completion of a gesture by a user, as found by
+ * {@link GestureEngine#recognize(JointRecorder)}. The start and end are the
+ * frames the first step matched and the last step matched, for a recording
+ * these are ticks of the recording.
+ *
+ * @author Levi Lindsley
+ *
+ */
+public class GestureEvent implements Comparable<GestureEvent>{
+	/**Gesture that was completed*/
+	private GestureController gesture;
+
+	/**Position of gesture in the library that was searched*/
+	private int index;
+
+	/**User that completed the gesture*/
+	private int user;
+
+	/**Frame the first step of the gesture matched at*/
+	private long start;
+
+	/**Frame the gesture was completed at*/
+	private long end;
+
+	/**
+	 * @param g - Gesture that was completed
+	 * @param i - Position of g in the library
+	 * @param u - User that completed g
+	 * @param s - Frame the first step matched at
+	 * @param e - Frame g was completed at
+	 */
+	public GestureEvent(GestureController g, int i, int u, long s, long e){
+		gesture = g;
+		index = i;
+		user = u;
+		start = s;
+		end = e;
+	}
+	/**@return Gesture that was completed*/
+	public GestureController getGesture(){
+		return gesture;
+	}
+	/**@return Position of the gesture in the library that was searched*/
+	public int getIndex(){
+		return index;
+	}
+	/**@return User that completed the gesture*/
+	public int getUser(){
+		return user;
+	}
+	/**@return Frame or tick the first step of the gesture matched at*/
+	public long getStart(){
+		return start;
+	}
+	/**@return Frame or tick the gesture was completed at*/
+	public long getEnd(){
+		return end;
+	}
+	/**
+	 * Orders events by the frame they ended at and then by library position,
+	 * the order the engine reports them in.
+	 * @param o - Event to compare against
+	 * @return
+	 * 		Negative if this comes before o, positive if after, 0 if equal
+	 */
+	@Override
+	public int compareTo(GestureEvent o){
+		if (end != o.end)
+			return end < o.end ? -1 : 1;
+		return index-o.index;
+	}
+	@Override
+	public String toString(){
+		return "{"+(gesture.Name == null ? "#"+index : gesture.Name)+" user: "+user+" ticks: "+start+"-"+end+"}";
+	}
+}
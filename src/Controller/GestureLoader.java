@@ -0,0 +1,506 @@
+package controller;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Loads every gesture of a file written by
+ * {@link GestureController#save(String, List)} or
+ * {@link GestureController#save(String)} in a single pass of a pull parser.
+ * Unlike {@link GestureController#load(java.util.Scanner)} the text of an
+ * element is read whole so names may hold spaces, and a relation may hold
+ * any number of Euclidean values in its angle list.
+ * <p>
+ * The parser is written for the subset of xml these files use, elements
+ * holding either elements or text. Attributes are ignored and the
+ * declaration, comments and DTDs are skipped. Characters are read through a
+ * fixed buffer so the file is never held whole.
+ * <p>
+ * Files written by earlier versions used {@literal <p>} for a relation and
+ * {@literal <j>} for a pair and may hold an {@literal <epsilon>} element,
+ * those are read as well. Epsilon is not changed by loading.
+ *
+ * @author Levi Lindsley
+ *
+ */
+public class GestureLoader {
+	/**Event of a start tag*/
+	static final int START = 1;
+
+	/**Event of an end tag*/
+	static final int END = 2;
+
+	/**Event of text that is not only white space*/
+	static final int TEXT = 3;
+
+	/**Event of the end of input*/
+	static final int EOF = 4;
+
+	/**Tags of gesture files, a tag read is matched against these rather than
+	 * built into a new String*/
+	static final String TAGS[] = {"root", "gesture", "name", "sequence", "step",
+		"jR", "p", "pair", "j", "first", "second", "angle", "Euclidean", "x", "y",
+		"z", "prev"};
+
+	/**Characters read from the source at a time*/
+	static final int BUFFER = 1<<16;
+
+	/**Source of characters*/
+	private Reader in;
+
+	/**Characters read from in*/
+	private char buf[] = new char[BUFFER];
+
+	/**Next character of buf to read*/
+	private int pos;
+
+	/**Number of characters held by buf*/
+	private int len;
+
+	/**Line of the character last read, for error messages*/
+	private int line = 1;
+
+	/**Tag name of the last START or END event*/
+	private String tag;
+
+	/**Characters of the last TEXT event, also used to gather tag names*/
+	private char text[] = new char[64];
+
+	/**Number of characters held by text*/
+	private int count;
+
+	/**True if the last START event was of an empty element, {@literal <x/>}*/
+	private boolean empty;
+
+	private GestureLoader(Reader in){
+		this.in = in;
+	}
+	/**
+	 * Loads every gesture held by fileName.
+	 * @param fileName - File to read
+	 * @return
+	 * 		Gestures in the order they appear in the file
+	 * @throws IOException
+	 * 		If the file can not be read or is not a gesture file
+	 */
+	public static List<GestureController> load(String fileName) throws IOException{
+		InputStream in = new FileInputStream(fileName);
+		try {
+			return load(in);
+		}
+		finally{
+			in.close();
+		}
+	}
+	/**
+	 * Loads every gesture held by in as UTF-8, in is not closed.
+	 * @param in - Stream to read
+	 * @return
+	 * 		Gestures in the order they appear in the stream
+	 * @throws IOException
+	 * 		If the stream can not be read or is not a gesture file
+	 */
+	public static List<GestureController> load(InputStream in) throws IOException{
+		return load(new InputStreamReader(in, "UTF-8"));
+	}
+	/**
+	 * Loads every gesture held by in, in is not closed.
+	 * @param in - Reader to read
+	 * @return
+	 * 		Gestures in the order they appear
+	 * @throws IOException
+	 * 		If in can not be read or does not hold gestures
+	 */
+	public static List<GestureController> load(Reader in) throws IOException{
+		GestureLoader l = new GestureLoader(in);
+		try {
+			return l.root();
+		} catch (NumberFormatException e) {
+			throw l.error("Malformed number "+e.getMessage());
+		}
+	}
+	/**
+	 * Reads the gestures of the document, a single gesture without a root
+	 * element is accepted.
+	 */
+	private List<GestureController> root() throws IOException{
+		List<GestureController> gestures = new ArrayList<GestureController>();
+		if (next() != START)
+			throw error("No gestures");
+		if (tag.equals("gesture")){
+			gestures.add(gesture());
+			return gestures;
+		}
+		while (child()){
+			if (tag.equals("gesture"))
+				gestures.add(gesture());
+			else
+				skip();
+		}
+		return gestures;
+	}
+	/**
+	 * Reads a gesture, the start tag has been read and the end tag is read.
+	 */
+	private GestureController gesture() throws IOException{
+		GestureController g = new GestureController();
+		Vector<Vector<JointRelation>> sequence = new Vector<Vector<JointRelation>>();
+		while (child()){
+			if (tag.equals("name"))
+				g.Name = text();
+			else if (tag.equals("sequence")){
+				while (child()){
+					if (tag.equals("step"))
+						sequence.add(step());
+					else
+						skip();
+				}
+			}
+			else
+				skip();
+		}
+		g.setSequence(sequence);
+		return g;
+	}
+	/**
+	 * Reads the relations of a step.
+	 */
+	private Vector<JointRelation> step() throws IOException{
+		Vector<JointRelation> step = new Vector<JointRelation>();
+		while (child()){
+			if (tag.equals("jR") || tag.equals("p"))
+				step.add(relation());
+			else
+				skip();
+		}
+		return step;
+	}
+	/**
+	 * Reads a relation with every value of its angle list.
+	 */
+	private JointRelation relation() throws IOException{
+		Pair j = null;
+		Pair prev = null;
+		List<Euclidean> angle = new ArrayList<Euclidean>();
+		while (child()){
+			if (tag.equals("pair") || tag.equals("j"))
+				j = pair();
+			else if (tag.equals("angle")){
+				while (child()){
+					if (tag.equals("Euclidean"))
+						angle.add(euclidean());
+					else
+						skip();
+				}
+			}
+			else if (tag.equals("prev")){
+				//either the text null or a pair
+				while (child()){
+					if (tag.equals("pair") || tag.equals("j"))
+						prev = pair();
+					else
+						skip();
+				}
+			}
+			else
+				skip();
+		}
+		if (j == null)
+			throw error("Relation without a pair");
+		return JointRelation.of(j, angle, prev);
+	}
+	/**
+	 * Reads a pair of joints.
+	 */
+	private Pair pair() throws IOException{
+		int first = 0, second = 0;
+		while (child()){
+			if (tag.equals("first"))
+				first = Integer.parseInt(text());
+			else if (tag.equals("second"))
+				second = Integer.parseInt(text());
+			else
+				skip();
+		}
+		return new Pair(first, second);
+	}
+	/**
+	 * Reads a Euclidean.
+	 */
+	private Euclidean euclidean() throws IOException{
+		double x = 0, y = 0, z = 0;
+		while (child()){
+			if (tag.equals("x"))
+				x = Double.parseDouble(text());
+			else if (tag.equals("y"))
+				y = Double.parseDouble(text());
+			else if (tag.equals("z"))
+				z = Double.parseDouble(text());
+			else
+				skip();
+		}
+		return new Euclidean(x, y, z);
+	}
+	/**
+	 * Moves to the next child of the element being read, text between
+	 * children is passed over.
+	 * @return
+	 * 		True if a child start tag was read.
+	 * <p> False if the end tag of the element was read.
+	 * @throws IOException
+	 * 		If the input ends first
+	 */
+	private boolean child() throws IOException{
+		while (true){
+			switch (next()){
+			case START:
+				return true;
+			case END:
+				return false;
+			case EOF:
+				throw error("Unexpected end of input");
+			default:
+				break;
+			}
+		}
+	}
+	/**
+	 * Reads the text of an element that holds only text through its end tag.
+	 * @return
+	 * 		Text with the surrounding white space removed
+	 */
+	private String text() throws IOException{
+		String s = "";
+		while (true){
+			switch (next()){
+			case TEXT:
+				s = new String(text, 0, count).trim();
+				break;
+			case START:
+				skip();
+				break;
+			case END:
+				return s;
+			default:
+				throw error("Unexpected end of input");
+			}
+		}
+	}
+	/**
+	 * Skips the element just started and everything in it.
+	 */
+	private void skip() throws IOException{
+		int depth = 1;
+		while (depth > 0){
+			switch (next()){
+			case START:
+				depth++;
+				break;
+			case END:
+				depth--;
+				break;
+			case EOF:
+				throw error("Unexpected end of input");
+			default:
+				break;
+			}
+		}
+	}
+	/**
+	 * Reads the next event.
+	 * @return
+	 * 		{@link #START}, {@link #END}, {@link #TEXT} or {@link #EOF}
+	 */
+	private int next() throws IOException{
+		if (empty){
+			//the end of <x/> is reported after its start
+			empty = false;
+			return END;
+		}
+		while (true){
+			int c = read();
+			if (c < 0)
+				return EOF;
+			if (c != '<'){
+				count = 0;
+				boolean blank = true;
+				while (c >= 0 && c != '<'){
+					if (c == '&')
+						c = entity();
+					if (c > ' ')
+						blank = false;
+					append(c);
+					c = read();
+				}
+				//the < just read starts the next event
+				if (c == '<')
+					pos--;
+				if (!blank)
+					return TEXT;
+				continue;
+			}
+			c = read();
+			if (c == '?' || c == '!'){
+				declaration(c);
+				continue;
+			}
+			boolean end = c == '/';
+			if (end)
+				c = read();
+			count = 0;
+			while (c > ' ' && c != '>' && c != '/'){
+				append(c);
+				c = read();
+			}
+			tag = tag();
+			//attributes are not used by gesture files
+			int last = c;
+			while (c >= 0 && c != '>'){
+				last = c;
+				c = read();
+			}
+			if (c < 0)
+				throw error("Unclosed tag "+tag);
+			if (end)
+				return END;
+			empty = last == '/';
+			return START;
+		}
+	}
+	/**
+	 * Places code point c at the end of text, as a surrogate pair if it is
+	 * outside the Basic Multilingual Plane.
+	 */
+	private void append(int c){
+		if (count+2 > text.length)
+			text = Arrays.copyOf(text, text.length*2);
+		if (c > 0xFFFF)
+			count += Character.toChars(c, text, count);
+		else
+			text[count++] = (char)c;
+	}
+	/**
+	 * @return
+	 * 		Entry of {@link #TAGS} equal to the name held by text, a new String
+	 * 		if there is none
+	 */
+	private String tag(){
+		for (String t : TAGS){
+			if (t.length() != count || count == 0 || t.charAt(0) != text[0])
+				continue;
+			int i = 1;
+			while (i < count && t.charAt(i) == text[i]){
+				i++;
+			}
+			if (i == count)
+				return t;
+		}
+		return new String(text, 0, count);
+	}
+	/**
+	 * Passes over a declaration, comment, CDATA or DTD, the leading
+	 * {@literal <} and c have been read.
+	 */
+	private void declaration(int c) throws IOException{
+		if (c == '?'){
+			until("?>");
+			return;
+		}
+		c = read();
+		if (c == '-'){
+			read();
+			until("-->");
+		}
+		else if (c == '['){
+			until("]]>");
+		}
+		else{
+			//DTD, internal subsets are bracketed
+			int depth = 0;
+			while (c >= 0 && (c != '>' || depth > 0)){
+				if (c == '[') depth++;
+				if (c == ']') depth--;
+				c = read();
+			}
+		}
+	}
+	/**
+	 * Reads through the first occurrence of end.
+	 */
+	private void until(String end) throws IOException{
+		int matched = 0;
+		while (matched < end.length()){
+			int c = read();
+			if (c < 0)
+				throw error("Unclosed "+end);
+			if (c == end.charAt(matched))
+				matched++;
+			else
+				matched = c == end.charAt(0) ? 1 : 0;
+		}
+	}
+	/**
+	 * Reads a character reference or one of the five predefined entities, the
+	 * leading & has been read.
+	 * @return
+	 * 		Code point referred to
+	 */
+	private int entity() throws IOException{
+		StringBuilder name = new StringBuilder();
+		int c = read();
+		while (c >= 0 && c != ';' && name.length() < 10){
+			name.append((char)c);
+			c = read();
+		}
+		String n = name.toString();
+		if (n.equals("lt")) return '<';
+		if (n.equals("gt")) return '>';
+		if (n.equals("amp")) return '&';
+		if (n.equals("quot")) return '"';
+		if (n.equals("apos")) return '\'';
+		int v = -1;
+		try {
+			if (n.startsWith("#x"))
+				v = Integer.parseInt(n.substring(2), 16);
+			else if (n.startsWith("#"))
+				v = Integer.parseInt(n.substring(1));
+		} catch (NumberFormatException e) {
+			//reported below
+		}
+		if (v >= 0 && v <= Character.MAX_CODE_POINT)
+			return v;
+		throw error("Unknown entity &"+n+";");
+	}
+	/**
+	 * @return
+	 * 		Next character of input, -1 at the end
+	 */
+	private int read() throws IOException{
+		if (pos == len){
+			len = in.read(buf, 0, buf.length);
+			pos = 0;
+			if (len <= 0){
+				len = 0;
+				return -1;
+			}
+		}
+		char c = buf[pos++];
+		if (c == '\n')
+			line++;
+		return c;
+	}
+	/**
+	 * @return
+	 * 		Exception describing a malformed file at the current line
+	 */
+	private IOException error(String message){
+		return new IOException(message+" at line "+line);
+	}
+}
@@ -1,5 +1,11 @@
 package controller;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Vector;
@@ -13,6 +19,11 @@ import SimpleOpenNI.SimpleOpenNI;
  *
  * Recording does not support multiple users, more that one user may interfere
  * with recording.
+ * <p>
+ * By default every frame is kept and compressed when the gesture is
+ * generated. With {@link #setStreaming(CompressionType)} frames are instead
+ * grouped into Epsilon nodes as they are recorded, only the node being
+ * filled is held so memory is bounded by the size of the gesture produced.
  * 
  * @author Levi Lindsley
  *
@@ -25,6 +36,19 @@ public class GestureRecord extends GestureController{
 	/**Pairs of Joints to record relationship between*/
 	private Vector <Pair> Focus;
 	
+	/**Compression applied to frames as they are recorded, NONE keeps every frame*/
+	private CompressionType streaming = CompressionType.NONE;
+	
+	/**First frame of the node being filled, one relation per focus pair, null
+	 * if no node is open*/
+	private JointRelation seed[];
+	
+	/**Running total of each angle of the node being filled for each focus pair*/
+	private Vector3 sum[][];
+	
+	/**Number of frames in the node being filled*/
+	private int frames;
+	
 	/**
 	 * Default Constructor, initializes control vectors
 	 */
@@ -80,22 +104,55 @@ public class GestureRecord extends GestureController{
 		if (!context.isTrackingSkeleton(user))
 			return;
 		
-		for (Pair jP : Focus){
+		JointRelation frame[] = new JointRelation[Focus.size()];
+		for (int k=0;k<frame.length;k++){
+			Pair jP = Focus.get(k);
 			
 			//get coordinates for both joints
 			PVector jointOne = super.getRealCoordinites(context, user, jP.First);
 			PVector jointTwo = super.getRealCoordinites(context, user, jP.Second);
 			
 			//coordinate retrieval failed on at least one joint
-			if(jointOne == null || jointTwo == null)
+			if(jointOne == null || jointTwo == null){
+				frame(frame, k);
 				return;
+			}
 			
 			//compare joints and get relative position
-			JointRelation relative = super.compareJointPositions(jP,jointOne, jointTwo);
+			frame[k] = super.compareJointPositions(jP,jointOne, jointTwo);
+		}
+		frame(frame, frame.length);
+	}
+	/**
+	 * Same as {@link #record(SimpleOpenNI, int)} with the skeleton taken from
+	 * any source.
+	 * 
+	 * @param source : Source of the skeleton of user
+	 * @param user : user id to retrieve skeletal info from
+	 */
+	public void record(SkeletonSource source, int user){
+		//fail fast if not tracking user
+		if (!source.isTracking(user))
+			return;
+		
+		JointRelation frame[] = new JointRelation[Focus.size()];
+		for (int k=0;k<frame.length;k++){
+			Pair jP = Focus.get(k);
 			
-			//add relative coordinates to proper joint pair record vector
-			super.add(relative);
+			//get coordinates for both joints
+			PVector jointOne = getRealCoordinites(source, user, jP.First);
+			PVector jointTwo = getRealCoordinites(source, user, jP.Second);
+			
+			//coordinate retrieval failed on at least one joint
+			if(jointOne == null || jointTwo == null){
+				frame(frame, k);
+				return;
+			}
+			
+			//compare joints and get relative position
+			frame[k] = compareJointPositions(jP,jointOne, jointTwo);
 		}
+		frame(frame, frame.length);
 	}
 	/**
 	 * Processes the JointRecorder in range [startTick , endTick), and adds data 
@@ -122,20 +179,130 @@ public class GestureRecord extends GestureController{
 		}
 		
 		//Add recorded data in range [startTime, endTime)
+		JointRelation frame[] = new JointRelation[Focus.size()];
 		for (int i=startTick;i<endTick;i++){
-			for (Pair jP : Focus){
+			for (int k=0;k<frame.length;k++){
+				Pair jP = Focus.get(k);
 				//Get Joints from the log at time i
 				PVector jointOne = log.getJoint(i, jP.First);
 				PVector jointTwo = log.getJoint(i, jP.Second);
 				
 				//Calculate relation between the joints
-				JointRelation relative = super.compareJointPositions(jP,jointOne, jointTwo);
-				
-				//Add to the recorder
-				super.add(relative);
+				frame[k] = super.compareJointPositions(jP,jointOne, jointTwo);
+			}
+			//Add to the recorder
+			frame(frame, frame.length);
+		}
+	}
+	/**
+	 * Adds the first n relations of a frame, one per focus pair in focus
+	 * order. Every relation is added when not streaming, when streaming the
+	 * frame is placed into the open node and a frame missing a pair is
+	 * skipped.
+	 * @param frame - Relations of the frame
+	 * @param n - Number of relations recorded
+	 */
+	private void frame(JointRelation frame[], int n){
+		if (streaming == CompressionType.NONE){
+			for (int k=0;k<n;k++){
+				super.add(frame[k]);
+			}
+			return;
+		}
+		if (n < frame.length)
+			return;
+		
+		//the frame joins the open node if every pair is within Epsilon of
+		//the seed, the same test reduce() uses to grow a node
+		if (seed != null){
+			boolean fits = true;
+			for (int k=0;k<n && fits;k++){
+				fits = seed[k].equalsCoordinates(frame[k]);
+			}
+			if (fits){
+				frames++;
+				if (sum != null){
+					for (int k=0;k<n;k++){
+						for (int e=0;e<sum[k].length;e++){
+							sum[k][e].translate(frame[k].angle.get(e));
+						}
+					}
+				}
+				return;
+			}
+			for (JointRelation jR : node()){
+				super.add(jR);
+			}
+		}
+		
+		//start a new node seeded by frame
+		seed = frame.clone();
+		frames = 1;
+		sum = null;
+		if (streaming == CompressionType.AVG){
+			sum = new Vector3[n][];
+			for (int k=0;k<n;k++){
+				sum[k] = new Vector3[seed[k].angle.size()];
+				for (int e=0;e<sum[k].length;e++){
+					sum[k][e] = new Vector3(seed[k].angle.get(e));
+				}
 			}
 		}
 	}
+	/**
+	 * @return
+	 * 		Value of the open node, the seed for SIMPLE and the average of the
+	 * node for AVG. New relations are returned so the node may continue.
+	 */
+	private JointRelation[] node(){
+		JointRelation v[] = new JointRelation[seed.length];
+		for (int k=0;k<v.length;k++){
+			List<Euclidean> angle = new ArrayList<Euclidean>();
+			for (int e=0;e<seed[k].angle.size();e++){
+				if (sum == null)
+					angle.add(seed[k].angle.get(e));
+				else
+					angle.add(new Vector3(sum[k][e]).scale(1.0/frames).toEuclidean());
+			}
+			v[k] = JointRelation.of(seed[k].J, angle, null);
+		}
+		return v;
+	}
+	/**
+	 * Groups frames into Epsilon nodes as they are recorded rather than
+	 * keeping every frame. A frame joins the open node while every focus pair
+	 * is within Epsilon of the first frame of the node, otherwise the node is
+	 * added as a step and the frame starts a new node. This is the grouping
+	 * of {@link CompressionType#SIMPLE} and {@link CompressionType#AVG} run
+	 * forward from the start of the recording rather than back from the end,
+	 * so step boundaries may fall on different frames but every frame is
+	 * within Epsilon of the node it was placed in.
+	 * <p>
+	 * {@link #generateGesture(CompressionType)} then returns the recorded
+	 * steps without compressing again. Frames missing a focus pair are
+	 * skipped while streaming.
+	 * 
+	 * @param type - SIMPLE to keep the first frame of each node, AVG to keep
+	 * the average of each node or NONE to keep every frame
+	 * @return
+	 * 		True if the mode was set.
+	 * <p> False if there is recorded data or type is not NONE, SIMPLE or AVG.
+	 */
+	public boolean setStreaming(CompressionType type){
+		if (!isEmpty())
+			return false;
+		if (type != CompressionType.NONE && type != CompressionType.SIMPLE && type != CompressionType.AVG)
+			return false;
+		streaming = type;
+		return true;
+	}
+	/**
+	 * @return
+	 * 		Compression applied while recording, NONE if every frame is kept
+	 */
+	public CompressionType getStreaming(){
+		return streaming;
+	}
 	/**
 	 * Records the entire log to this.recorder
 	 * @param log : JointRecorder storing the data to process
@@ -145,29 +312,63 @@ public class GestureRecord extends GestureController{
 	}
 	/**
 	 * Creates a GestureController that represents the minimum number of steps
-	 * required to represent the recording. The recording is NOT reset upon completion
-	 * and may be used to generate more gestures if desired.
+	 * required to represent the recording. The recording is NOT changed or
+	 * reset and may be used to generate more gestures if desired.
 	 * 
 	 * @return
 	 * 		GestureController representing the recorded gesture
+	 * @see #generateGestures(int)
 	 */
 	public GestureController generateGesture(CompressionType type){
+		Map<CompressionType, GestureController> g = generateGestures(type.getMask());
+		if (g == null)
+			return null;
+		//a recording compressed while streaming has only its own type
+		return g.values().iterator().next();
+	}
+	/**
+	 * Creates a GestureController for each CompressionType in mask from a
+	 * single pass over the recording, the types are produced at the same
+	 * time from the same grouping of the recording, see
+	 * {@link GestureController#compress(int)}. The recording is not changed.
+	 * <p>
+	 * A recording compressed while streaming only holds the type it was
+	 * streamed as, that is returned whatever mask holds.
+	 * 
+	 * @param mask : Masks of the types to generate ORed together
+	 * @return
+	 * 		New gesture for each type, in the order of CompressionType.
+	 * <p> Null if nothing is recorded.
+	 */
+	public Map<CompressionType, GestureController> generateGestures(int mask){
 		//makes sure that something is recored
 		if (isEmpty()){
 			System.out.println("NO recorded data operation terminated.");
 			return null;
 		}
 		
-		if (type != CompressionType.NONE){
-			int oldNodes = super.size();
-			System.out.println("Compressing Recording using CompressionType."+type);
-			super.simplifyGesture(type);
-			System.out.println("Record Compressed from "+oldNodes+" to "+super.size());
+		//already compressed as it was recorded, only the open node remains
+		if (streaming != CompressionType.NONE){
+			if (mask != streaming.getMask())
+				System.out.println("Recording was compressed using CompressionType."+streaming+" while recording, other types ignored");
+			GestureController out = super.clone();
+			if (seed != null){
+				for (JointRelation jR : node()){
+					out.add(jR);
+				}
+			}
+			Map<CompressionType, GestureController> g = new EnumMap<CompressionType, GestureController>(CompressionType.class);
+			g.put(streaming, out);
+			return g;
 		}
 		
-		GestureController out = super.clone(); 
-		if (debug) System.out.println(out.size());
-		return out; 
+		Map<CompressionType, GestureController> g = super.compress(mask);
+		if (debug){
+			for (CompressionType type : g.keySet()){
+				System.out.println("Record Compressed using CompressionType."+type+" from "+super.size()+" to "+g.get(type).size());
+			}
+		}
+		return g;
 	}
 	/**
 	 * Creates and returns a copy of focus
@@ -204,14 +405,26 @@ public class GestureRecord extends GestureController{
 	 */
 	public void clear(){
 		super.clear();
+		seed = null;
+		sum = null;
+		frames = 0;
 	}
 	/**
 	 * Clears focus pairs, recorded data is also cleared.
 	 */
 	public void clearFocus(){
-		super.clear();
+		clear();
 		Focus.clear();
 	}
+	/**
+	 * @return
+	 * 		True if nothing has been recorded, a node still being filled while
+	 * streaming counts as recorded data
+	 */
+	@Override
+	public boolean isEmpty(){
+		return super.isEmpty() && seed == null;
+	}
 	@Override
 	public String toString(){
 		String ret = new String(); //string to return
@@ -243,4 +456,14 @@ public class GestureRecord extends GestureController{
 		GestureController gC = generateGesture(CompressionType.NONE);
 		return gC.toXML();
 	}
+	/**
+	 * Writes the xml representation of the gesture that this recording
+	 * parses into without compression to w.
+	 * @see #toXML()
+	 */
+	@Override
+	public void writeXML(Writer w) throws IOException{
+		GestureController gC = generateGesture(CompressionType.NONE);
+		gC.writeXML(w);
+	}
 }
@@ -0,0 +1,275 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges the leading steps that gestures of a library have in common into a
+ * prefix trie so each shared step is evaluated a single time per frame per
+ * user. Libraries often hold many gestures that start from the same pose, and
+ * variants of the same recording compressed in different ways share most of
+ * their start, without the trie every gesture evaluates those steps on its
+ * own.
+ * <p>
+ * Each node of the trie is a step, two gestures share a node when they share
+ * the parent node and the steps have the same joint pairs in the same order,
+ * link to the same previous relations, and have values within
+ * {@link Euclidean#Epsilon} of each other. A shared node is evaluated with the
+ * values of the first gesture that reached it. Gestures fork into their own
+ * nodes at the first step they differ.
+ * <p>
+ * The result of a node is remembered until {@link #next()} is called, which
+ * must be done before every new frame or user. Between calls to next the
+ * trie may be evaluated from any number of threads.
+ *
+ * @see GestureEngine#setShared(boolean)
+ * @author Levi Lindsley
+ *
+ */
+class GestureTrie {
+	/**Compiled form of each gesture of the library, in library order*/
+	private CompiledGesture gestures[];
+
+	/**Node of each step of each gesture, nodeOf[gesture][step]*/
+	private int nodeOf[][];
+
+	/**Gesture whose values are used to evaluate each node*/
+	private int owner[];
+
+	/**Step of owner each node represents, also the depth of the node*/
+	private int ownerStep[];
+
+	/**First child of each node, -1 if there is none*/
+	private int child[];
+
+	/**Next sibling of each node, -1 if there is none*/
+	private int sibling[];
+
+	/**First child of the root, -1 if the library is empty*/
+	private int root;
+
+	/**Number of nodes in the trie*/
+	private int nodes;
+
+	/**
+	 * Result of each node packed with the frame it was stored for as
+	 * (current<<2)|result. Both are held in one int so a single write stores
+	 * them together, gestures evaluated on different threads may race to
+	 * store a node but always store the same value.
+	 */
+	private int memo[];
+
+	/**Current frame, results stored for any other frame are stale*/
+	private int current;
+
+	/**Largest value of current that still fits in memo*/
+	private static final int MAX_FRAME = Integer.MAX_VALUE>>2;
+
+	/**Value of Epsilon the trie was built with*/
+	private double epsilon;
+
+	/**
+	 * Builds a trie over library.
+	 * @param library - Gestures to merge
+	 */
+	GestureTrie(List<GestureController> library){
+		gestures = new CompiledGesture[library.size()];
+		for (int g=0;g<gestures.length;g++){
+			gestures[g] = library.get(g).compiled();
+		}
+		epsilon = Euclidean.epsilon();
+
+		int total = 0;
+		for (CompiledGesture c : gestures){
+			total += c.steps;
+		}
+		owner = new int[total];
+		ownerStep = new int[total];
+		child = new int[total];
+		sibling = new int[total];
+		root = -1;
+		nodes = 0;
+
+		nodeOf = new int[gestures.length][];
+		for (int g=0;g<gestures.length;g++){
+			insert(g);
+		}
+
+		memo = new int[nodes];
+		current = 1;
+	}
+	/**
+	 * Walks gesture g down the trie adding nodes from the first step that is
+	 * not shared.
+	 * @param g - Index of gesture to insert
+	 */
+	private void insert(int g){
+		CompiledGesture c = gestures[g];
+		nodeOf[g] = new int[c.steps];
+		int parent = -1;
+		for (int s=0;s<c.steps;s++){
+			int n = parent < 0 ? root : child[parent];
+			while (n >= 0 && !sameStep(gestures[owner[n]], c, s))
+				n = sibling[n];
+
+			if (n < 0){
+				//no sibling matches so the gesture forks here
+				n = nodes++;
+				owner[n] = g;
+				ownerStep[n] = s;
+				child[n] = -1;
+				if (parent < 0){
+					sibling[n] = root;
+					root = n;
+				}
+				else{
+					sibling[n] = child[parent];
+					child[parent] = n;
+				}
+			}
+			nodeOf[g][s] = n;
+			parent = n;
+		}
+	}
+	/**
+	 * Checks if step s of a and b would be evaluated the same, both gestures
+	 * must already share every step before s.
+	 * <p>
+	 * Since the steps before s are shared the relations of both gestures are
+	 * numbered the same up to s, so the links to previous relations can be
+	 * compared directly.
+	 * @return
+	 * 		True if step s of a and b can share a node
+	 */
+	private boolean sameStep(CompiledGesture a, CompiledGesture b, int s){
+		if (a.phases(s) != b.phases(s))
+			return false;
+
+		for (int k=0;k<a.phases(s);k++){
+			int ra = a.stepStart[s]+k;
+			int rb = b.stepStart[s]+k;
+			if (a.first[ra] != b.first[rb] || a.second[ra] != b.second[rb])
+				return false;
+			if (a.width[ra] != b.width[rb] || a.prev[ra] != b.prev[rb])
+				return false;
+			for (int v=0;v<a.width[ra];v++){
+				if (!isAbout(a.target[ra*a.stride+v], b.target[rb*b.stride+v]))
+					return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * @return
+	 * 		True if a == b +- Epsilon
+	 */
+	private boolean isAbout(double a, double b){
+		return Double.compare(b+epsilon, a) >= 0 && Double.compare(b-epsilon, a) <= 0;
+	}
+	/**
+	 * Checks if this was built from the current form of every gesture of
+	 * library. A gesture is recompiled when it changes or Epsilon changes so
+	 * this also catches changes made to a gesture after it was added.
+	 * @param library - Gestures the trie was built from
+	 * @return
+	 * 		True if the trie does not need to be rebuilt
+	 */
+	boolean isCurrent(List<GestureController> library){
+		if (epsilon != Euclidean.epsilon() || library.size() != gestures.length)
+			return false;
+		for (int g=0;g<gestures.length;g++){
+			if (library.get(g).compiled() != gestures[g])
+				return false;
+		}
+		return true;
+	}
+	/**
+	 * Forgets the result of every node, must be called before a new frame or
+	 * a different user is evaluated.
+	 */
+	void next(){
+		current++;
+		if (current > MAX_FRAME){
+			//frame wrapped around, clear old results so none look current
+			Arrays.fill(memo, 0);
+			current = 1;
+		}
+	}
+	/**
+	 * Evaluates step of gesture g against frame, if the node of the step was
+	 * already evaluated since the last call to {@link #next()} the stored
+	 * result is used.
+	 *
+	 * @param g - Index of gesture
+	 * @param frame - Snapshot of the user
+	 * @param step - Step of gesture g
+	 * @param buf - Scratch space of at least {@link CompiledGesture#bufferSize()} values
+	 * @return
+	 * 		Result of the step, see {@link CompiledGesture#evaluate}
+	 */
+	int evaluate(int g, SkeletonFrame frame, int step, double buf[]){
+		int n = nodeOf[g][step];
+		int m = memo[n];
+		if ((m>>>2) == current)
+			return m&3;
+		int r = gestures[owner[n]].evaluate(frame, ownerStep[n], buf);
+		memo[n] = (current<<2)|r;
+		return r;
+	}
+	/**
+	 * @param g - Index of gesture
+	 * @param step - Step of gesture g
+	 * @return
+	 * 		Compiled gesture whose values are used for step of gesture g
+	 */
+	CompiledGesture evaluatedBy(int g, int step){
+		return gestures[owner[nodeOf[g][step]]];
+	}
+	/**
+	 * @param g - Index of gesture
+	 * @return
+	 * 		Evaluator for the steps of gesture g that goes through this trie
+	 */
+	StepEvaluator view(final int g){
+		return new StepEvaluator(){
+			@Override
+			public int steps(){
+				return gestures[g].steps;
+			}
+			@Override
+			public int evaluate(SkeletonFrame frame, int step, double buf[]){
+				return GestureTrie.this.evaluate(g, frame, step, buf);
+			}
+		};
+	}
+	/**
+	 * @return
+	 * 		Largest scratch buffer any gesture of the trie needs
+	 */
+	int bufferSize(){
+		int size = JointRelation.width();
+		for (CompiledGesture c : gestures){
+			size = Math.max(size, c.bufferSize());
+		}
+		return size;
+	}
+	/**
+	 * @return
+	 * 		Number of nodes, the number of steps evaluated per frame when every
+	 * node is reached
+	 */
+	int nodes(){
+		return nodes;
+	}
+	/**
+	 * @return
+	 * 		Number of steps across the library before sharing
+	 */
+	int steps(){
+		return owner.length;
+	}
+	@Override
+	public String toString(){
+		return "{gestures: "+gestures.length+" steps: "+steps()+" nodes: "+nodes+"}";
+	}
+}
@@ -0,0 +1,219 @@
+package controller;
+
+/**
+ * Progress of a single user through a single gesture when more than one
+ * partial match is followed at a time. Where a {@link MatchState} follows one
+ * cursor that is reset when a frame fails, a HypothesisSet keeps a bounded
+ * number of cursors (hypotheses) that each advance, hold or are pruned on
+ * every frame. Every frame is also tested against the first step of the
+ * gesture so a new attempt is started on the same frame an old one dies, and
+ * repetitions done back to back are all recognized.
+ * <p>
+ * Two hypotheses on the same step would make the same decisions from then on
+ * so only the oldest is kept. When a hypothesis completes the gesture, every
+ * other hypothesis that started during its attempt is discarded so a single
+ * performance is only reported once.
+ *
+ * @see GestureEngine.MatchMode#MULTI
+ * @author Levi Lindsley
+ *
+ */
+public class HypothesisSet {
+	/**Number of hypotheses kept when no limit is given*/
+	static final int DEFAULT_LIMIT = 8;
+
+	/**Step each hypothesis is waiting on*/
+	private int step[];
+
+	/**Consecutive frames each hypothesis has been holding*/
+	private int hold[];
+
+	/**Frame each hypothesis started at*/
+	private long start[];
+
+	/**Number of live hypotheses, they are held in [0, count)*/
+	private int count;
+
+	/**Number of frames this set has been advanced*/
+	private long clock;
+
+	/**Frame the last completing hypothesis started at*/
+	private long lastStart;
+
+	/**
+	 * Creates an empty set holding at most {@link #DEFAULT_LIMIT} hypotheses.
+	 */
+	public HypothesisSet(){
+		this(DEFAULT_LIMIT);
+	}
+	/**
+	 * Creates an empty set.
+	 * @param limit - Maximum number of hypotheses followed at once
+	 */
+	public HypothesisSet(int limit){
+		if (limit < 1)
+			throw new IllegalArgumentException("limit must be at least 1: "+limit);
+		step = new int[limit];
+		hold = new int[limit];
+		start = new long[limit];
+		reset();
+	}
+	/**
+	 * Discards all hypotheses.
+	 */
+	public void reset(){
+		count = 0;
+		clock = 0;
+		lastStart = -1;
+	}
+	/**
+	 * Advances every hypothesis by one frame and starts a new one if frame
+	 * matches the first step of c. The frame numbers of successive frames must
+	 * increase as they are used to tell which attempts overlap.
+	 *
+	 * @param c - Evaluates the steps of the gesture being followed
+	 * @param frame - Snapshot of the user
+	 * @param buf - Scratch space of at least {@link CompiledGesture#bufferSize()} values
+	 * @return
+	 * 		True if any hypothesis completed the gesture on this frame
+	 */
+	boolean advance(StepEvaluator c, SkeletonFrame frame, double buf[]){
+		long now = frame.getFrame();
+		clock++;
+		int steps = c.steps();
+		if (steps == 0)
+			return false;
+
+		boolean complete = false;
+		long done = -1;
+
+		//advance, hold or prune the existing hypotheses, survivors are packed
+		//to the front of the arrays in their current order which is oldest first
+		int kept = 0;
+		for (int i=0;i<count;i++){
+			int s = step[i];
+			int h = hold[i];
+			switch (c.evaluate(frame, s, buf)){
+			case CompiledGesture.FAIL:
+				continue;
+			case CompiledGesture.HOLD:
+				h++;
+				break;
+			default:
+				s++;
+				h = 0;
+			}
+			if (s == steps){
+				//only the oldest completing hypothesis is reported
+				if (!complete){
+					complete = true;
+					done = start[i];
+				}
+				continue;
+			}
+			kept = keep(kept, s, h, start[i]);
+		}
+		count = kept;
+
+		if (complete){
+			//drop attempts that overlap the one that just completed
+			lastStart = done;
+			kept = 0;
+			for (int i=0;i<count;i++){
+				if (start[i] < done)
+					kept = keep(kept, step[i], hold[i], start[i]);
+			}
+			count = kept;
+		}
+
+		//test this frame against the first step, the first step can not hold
+		if (c.evaluate(frame, 0, buf) == CompiledGesture.MATCH){
+			if (steps == 1){
+				if (!complete){
+					complete = true;
+					lastStart = now;
+				}
+			}
+			else{
+				add(1, now);
+			}
+		}
+		return complete;
+	}
+	/**
+	 * Places a hypothesis at position kept unless a hypothesis already in
+	 * [0, kept) is on the same step.
+	 * @return
+	 * 		New number of kept hypotheses
+	 */
+	private int keep(int kept, int s, int h, long st){
+		for (int j=0;j<kept;j++){
+			if (step[j] == s)
+				return kept;
+		}
+		step[kept] = s;
+		hold[kept] = h;
+		start[kept] = st;
+		return kept+1;
+	}
+	/**
+	 * Adds a new hypothesis on step s, if the set is full the newest
+	 * hypothesis is replaced as it has made the least progress.
+	 */
+	private void add(int s, long st){
+		for (int j=0;j<count;j++){
+			if (step[j] == s)
+				return;
+		}
+		if (count == step.length)
+			count--;
+		step[count] = s;
+		hold[count] = 0;
+		start[count] = st;
+		count++;
+	}
+	/**
+	 * @return
+	 * 		Number of hypotheses currently followed
+	 */
+	public int size(){
+		return count;
+	}
+	/**
+	 * @return
+	 * 		Highest step reached by any hypothesis, 0 if there are none
+	 */
+	public int getStep(){
+		int best = 0;
+		for (int i=0;i<count;i++){
+			best = Math.max(best, step[i]);
+		}
+		return best;
+	}
+	/**
+	 * @return
+	 * 		Frame the most recent completion started at, -1 if nothing has
+	 * completed
+	 * @see SkeletonFrame#getFrame()
+	 */
+	public long getLastStart(){
+		return lastStart;
+	}
+	/**
+	 * @return
+	 * 		Number of frames this set has been advanced
+	 */
+	public long getClock(){
+		return clock;
+	}
+	@Override
+	public String toString(){
+		String ret = new String();
+		ret += "{";
+		for (int i=0;i<count;i++){
+			ret += "<step: "+step[i]+" hold: "+hold[i]+" start: "+start[i]+">";
+		}
+		ret += "}";
+		return ret;
+	}
+}
@@ -1,16 +1,15 @@
 package controller;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeSet;
@@ -27,6 +26,12 @@ import SimpleOpenNI.SimpleOpenNI;
  * 
  * Recording does not support multiple users, more that one user may interfere
  * with recording.
+ * <p>
+ * The recording is held by column, each joint is given a slot the first
+ * time it is recorded and the coordinates of a slot are kept in chunks of
+ * {@link #CHUNK} ticks of x,y,z floats. A joint missing from a tick is held
+ * as NaN. Retrieving a joint is a pair of array lookups and a tick costs 12
+ * bytes per joint rather than a map of PVectors.
  * 
  * @see GestureRecord#java
  * @see Skeleton#java
@@ -48,8 +53,32 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 	/**Integers corresponding to SimpleOpenNI skeletal points to record*/
 	private Set<Integer> joints;
 	
-	/**The record of all joints at each distinct record call*/
-	private List<Map<Integer, PVector>> recorder;
+	/**Number of ticks held by each chunk of a column*/
+	static final int CHUNK = 1024;
+	
+	/**Slot of each joint indexed by joint, -1 if the joint has no column*/
+	private int slotOf[];
+	
+	/**Joint held by each slot*/
+	private int jointOf[];
+	
+	/**Number of slots in use*/
+	private int slots;
+	
+	/**
+	 * Coordinates of each slot, columns[slot][chunk] holds x,y,z of the
+	 * CHUNK ticks starting at chunk*CHUNK
+	 */
+	private float columns[][][];
+	
+	/**Number of ticks recorded*/
+	private int ticks;
+	
+	/**Recording file the ticks are read from, null if they are held in columns*/
+	private MappedRecording mapped;
+	
+	/**Ticks per second the recording is taken at*/
+	private int frameRate;
 	
 	/**Denotes current tick for play back*/
 	private int playBackTick;
@@ -58,12 +87,17 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 	private boolean mirror;
 	
 	/**
-	 * Default Constructor. joints and recorder are initialized and playBackTick
+	 * Default Constructor. joints and the columns are initialized and playBackTick
 	 * is set to 0, mirror is false by default.
 	 */
 	public JointRecorder(){
 		joints = new TreeSet<Integer>();
-		recorder = new ArrayList<Map<Integer, PVector>>();
+		slotOf = new int[0];
+		jointOf = new int[0];
+		columns = new float[0][][];
+		slots = 0;
+		ticks = 0;
+		frameRate = RecordingSource.DEFAULT_FRAME_RATE;
 		playBackTick = 0;
 		mirror = false;
 	}
@@ -227,18 +261,129 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 		if (!context.isTrackingSkeleton(user))
 			return;
 		
-		//new map to add each joint data to
-		Map<Integer, PVector> v = new HashMap<Integer, PVector>();
 		PVector p = new PVector(); //vector for joint positions
+		int t = nextTick();
 		
 		//for each joint j get coordinates from context
 		for (Integer j : joints){
 			p = GestureController.getRealCoordinites(context, user, j);
-			v.put(j, p);
+			if (p != null)
+				put(t, j, p.x, p.y, p.z);
+		}
+	}
+	/**
+	 * Takes a snapshot of each focus joint from any source and adds to record
+	 * @param source : Source to retrieve skeletal data from
+	 * @param user : user id to retrieve skeleton from
+	 */
+	public void record(SkeletonSource source, int user){
+		if (!source.isTracking(user))
+			return;
+		
+		PVector p = new PVector();
+		int t = nextTick();
+		for (Integer j : joints){
+			if (source.getJoint(user, j, p))
+				put(t, j, p.x, p.y, p.z);
 		}
+	}
+	/**
+	 * Adds a snapshot taken elsewhere as the next tick, only the focus joints
+	 * held by frame are recorded.
+	 * @param frame : Snapshot to record
+	 */
+	public void record(SkeletonFrame frame){
+		if (!frame.isTracked())
+			return;
 		
-		//add the map representing this time tick
-		recorder.add(v);
+		int t = nextTick();
+		for (Integer j : joints){
+			if (frame.has(j))
+				put(t, j, frame.x(j), frame.y(j), frame.z(j));
+		}
+	}
+	/**
+	 * Adds an empty tick to the end of the recording, every joint is missing
+	 * from it until put.
+	 * @return
+	 * 		The new tick
+	 */
+	private int nextTick(){
+		if (mapped != null)
+			unmap();
+		int t = ticks++;
+		if (t%CHUNK == 0){
+			//first tick of a chunk, grow every column
+			for (int s=0;s<slots;s++){
+				columns[s] = grow(columns[s], t/CHUNK);
+			}
+		}
+		return t;
+	}
+	/**
+	 * Copies the ticks of the mapped file into columns so more can be
+	 * recorded, the file is left as it is.
+	 */
+	private void unmap(){
+		MappedRecording m = mapped;
+		mapped = null;
+		ticks = 0;
+		PVector p = new PVector();
+		int j[] = m.getJoints();
+		for (int t=0;t<m.getTicks();t++){
+			nextTick();
+			for (int i=0;i<j.length;i++){
+				if (m.getJoint(t, j[i], p))
+					put(t, j[i], p.x, p.y, p.z);
+			}
+		}
+	}
+	/**
+	 * @return
+	 * 		Copy of column with chunk added and filled with NaN, column
+	 * is returned if it already holds chunk
+	 */
+	private static float[][] grow(float column[][], int chunk){
+		if (chunk < column.length)
+			return column;
+		float c[][] = Arrays.copyOf(column, chunk+1);
+		for (int i=column.length;i<c.length;i++){
+			c[i] = new float[CHUNK*3];
+			Arrays.fill(c[i], Float.NaN);
+		}
+		return c;
+	}
+	/**
+	 * Places the coordinates of joint at tick t, giving joint a slot if it
+	 * does not have one yet.
+	 */
+	private void put(int t, int joint, float x, float y, float z){
+		int s = slot(joint);
+		if (s < 0){
+			if (joint >= slotOf.length){
+				int n = slotOf.length;
+				slotOf = Arrays.copyOf(slotOf, joint+1);
+				Arrays.fill(slotOf, n, slotOf.length, -1);
+			}
+			s = slots++;
+			slotOf[joint] = s;
+			jointOf = Arrays.copyOf(jointOf, slots);
+			jointOf[s] = joint;
+			columns = Arrays.copyOf(columns, slots);
+			columns[s] = grow(new float[0][], (ticks-1)/CHUNK);
+		}
+		float c[] = columns[s][t/CHUNK];
+		int i = (t%CHUNK)*3;
+		c[i] = x;
+		c[i+1] = y;
+		c[i+2] = z;
+	}
+	/**
+	 * @return
+	 * 		Slot of joint, -1 if joint was never recorded
+	 */
+	private int slot(int joint){
+		return joint >= 0 && joint < slotOf.length ? slotOf[joint] : -1;
 	}
 	/**
 	 * Retrieves the position of a joint at a given time
@@ -250,11 +395,34 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 	 * recording represents.
 	 */
 	public PVector getJoint(int tick, int joint){
-		//Make sure that time is within bounds
-		if (!joints.contains(joint) || !(tick < recorder.size())){
+		PVector p = new PVector();
+		if (!getJoint(tick, joint, p))
 			return null;
-		}
-		return recorder.get(tick).get(joint);
+		return p;
+	}
+	/**
+	 * Same as {@link #getJoint(int, int)} but places the position into dst
+	 * rather than creating a new PVector.
+	 * @param tick : the number of ticks from the beginning of the recording
+	 * @param joint : the index of the joint to retrieve
+	 * @param dst : PVector to place the position into
+	 * @return
+	 * 		True if the joint was recorded at tick and dst was set.
+	 * <p> False otherwise, dst is unchanged.
+	 */
+	public boolean getJoint(int tick, int joint, PVector dst){
+		if (mapped != null)
+			return mapped.getJoint(tick, joint, dst);
+		//Make sure that time is within bounds
+		int s = slot(joint);
+		if (s < 0 || tick < 0 || tick >= ticks)
+			return false;
+		float c[] = columns[s][tick/CHUNK];
+		int i = (tick%CHUNK)*3;
+		if (Float.isNaN(c[i]))
+			return false;
+		dst.set(c[i], c[i+1], c[i+2]);
+		return true;
 	}
 	/**
 	 * Sets playBackTick to 0 restarting play back
@@ -286,7 +454,7 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 	 */
 	public List<PVector []> playBack(Collection<Integer> focus){
 		playBackTick ++;
-		if (playBackTick > recorder.size()){
+		if (playBackTick > ticks){
 			return null;
 		}
 		return playBack(playBackTick-1, focus);
@@ -303,7 +471,7 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 	 * @see JointRecorder#playBack(Set)
 	 */
 	public List<PVector []> playBack(int tick, Collection<Integer> focus){
-		if (tick < 0 || tick >= recorder.size()){
+		if (tick < 0 || tick >= ticks){
 			return null;
 		}
 		List<PVector []> coordinites = new ArrayList<PVector[]>();
@@ -421,7 +589,7 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 	}
 	public List<PVector []> playBack(Vector<Pair> focus){
 		playBackTick ++;
-		if (playBackTick > recorder.size()){
+		if (playBackTick > ticks){
 			return null;
 		}
 		return playBack(playBackTick-1, focus);
@@ -441,8 +609,8 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 	private PVector[] getJointPosition(int tick, int con1, int con2, Collection<Integer>focus){
 		if ((contains(con1)&&contains(con2))&&focus.contains(con1)&&focus.contains(con2)){
 			PVector[] ret = new PVector[2];
-			ret[0] = recorder.get(tick).get(con1);
-			ret[1] = recorder.get(tick).get(con2);
+			ret[0] = getJoint(tick, con1);
+			ret[1] = getJoint(tick, con2);
 			return ret;
 		}
 		return null;
@@ -452,7 +620,7 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 	 * 		The size of the recorder, thus representing the number of ticks
 	 */
 	public int getTicks(){
-		return recorder.size();
+		return ticks;
 	}
 	/**@return The current playBackTick tick*/
 	public int getPlayBackTick(){
@@ -486,7 +654,7 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 	 * 	<p>	False else.
 	 */
 	public boolean isEmpty(){
-		return recorder.isEmpty();
+		return ticks == 0;
 	}
 	public void getJoints(Collection<Integer> j){
 		j.addAll(joints);
@@ -497,7 +665,12 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 	 * will remain. To remove focus joints use {@link #clearFocus()}
 	 */
 	public void clear(){
-		recorder.clear();
+		slotOf = new int[0];
+		jointOf = new int[0];
+		columns = new float[0][][];
+		slots = 0;
+		ticks = 0;
+		mapped = null;
 	}
 	/**
 	 * Clears focus joints, as these are linked to the recording the recording
@@ -518,67 +691,97 @@ public class JointRecorder implements xmlGestureParser<JointRecorder>{
 		String ret = new String();
 		
 		ret += "Number of joints tracked: "+joints.size()+'\n';
-		ret += "Number of recording ticks: "+recorder.size()+'\n';
-		for (Map<Integer, PVector> m : recorder){
-			ret += m.toString()+'\n';
+		ret += "Number of recording ticks: "+ticks+'\n';
+		PVector p = new PVector();
+		for (int t=0;t<ticks;t++){
+			//same form as the map each tick used to be held in
+			String m = "{";
+			for (Integer j : joints){
+				if (getJoint(t, j, p))
+					m += (m.length() > 1 ? ", " : "")+j+"="+p;
+			}
+			ret += m+"}"+'\n';
 		}
 		return ret;
 	}
 	public void save(String fileName){
-		BufferedWriter wr;
-		try {
-			wr = new BufferedWriter(new FileWriter(fileName));
-		} catch (IOException e) {
-			System.out.println("IOException: "+e.getMessage());
-			e.printStackTrace();
-			return;
-		}
-		String content = new String();
-		
-		content +="<?xml version=\"1.0\"?>"+'\n';
-		content +="<root>"+'\n';
-		content +=toXML();
-		content +="</root>"+'\n';
-		xmlStatics.write(wr, content);
-		
+		xmlStatics.save(fileName, Collections.singletonList(this), "</root>"+'\n');
 	}
 	@Override
 	public void save(String fileName, List<JointRecorder> jR) {
-		BufferedWriter wr;
-		try {
-			wr = new BufferedWriter(new FileWriter(fileName));
-		} catch (IOException e) {
-			System.out.println("IOException: "+e.getMessage());
-			e.printStackTrace();
-			return;
-		}
-		String content = new String();
-		
-		content +="<?xml version=\"1.0\"?>"+'\n';
-		content +="<root>"+'\n';
-		xmlStatics.write(wr, content);
-		for (JointRecorder r : jR){
-			xmlStatics.write(wr, r.toXML());
+		xmlStatics.save(fileName, jR, "</root>"+'\n');
+	}
+	/**
+	 * Writes the recording to fileName in the binary form described by
+	 * {@link MappedRecording}, which is far smaller and faster to write than
+	 * {@link #save(String)} and can be read back with {@link #loadBinary(String)}.
+	 * @param fileName - File to write, replaced if it exists
+	 * @throws IOException
+	 * 		If the file can not be written
+	 */
+	public void saveBinary(String fileName) throws IOException{
+		MappedRecording.write(this, fileName);
+	}
+	/**
+	 * Opens a recording written by {@link #saveBinary(String)}. The ticks are
+	 * mapped from the file rather than read into the heap, recording onto the
+	 * result first copies the ticks into memory.
+	 * @param fileName - File to open
+	 * @return
+	 * 		Recording held by fileName
+	 * @throws IOException
+	 * 		If the file can not be read or is not a recording
+	 */
+	public static JointRecorder loadBinary(String fileName) throws IOException{
+		MappedRecording m = new MappedRecording(fileName);
+		JointRecorder r = new JointRecorder();
+		for (int j : m.getJoints()){
+			r.joints.add(j);
 		}
-		xmlStatics.write(wr,"</root>"+'\n');
+		r.mirror = m.getMirror();
+		r.frameRate = m.getFrameRate();
+		r.ticks = m.getTicks();
+		r.mapped = m;
+		return r;
+	}
+	/**
+	 * @return
+	 * 		Ticks per second the recording is taken at
+	 */
+	public int getFrameRate(){
+		return frameRate;
+	}
+	/**
+	 * @param rate - Ticks per second the recording is taken at, kept with
+	 * the recording when saved
+	 */
+	public void setFrameRate(int rate){
+		if (rate <= 0)
+			throw new IllegalArgumentException("rate must be positive: "+rate);
+		frameRate = rate;
 	}
 	public String toXML(){
-		String context = new String();
-		PVector v;
-		context +="<"+classTag+">"+'\n';
-		for (int i=0;i<recorder.size();i++){
-			context +="<tick>"+'\n';
-			context += i+" "+'\n';
-			String inner;
+		return xmlStatics.toXML(this);
+	}
+	/**
+	 * Writes the xml representation of the recording to w one tick at a
+	 * time, joints missing from a tick are left out of it.
+	 * @see #toXML()
+	 */
+	@Override
+	public void writeXML(Writer w) throws IOException{
+		PVector v = new PVector();
+		w.write("<"+classTag+">"+'\n');
+		for (int i=0;i<ticks;i++){
+			w.write("<tick>"+'\n');
+			w.write(i+" "+'\n');
 			for (Integer j : joints){ 
-				inner = j.toString()+'\n';
-				v = recorder.get(i).get(j);
-				context += xmlStatics.createPVectorElem("joint", inner, v);
+				if (getJoint(i, j, v))
+					xmlStatics.writePVectorElem(w, "joint", j.toString()+'\n', v);
 			}
-			context +="</tick>"+'\n';
+			w.write("</tick>"+'\n');
 		}
-		context += "</"+classTag+">"+'\n';
-		return context;
+		w.write("</"+classTag+">"+'\n');
 	}
 	@Override
 	public JointRecorder load(Scanner xmlInput) throws UnsupportedOperationException {
@@ -1,6 +1,9 @@
 package controller;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -62,6 +65,9 @@ class JointRelation implements Serializable{
 			this.mask = i;
 		}
 	}
+	/**Order the AngleTypes are placed into {@link #angle}*/
+	private static final AngleType ORDER[] = {AngleType.CROSS_PRODUCT, 
+		AngleType.ANGLE_2D, AngleType.GRID, AngleType.UNIT_VECTOR};
 	
 	
 	/**Pair of SimpleOpenNI joints */
@@ -112,29 +118,118 @@ class JointRelation implements Serializable{
 		angle = new ArrayList<Euclidean>();
 		angleType = new ArrayList<Integer>();
 		
+		double values[] = new double[width()];
+		relate(pointOne.x, pointOne.y, pointOne.z, pointTwo.x, pointTwo.y, pointTwo.z, values, 0);
+		
 		//Add all AngleType that are appropriate for Interpretation 
+		int i=0;
+		for (AngleType t : ORDER){
+			if ((t.mask & Interpretation)!= 0){
+				angle.add(new Euclidean(values[i], values[i+1], values[i+2]));
+				angleType.add(t.mask);
+				i += 3;
+			}
+		}
+	}
+	/**
+	 * Computes the relation between pointOne (ax, ay, az) and pointTwo (bx, by, bz)
+	 * for every AngleType in {@link #Interpretation} and writes the values into out
+	 * starting at off, three values per AngleType in the same order as 
+	 * {@link #angle}. Nothing is allocated so this may be called every frame.
+	 * <p>
+	 * The calculations are the same as the Euclidean functions they mirror,
+	 * {@link Euclidean#unitVector()}, {@link Euclidean#crossProcuct(Euclidean)},
+	 * {@link Euclidean#planarAngle(Euclidean)} and {@link Euclidean#unitize()}, 
+	 * so the values are identical to the ones held by a JointRelation created
+	 * from the same points.
+	 * 
+	 * @param out - Buffer to write to, must have {@link #width()} values after off
+	 * @param off - Position in out to start writing
+	 * @return
+	 * 		Number of values written
+	 */
+	static int relate(double ax, double ay, double az, double bx, double by, double bz, double out[], int off){
+		int i = off;
+		double unit = Euclidean.unitSize();
+		
 		if ((AngleType.CROSS_PRODUCT.mask & Interpretation)!= 0){
-			Euclidean tmp = (pointOne.unitVector().crossProcuct(pointTwo.unitVector()));
-			angle.add(tmp);
-			angleType.add(AngleType.CROSS_PRODUCT.mask);
+			//pointOne.unitVector() cross pointTwo.unitVector()
+			double l = Math.sqrt((ax*ax)+(ay*ay)+(az*az));
+			double ux = (ax/l)*unit, uy = (ay/l)*unit, uz = (az/l)*unit;
+			l = Math.sqrt((bx*bx)+(by*by)+(bz*bz));
+			double vx = (bx/l)*unit, vy = (by/l)*unit, vz = (bz/l)*unit;
+			out[i++] = uy*vz - uz*vy;
+			out[i++] = uz*vx - ux*vz;
+			out[i++] = ux*vy - uy*vx;
 		}
 		if ((AngleType.ANGLE_2D.mask & Interpretation)!= 0){
-			Euclidean tmp = pointOne.planarAngle(pointTwo);
-			angle.add(tmp);
-			angleType.add(AngleType.ANGLE_2D.mask);
+			//pointOne.planarAngle(pointTwo), each plane keeps the zeroed axis
+			//so the rounding is the same as the Euclidean version
+			out[i++] = planar(ax, 0.0, az, bx, 0.0, bz);
+			out[i++] = planar(0.0, ay, ay, 0.0, by, bz);
+			out[i++] = planar(ax, ay, 0.0, bx, by, 0.0);
 		}
 		if ((AngleType.GRID.mask & Interpretation)!= 0){
-			Euclidean tmp = new Euclidean(pointOne);
-			tmp.translate(pointTwo.inverse());
-			angle.add(tmp.unitize());
-			angleType.add(AngleType.GRID.mask);
+			//pointOne translated by pointTwo.inverse() then unitized
+			out[i++] = sign(ax+(bx*-1));
+			out[i++] = sign(ay+(by*-1));
+			out[i++] = sign(az+(bz*-1));
 		}
 		if ((AngleType.UNIT_VECTOR.mask & Interpretation)!= 0){
-			Euclidean tmp = pointOne.unitVector();
-			tmp.translate(pointTwo.unitVector().inverse());
-			angle.add(tmp);
-			angleType.add(AngleType.UNIT_VECTOR.mask);
+			//pointOne.unitVector() translated by pointTwo.unitVector().inverse()
+			double l = Math.sqrt((ax*ax)+(ay*ay)+(az*az));
+			double ux = (ax/l)*unit, uy = (ay/l)*unit, uz = (az/l)*unit;
+			l = Math.sqrt((bx*bx)+(by*by)+(bz*bz));
+			double vx = (bx/l)*unit, vy = (by/l)*unit, vz = (bz/l)*unit;
+			out[i++] = ux+(vx*-1);
+			out[i++] = uy+(vy*-1);
+			out[i++] = uz+(vz*-1);
+		}
+		return i-off;
+	}
+	/**
+	 * Angle between (ax, ay, az) and (bx, by, bz) as calculated for a single
+	 * plane of {@link Euclidean#planarAngle(Euclidean)}.
+	 */
+	private static double planar(double ax, double ay, double az, double bx, double by, double bz){
+		double dot = (ax*bx)+(ay*by)+(az*bz);
+		double a = Math.sqrt((ax*ax)+(ay*ay)+(az*az));
+		double b = Math.sqrt((bx*bx)+(by*by)+(bz*bz));
+		return Math.acos(dot/(a*b));
+	}
+	/**
+	 * Sign of a value as calculated by {@link Euclidean#unitize()}.
+	 * @return
+	 * 		-1.0, 0.0 or 1.0
+	 */
+	private static double sign(double a){
+		int c = Double.compare(a, 0.0);
+		if (c == 0)
+			return 0.0;
+		if (c < 0)
+			return -1.0;
+		return 1.0;
+	}
+	/**
+	 * @return
+	 * 		Number of values written by {@link #relate}, three for each
+	 * AngleType active in {@link #Interpretation}
+	 */
+	static int width(){
+		int w = 0;
+		for (AngleType t : ORDER){
+			if ((t.mask & Interpretation)!= 0)
+				w += 3;
 		}
+		return w;
+	}
+	/**
+	 * @return
+	 * 		True if the first three values written by {@link #relate} are the
+	 * CROSS_PRODUCT of the two joints
+	 */
+	static boolean hasCrossProduct(){
+		return (AngleType.CROSS_PRODUCT.mask & Interpretation)!= 0;
 	}
 	/**
 	 * Sets the previous value this is found after the JointOne and JointTwo are know
@@ -239,6 +334,45 @@ class JointRelation implements Serializable{
 		ret += " P:"+prev+"}";
 		return ret;
 	}
+	/**
+	 * Copies this without its prev link so the copy may be added to another
+	 * gesture while this keeps its place in its own. The pair and values are
+	 * copied as well, so changing the copy, such as by
+	 * {@link GestureController#mirror()}, leaves this as it was.
+	 * @return
+	 * 		New JointRelation with the pair and values of this
+	 */
+	JointRelation copy(){
+		JointRelation jR = new JointRelation();
+		jR.J = new Pair(J.First, J.Second);
+		jR.angle = new ArrayList<Euclidean>(angle.size());
+		for (Euclidean e : angle){
+			jR.angle.add(new Euclidean(e));
+		}
+		jR.angleType = new ArrayList<Integer>(angleType);
+		return jR;
+	}
+	/**
+	 * Builds a relation from stored values, the AngleType of each value is
+	 * taken in order from those active in {@link #Interpretation}.
+	 * @param j - Pair representing joints
+	 * @param angle - Values of the relation, held rather than copied
+	 * @param prev - Previous location of j, null if there is none
+	 * @return
+	 * 		New JointRelation
+	 */
+	static JointRelation of(Pair j, List<Euclidean> angle, Pair prev){
+		JointRelation jR = new JointRelation();
+		jR.J = j;
+		jR.angle = angle;
+		jR.prev = prev;
+		jR.angleType = new ArrayList<Integer>();
+		for (AngleType t : ORDER){
+			if ((t.mask & Interpretation)!= 0 && jR.angleType.size() < angle.size())
+				jR.angleType.add(t.mask);
+		}
+		return jR;
+	}
 	public static JointRelation load(Scanner xmlInput){
 		JointRelation jR = new JointRelation();
 		String next = xmlInput.next();
@@ -263,21 +397,40 @@ class JointRelation implements Serializable{
 		return jR;
 	}
 	public String toXML(){
-		String content = new String();
-		content += "<"+classTag+">"+'\n';
-		content += J.toXML();
+		StringWriter w = new StringWriter();
+		try {
+			writeXML(w);
+		} catch (IOException e) {
+			//a StringWriter never throws
+			throw new IllegalStateException(e);
+		}
+		return w.toString();
+	}
+	/**
+	 * Writes the same xml as {@link #toXML()} to w.
+	 * @param w - Writer to write to
+	 * @throws IOException
+	 * 		If w fails
+	 */
+	void writeXML(Writer w) throws IOException{
+		w.write("<"+classTag+">"+'\n');
+		J.writeXML(w);
 //		content += offset.toXML();
-		content += "<angle>"+'\n';
+		w.write("<angle>"+'\n');
 		for (Euclidean e: angle){
-			content += e.toXML();
+			e.writeXML(w);
 		}
-		content += "</angle>"+'\n';
+		w.write("</angle>"+'\n');
 //		content += xmlStatics.createElement("c", C.toString());
 		if (prev == null)
-			content += xmlStatics.createElement("prev", "null");
-		else
-			content += xmlStatics.createElement("prev", prev.toXML());
-		content +="</"+classTag+">"+'\n';
-		return content;
+			xmlStatics.writeElement(w, "prev", "null");
+		else{
+			//same as createElement("prev", prev.toXML())
+			w.write("<prev>"+'\n');
+			prev.writeXML(w);
+			w.write('\n');
+			w.write("</prev>"+'\n');
+		}
+		w.write("</"+classTag+">"+'\n');
 	}
 }
\ No newline at end of file
@@ -0,0 +1,331 @@
+package controller;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary form of a library of gestures, laid out as the primitive arrays of
+ * {@link CompiledGesture} so a library is loaded by mapping the file and
+ * copying each array out whole. No {@link JointRelation} is created on load,
+ * a loaded gesture builds its sequence the first time it is edited or saved
+ * as xml. Xml remains the form to exchange gestures in, this form is tied to
+ * {@link JointRelation#Interpretation}. Every value is little-endian.
+ * <p>
+ * The file starts with a header:
+ * <pre>
+ * int magic          'GLIB'
+ * int version        {@link #VERSION}
+ * int interpretation {@link JointRelation#Interpretation} the values were made with
+ * int gestures       number of gestures, g
+ * int steps          total of steps+1 over every gesture
+ * int relations      total number of relations
+ * int values         total number of values
+ * int names          bytes of names
+ * int crc            CRC32 of everything after the header
+ * </pre>
+ * followed by the sections:
+ * <pre>
+ * int gesture[g][4]      steps, relations, stride and name length, -1 for no name
+ * int stepStart[steps]   step starts of each gesture in turn
+ * int first[relations]
+ * int second[relations]
+ * int width[relations]
+ * int prev[relations]    relative to the first relation of the gesture
+ * double target[values]  relations*stride values of each gesture in turn
+ * byte name[names]       UTF-8 names of each gesture in turn
+ * </pre>
+ *
+ * @see GestureController#saveBinary(String, List)
+ * @see GestureController#loadBinary(String)
+ * @author Levi Lindsley
+ *
+ */
+class MappedLibrary {
+	/**First four bytes of every library, 'GLIB' when read in file order*/
+	static final int MAGIC = 0x42494C47;
+
+	/**Version of the format written*/
+	static final int VERSION = 1;
+
+	/**Bytes of the header*/
+	static final int HEADER = 36;
+
+	/**Ints of each entry of the gesture table*/
+	static final int ENTRY = 4;
+
+	/**Bytes gathered before each write and checksum*/
+	static final int BUFFER = 1<<16;
+
+	/**
+	 * Writes library to fileName, replacing the file if it exists.
+	 * @param library - Gestures to write
+	 * @param fileName - File to write
+	 * @throws IOException
+	 * 		If the file can not be written
+	 */
+	static void write(List<GestureController> library, String fileName) throws IOException{
+		int g = library.size();
+		CompiledGesture c[] = new CompiledGesture[g];
+		byte name[][] = new byte[g][];
+		int steps = 0, relations = 0, values = 0, names = 0;
+		for (int i=0;i<g;i++){
+			c[i] = library.get(i).compiled();
+			String n = library.get(i).Name;
+			name[i] = n == null ? null : n.getBytes("UTF-8");
+			steps += c[i].steps+1;
+			relations += c[i].size();
+			values += c[i].size()*c[i].stride;
+			names += n == null ? 0 : name[i].length;
+		}
+
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		try {
+			FileChannel ch = file.getChannel();
+			ch.truncate(0);
+			Out out = new Out(ch, HEADER);
+			for (int i=0;i<g;i++){
+				out.putInt(c[i].steps);
+				out.putInt(c[i].size());
+				out.putInt(c[i].stride);
+				out.putInt(name[i] == null ? -1 : name[i].length);
+			}
+			for (int i=0;i<g;i++){
+				out.putInts(c[i].stepStart, c[i].steps+1);
+			}
+			for (int i=0;i<g;i++){
+				out.putInts(c[i].first, c[i].size());
+			}
+			for (int i=0;i<g;i++){
+				out.putInts(c[i].second, c[i].size());
+			}
+			for (int i=0;i<g;i++){
+				out.putInts(c[i].width, c[i].size());
+			}
+			for (int i=0;i<g;i++){
+				out.putInts(c[i].prev, c[i].size());
+			}
+			for (int i=0;i<g;i++){
+				int n = c[i].size()*c[i].stride;
+				for (int k=0;k<n;k++){
+					out.putDouble(c[i].target[k]);
+				}
+			}
+			for (int i=0;i<g;i++){
+				if (name[i] != null)
+					out.put(name[i]);
+			}
+			out.flush();
+
+			ByteBuffer head = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			head.putInt(MAGIC);
+			head.putInt(VERSION);
+			head.putInt(JointRelation.Interpretation);
+			head.putInt(g);
+			head.putInt(steps);
+			head.putInt(relations);
+			head.putInt(values);
+			head.putInt(names);
+			head.putInt((int)out.crc.getValue());
+			head.flip();
+			while (head.hasRemaining()){
+				ch.write(head, head.position());
+			}
+			ch.force(false);
+		}
+		finally{
+			file.close();
+		}
+	}
+	/**
+	 * Sections written through a buffer, every byte after the header is
+	 * added to the checksum as it is written.
+	 */
+	private static class Out {
+		FileChannel ch;
+		long pos;
+		ByteBuffer buf = ByteBuffer.allocate(BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 crc = new CRC32();
+
+		Out(FileChannel ch, long pos){
+			this.ch = ch;
+			this.pos = pos;
+		}
+		void putInt(int v) throws IOException{
+			if (buf.remaining() < 4)
+				flush();
+			buf.putInt(v);
+		}
+		void putInts(int v[], int n) throws IOException{
+			for (int i=0;i<n;i++){
+				putInt(v[i]);
+			}
+		}
+		void putDouble(double v) throws IOException{
+			if (buf.remaining() < 8)
+				flush();
+			buf.putDouble(v);
+		}
+		void put(byte b[]) throws IOException{
+			for (int i=0;i<b.length;i+=BUFFER){
+				int n = Math.min(BUFFER, b.length-i);
+				if (buf.remaining() < n)
+					flush();
+				buf.put(b, i, n);
+			}
+		}
+		void flush() throws IOException{
+			crc.update(buf.array(), 0, buf.position());
+			buf.flip();
+			while (buf.hasRemaining()){
+				pos += ch.write(buf, pos);
+			}
+			buf.clear();
+		}
+	}
+	/**
+	 * Maps the library held by fileName and copies out the arrays of each
+	 * gesture.
+	 * @param fileName - File written by {@link #write(List, String)}
+	 * @return
+	 * 		Gestures in the order they were written
+	 * @throws IOException
+	 * 		If the file can not be read, is not a library, is damaged or was
+	 * written with a different {@link JointRelation#Interpretation}
+	 */
+	static List<GestureController> read(String fileName) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		MappedByteBuffer map;
+		try {
+			FileChannel ch = file.getChannel();
+			if (ch.size() < HEADER)
+				throw new IOException("Not a gesture library: "+fileName);
+			if (ch.size() > Integer.MAX_VALUE)
+				throw new IOException("Gesture library is too large: "+fileName);
+			map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		finally{
+			//the mapping stays valid once the file is closed
+			file.close();
+		}
+		map.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (map.getInt(0) != MAGIC)
+			throw new IOException("Not a gesture library: "+fileName);
+		if (map.getInt(4) > VERSION)
+			throw new IOException("Gesture library version "+map.getInt(4)+" is newer than "+VERSION+": "+fileName);
+		if (map.getInt(8) != JointRelation.Interpretation)
+			throw new IOException("Gesture library was built for interpretation "+map.getInt(8)+" not "+JointRelation.Interpretation+": "+fileName);
+		int g = map.getInt(12);
+		int steps = map.getInt(16);
+		int relations = map.getInt(20);
+		int values = map.getInt(24);
+		int names = map.getInt(28);
+		if (g < 0 || steps < 0 || relations < 0 || values < 0 || names < 0)
+			throw new IOException("Corrupt gesture library header: "+fileName);
+		long length = HEADER+4L*(g*(long)ENTRY+steps+4L*relations)+8L*values+names;
+		if (map.capacity() != length)
+			throw new IOException("Gesture library is truncated: "+fileName);
+		if (map.getInt(32) != (int)crc(map))
+			throw new IOException("Gesture library checksum does not match: "+fileName);
+
+		int at = HEADER;
+		IntBuffer table = ints(map, at);
+		at += 4*g*ENTRY;
+		IntBuffer stepStart = ints(map, at);
+		at += 4*steps;
+		IntBuffer first = ints(map, at);
+		at += 4*relations;
+		IntBuffer second = ints(map, at);
+		at += 4*relations;
+		IntBuffer width = ints(map, at);
+		at += 4*relations;
+		IntBuffer prev = ints(map, at);
+		at += 4*relations;
+		DoubleBuffer target = doubles(map, at);
+		at += 8*values;
+		ByteBuffer name = slice(map, at);
+
+		List<GestureController> library = new ArrayList<GestureController>(g);
+		for (int i=0;i<g;i++){
+			int s = table.get();
+			int r = table.get();
+			int stride = table.get();
+			int n = table.get();
+			if (s < 0 || r < 0 || stride < 0 || s+1 > stepStart.remaining() || r > first.remaining()
+					|| (long)r*stride > target.remaining() || n > name.remaining())
+				throw new IOException("Corrupt gesture library entry "+i+": "+fileName);
+
+			int c[][] = {new int[s+1], new int[r], new int[r], new int[r], new int[r]};
+			stepStart.get(c[0]);
+			first.get(c[1]);
+			second.get(c[2]);
+			width.get(c[3]);
+			prev.get(c[4]);
+			double t[] = new double[r*stride];
+			target.get(t);
+			String label = null;
+			if (n >= 0){
+				byte b[] = new byte[n];
+				name.get(b);
+				label = new String(b, "UTF-8");
+			}
+			check(c[0], c[3], c[4], r, stride, i, fileName);
+			library.add(new GestureController(label, new CompiledGesture(c[0], c[1], c[2], c[3], c[4], t, stride)));
+		}
+		return library;
+	}
+	/**
+	 * Checks the structure of a gesture so a library that passes its checksum
+	 * but was written wrongly fails here rather than while matching.
+	 */
+	private static void check(int stepStart[], int width[], int prev[], int relations, int stride, int g, String fileName) throws IOException{
+		boolean ok = stepStart[0] == 0 && stepStart[stepStart.length-1] == relations;
+		for (int i=1;ok && i<stepStart.length;i++){
+			ok = stepStart[i-1] <= stepStart[i];
+		}
+		for (int r=0;ok && r<relations;r++){
+			ok = width[r] >= 0 && width[r] <= stride && width[r]%3 == 0 && prev[r] >= -1 && prev[r] < r;
+		}
+		if (!ok)
+			throw new IOException("Corrupt gesture "+g+": "+fileName);
+	}
+	/**
+	 * @return
+	 * 		CRC32 of every byte of map after the header
+	 */
+	private static long crc(MappedByteBuffer map){
+		CRC32 crc = new CRC32();
+		byte b[] = new byte[BUFFER];
+		ByteBuffer view = slice(map, HEADER);
+		while (view.hasRemaining()){
+			int n = Math.min(b.length, view.remaining());
+			view.get(b, 0, n);
+			crc.update(b, 0, n);
+		}
+		return crc.getValue();
+	}
+	/**
+	 * @return
+	 * 		Little-endian view of map starting at pos
+	 */
+	private static ByteBuffer slice(ByteBuffer map, int pos){
+		ByteBuffer b = map.duplicate();
+		b.position(pos);
+		return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	private static IntBuffer ints(ByteBuffer map, int pos){
+		return slice(map, pos).asIntBuffer();
+	}
+	private static DoubleBuffer doubles(ByteBuffer map, int pos){
+		return slice(map, pos).asDoubleBuffer();
+	}
+}
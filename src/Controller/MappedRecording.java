@@ -0,0 +1,262 @@
+package controller;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import processing.core.PVector;
+
+/**
+ * Binary form of a {@link JointRecorder} and the read only view of such a
+ * file mapped into memory. Every value is little-endian.
+ * <p>
+ * The file starts with a header:
+ * <pre>
+ * int magic       'JREC'
+ * int version     {@link #VERSION}
+ * int flags       1 if the recording is mirrored
+ * int frameRate   ticks per second
+ * int joints      number of joints, n
+ * int ticks       number of ticks
+ * int joint[n]    SimpleOpenNI joint constants in column order
+ * </pre>
+ * followed by one fixed size record per tick holding x,y,z floats for each
+ * joint in column order, a joint missing from a tick is held as NaN.
+ * <p>
+ * The records are mapped in segments of whole ticks rather than read, a
+ * joint is taken from the mapping when asked for so a recording larger than
+ * the heap can be viewed. Any number of threads may read at once.
+ *
+ * @see JointRecorder#saveBinary(String)
+ * @see JointRecorder#loadBinary(String)
+ * @author Levi Lindsley
+ *
+ */
+class MappedRecording {
+	/**First four bytes of every recording, 'JREC' when read in file order*/
+	static final int MAGIC = 0x4345524A;
+
+	/**Version of the format written*/
+	static final int VERSION = 1;
+
+	/**Bytes of the header before the joint list*/
+	static final int HEADER = 24;
+
+	/**Flag marking a mirrored recording*/
+	static final int MIRROR = 0x1;
+
+	/**Most bytes mapped by a single segment*/
+	static final int SEGMENT = 1<<30;
+
+	/**Joints of each column*/
+	private int joints[];
+
+	/**Column of each joint indexed by joint, -1 if the joint is not recorded*/
+	private int columnOf[];
+
+	/**True if the recording is mirrored*/
+	private boolean mirror;
+
+	/**Ticks per second of the recording*/
+	private int frameRate;
+
+	/**Number of ticks*/
+	private int ticks;
+
+	/**Bytes of each tick*/
+	private int stride;
+
+	/**Ticks held by each segment*/
+	private int segmentTicks;
+
+	/**Mappings of the records, segment i holds ticks from i*segmentTicks*/
+	private MappedByteBuffer segments[];
+
+	/**
+	 * Maps the recording held by fileName.
+	 * @param fileName - File written by {@link #write(JointRecorder, String)}
+	 * @throws IOException
+	 * 		If the file can not be read or is not a recording
+	 */
+	MappedRecording(String fileName) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel ch = file.getChannel();
+			ByteBuffer head = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			read(ch, head, 0);
+			if (head.getInt(0) != MAGIC)
+				throw new IOException("Not a recording: "+fileName);
+			if (head.getInt(4) > VERSION)
+				throw new IOException("Recording version "+head.getInt(4)+" is newer than "+VERSION+": "+fileName);
+			mirror = (head.getInt(8) & MIRROR) != 0;
+			frameRate = head.getInt(12);
+			int n = head.getInt(16);
+			ticks = head.getInt(20);
+			if (n < 0 || ticks < 0 || frameRate <= 0)
+				throw new IOException("Corrupt recording header: "+fileName);
+
+			ByteBuffer list = ByteBuffer.allocate(n*4).order(ByteOrder.LITTLE_ENDIAN);
+			read(ch, list, HEADER);
+			joints = new int[n];
+			int max = -1;
+			for (int i=0;i<n;i++){
+				joints[i] = list.getInt(i*4);
+				max = Math.max(max, joints[i]);
+			}
+			columnOf = new int[max+1];
+			Arrays.fill(columnOf, -1);
+			for (int i=0;i<n;i++){
+				columnOf[joints[i]] = i;
+			}
+
+			stride = n*12;
+			long data = HEADER+n*4L;
+			if (ch.size() < data+(long)ticks*stride)
+				throw new IOException("Recording is truncated: "+fileName);
+
+			//a recording without joints has no records to map
+			segmentTicks = Math.max(1, SEGMENT/Math.max(1, stride));
+			segments = new MappedByteBuffer[n == 0 ? 0 : (ticks+segmentTicks-1)/segmentTicks];
+			for (int s=0;s<segments.length;s++){
+				int count = Math.min(segmentTicks, ticks-s*segmentTicks);
+				segments[s] = ch.map(FileChannel.MapMode.READ_ONLY, data+(long)s*segmentTicks*stride, (long)count*stride);
+				segments[s].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+		finally{
+			//the mappings stay valid once the file is closed
+			file.close();
+		}
+	}
+	/**
+	 * Fills buf from ch starting at pos.
+	 */
+	private static void read(FileChannel ch, ByteBuffer buf, long pos) throws IOException{
+		while (buf.hasRemaining()){
+			int n = ch.read(buf, pos+buf.position());
+			if (n < 0)
+				throw new IOException("Recording is truncated");
+		}
+	}
+	/**
+	 * Writes recording to fileName, replacing the file if it exists. Ticks
+	 * are gathered into a direct buffer and written through the channel a
+	 * buffer at a time.
+	 * @param recording - Recording to write
+	 * @param fileName - File to write
+	 * @throws IOException
+	 * 		If the file can not be written
+	 */
+	static void write(JointRecorder recording, String fileName) throws IOException{
+		List<Integer> focus = new ArrayList<Integer>();
+		recording.getJoints(focus);
+		int n = focus.size();
+		int ticks = recording.getTicks();
+
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		try {
+			FileChannel ch = file.getChannel();
+			ch.truncate(0);
+			ByteBuffer buf = ByteBuffer.allocateDirect(Math.max(1<<16, HEADER+n*4+n*12)).order(ByteOrder.LITTLE_ENDIAN);
+			buf.putInt(MAGIC);
+			buf.putInt(VERSION);
+			buf.putInt(recording.getMirror() ? MIRROR : 0);
+			buf.putInt(recording.getFrameRate());
+			buf.putInt(n);
+			buf.putInt(ticks);
+			for (Integer j : focus){
+				buf.putInt(j);
+			}
+
+			PVector p = new PVector();
+			for (int t=0;t<ticks;t++){
+				if (buf.remaining() < n*12)
+					flush(ch, buf);
+				for (Integer j : focus){
+					if (recording.getJoint(t, j, p)){
+						buf.putFloat(p.x);
+						buf.putFloat(p.y);
+						buf.putFloat(p.z);
+					}
+					else{
+						buf.putFloat(Float.NaN);
+						buf.putFloat(Float.NaN);
+						buf.putFloat(Float.NaN);
+					}
+				}
+			}
+			flush(ch, buf);
+			ch.force(false);
+		}
+		finally{
+			file.close();
+		}
+	}
+	/**
+	 * Writes everything placed in buf to ch and empties buf.
+	 */
+	private static void flush(FileChannel ch, ByteBuffer buf) throws IOException{
+		buf.flip();
+		while (buf.hasRemaining()){
+			ch.write(buf);
+		}
+		buf.clear();
+	}
+	/**
+	 * @param tick - Tick of the recording
+	 * @param joint - SimpleOpenNI joint constant
+	 * @param dst - PVector to place the position into
+	 * @return
+	 * 		True if the joint was recorded at tick and dst was set.
+	 * <p> False otherwise, dst is unchanged.
+	 */
+	boolean getJoint(int tick, int joint, PVector dst){
+		if (tick < 0 || tick >= ticks || joint < 0 || joint >= columnOf.length || columnOf[joint] < 0)
+			return false;
+		MappedByteBuffer b = segments[tick/segmentTicks];
+		int i = (tick%segmentTicks)*stride+columnOf[joint]*12;
+		float x = b.getFloat(i);
+		if (Float.isNaN(x))
+			return false;
+		dst.set(x, b.getFloat(i+4), b.getFloat(i+8));
+		return true;
+	}
+	/**
+	 * @return
+	 * 		Joints of the recording in column order
+	 */
+	int[] getJoints(){
+		return joints.clone();
+	}
+	/**
+	 * @return
+	 * 		True if the recording is mirrored
+	 */
+	boolean getMirror(){
+		return mirror;
+	}
+	/**
+	 * @return
+	 * 		Ticks per second of the recording
+	 */
+	int getFrameRate(){
+		return frameRate;
+	}
+	/**
+	 * @return
+	 * 		Number of ticks
+	 */
+	int getTicks(){
+		return ticks;
+	}
+	@Override
+	public String toString(){
+		return "{joints: "+joints.length+" ticks: "+ticks+" segments: "+segments.length+" fps: "+frameRate+"}";
+	}
+}
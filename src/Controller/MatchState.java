@@ -0,0 +1,58 @@
+package controller;
+
+/**
+ * Progress of a single user through a single gesture. The gesture definition
+ * held by {@link GestureController} is shared between all users, each user
+ * being tracked gets a MatchState per gesture so one definition can follow any
+ * number of users.
+ *
+ * @see GestureController#isComplete(SkeletonFrame, MatchState)
+ * @author Levi Lindsley
+ *
+ */
+public class MatchState {
+	/**Number of completed steps of the gesture*/
+	int step;
+
+	/**Number of consecutive frames the current step has been in a holding pattern*/
+	int hold;
+
+	/**Frame the first step was matched at, kept after the gesture completes*/
+	long start;
+
+	/**
+	 * Default constructor, the state starts at the beginning of the gesture.
+	 */
+	public MatchState(){
+		reset();
+		start = -1;
+	}
+	/**
+	 * Restarts the gesture for this user. The start frame is left alone so
+	 * the start of a completed gesture can be read after it resets.
+	 */
+	public void reset(){
+		step = 0;
+		hold = 0;
+	}
+	/**@return Number of completed steps*/
+	public int getStep(){
+		return step;
+	}
+	/**@return Number of consecutive frames spent holding on the current step*/
+	public int getHold(){
+		return hold;
+	}
+	/**
+	 * @return Frame the current attempt started at, or the start of the last
+	 * completed attempt if the gesture just completed. -1 if nothing started
+	 * @see SkeletonFrame#getFrame()
+	 */
+	public long getStart(){
+		return start;
+	}
+	@Override
+	public String toString(){
+		return "{step: "+step+" hold: "+hold+" start: "+start+"}";
+	}
+}
@@ -0,0 +1,164 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import processing.core.PVector;
+
+/**
+ * {@link SkeletonSource} whose frames are built in memory by the caller,
+ * useful for tests, tools and anything that produces skeletons on its own.
+ * The joints set for a user stay until they are changed or the user is
+ * removed, {@link #update()} only advances the frame number and time.
+ *
+ * @author Levi Lindsley
+ *
+ */
+public class MemorySource implements SkeletonSource{
+	/**Current frame of each user, keyed by user id*/
+	private Map<Integer, SkeletonFrame> users;
+
+	/**Confidence of each joint of each user, missing entries are 1*/
+	private Map<Integer, float[]> confidence;
+
+	/**Number of the current frame*/
+	private long frame;
+
+	/**Time of the current frame*/
+	private long time;
+
+	/**Time added by each update*/
+	private long step;
+
+	/**
+	 * Default constructor, the source starts with no users and each update
+	 * advances time by one frame at {@link RecordingSource#DEFAULT_FRAME_RATE}.
+	 */
+	public MemorySource(){
+		users = new TreeMap<Integer, SkeletonFrame>();
+		confidence = new TreeMap<Integer, float[]>();
+		frame = -1;
+		time = 0;
+		step = 1000/RecordingSource.DEFAULT_FRAME_RATE;
+	}
+	/**
+	 * Sets the position of a joint of user, adding user if needed. The user
+	 * is tracked once any joint is set.
+	 * @param user - Id of user
+	 * @param joint - SimpleOpenNI joint constant
+	 * @param x - x coordinate
+	 * @param y - y coordinate
+	 * @param z - z coordinate
+	 */
+	public void set(int user, int joint, float x, float y, float z){
+		getUser(user).set(joint, x, y, z);
+	}
+	/**
+	 * Sets the confidence of a joint of user.
+	 * @param user - Id of user
+	 * @param joint - SimpleOpenNI joint constant
+	 * @param c - Confidence from 0 to 1
+	 */
+	public void setConfidence(int user, int joint, float c){
+		float f[] = confidence.get(user);
+		if (f == null || f.length <= joint){
+			float n[] = new float[Math.max(joint+1, SkeletonFrame.DEFAULT_SLOTS)];
+			Arrays.fill(n, 1);
+			if (f != null)
+				System.arraycopy(f, 0, n, 0, f.length);
+			f = n;
+			confidence.put(user, f);
+		}
+		f[joint] = c;
+	}
+	/**
+	 * Replaces the joints of the user of f with the joints held by f.
+	 * @param f - Frame to copy
+	 */
+	public void set(SkeletonFrame f){
+		getUser(f.getUser()).copy(f);
+	}
+	/**
+	 * Removes a joint of user.
+	 * @param user - Id of user
+	 * @param joint - SimpleOpenNI joint constant
+	 */
+	public void remove(int user, int joint){
+		SkeletonFrame f = users.get(user);
+		if (f != null)
+			f.set(joint, null);
+	}
+	/**
+	 * Removes user and all of its joints.
+	 * @param user - Id of user
+	 */
+	public void removeUser(int user){
+		users.remove(user);
+		confidence.remove(user);
+	}
+	/**
+	 * @param user - Id of user
+	 * @return
+	 * 		Frame holding the joints of user, created if needed
+	 */
+	private SkeletonFrame getUser(int user){
+		SkeletonFrame f = users.get(user);
+		if (f == null){
+			f = new SkeletonFrame();
+			f.clear(user);
+			users.put(user, f);
+		}
+		return f;
+	}
+	/**
+	 * @param millis - Time added by each update
+	 */
+	public void setFrameTime(long millis){
+		step = millis;
+	}
+	@Override
+	public boolean update(){
+		frame++;
+		if (frame > 0)
+			time += step;
+		return true;
+	}
+	@Override
+	public int[] getUsers(){
+		int u[] = new int[users.size()];
+		int i=0;
+		for (Integer id : users.keySet()){
+			u[i++] = id;
+		}
+		return u;
+	}
+	@Override
+	public boolean isTracking(int user){
+		SkeletonFrame f = users.get(user);
+		return f != null && f.isTracked();
+	}
+	@Override
+	public boolean getJoint(int user, int joint, PVector dst){
+		SkeletonFrame f = users.get(user);
+		if (f == null)
+			return false;
+		return f.getJoint(joint, dst);
+	}
+	@Override
+	public float getConfidence(int user, int joint){
+		SkeletonFrame f = users.get(user);
+		if (f == null || !f.has(joint))
+			return 0;
+		float c[] = confidence.get(user);
+		return c == null || joint >= c.length ? 1 : c[joint];
+	}
+	@Override
+	public long getFrame(){
+		return frame;
+	}
+	@Override
+	public long getTimestamp(){
+		return time;
+	}
+}
@@ -0,0 +1,88 @@
+package controller;
+
+import processing.core.PVector;
+
+import SimpleOpenNI.SimpleOpenNI;
+
+/**
+ * {@link SkeletonSource} reading live frames from SimpleOpenNI. Joints are
+ * given in the coordinates selected by
+ * {@link GestureController#toggleProjectionType()}.
+ *
+ * @author Levi Lindsley
+ *
+ */
+public class OpenNISource implements SkeletonSource{
+	/**SimpleOpenNI instance being read*/
+	private SimpleOpenNI context;
+
+	/**Number of the current frame*/
+	private long frame;
+
+	/**Time the current frame was read*/
+	private long time;
+
+	/**Scratch vectors for converting coordinates*/
+	private PVector proj;
+	private PVector real;
+
+	/**
+	 * @param c - SimpleOpenNI instance to read from, depth and user tracking
+	 * must already be enabled
+	 */
+	public OpenNISource(SimpleOpenNI c){
+		context = c;
+		frame = -1;
+		time = 0;
+		proj = new PVector();
+		real = new PVector();
+	}
+	/**
+	 * Waits on the next frame from the camera.
+	 * @return
+	 * 		Always true, a live camera does not run out of frames
+	 */
+	@Override
+	public boolean update(){
+		context.update();
+		frame++;
+		time = System.currentTimeMillis();
+		return true;
+	}
+	@Override
+	public int[] getUsers(){
+		return context.getUsers();
+	}
+	@Override
+	public boolean isTracking(int user){
+		return context.isTrackingSkeleton(user);
+	}
+	@Override
+	public boolean getJoint(int user, int joint, PVector dst){
+		if (!context.isTrackingSkeleton(user))
+			return false;
+		dst.set(GestureController.getCoordinites(context, user, joint, proj, real));
+		return true;
+	}
+	@Override
+	public float getConfidence(int user, int joint){
+		if (!context.isTrackingSkeleton(user))
+			return 0;
+		return context.getJointPositionSkeleton(user, joint, proj);
+	}
+	@Override
+	public long getFrame(){
+		return frame;
+	}
+	@Override
+	public long getTimestamp(){
+		return time;
+	}
+	/**
+	 * @return
+	 * 		SimpleOpenNI instance being read
+	 */
+	public SimpleOpenNI getContext(){
+		return context;
+	}
+}
@@ -1,6 +1,9 @@
 package controller;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Scanner;
 import java.util.Vector;
 
@@ -90,11 +93,25 @@ public class Pair implements Serializable{
 	 * @return String xml representation of this
 	 */
 	public String toXML(){
-		String context = new String();
-		context +="<"+classTag+">"+'\n';
-		context += xmlStatics.createElement("first", First.toString());
-		context += xmlStatics.createElement("second", Second.toString());
-		context +="</"+classTag+">"+'\n';
-		return context;
+		StringWriter w = new StringWriter();
+		try {
+			writeXML(w);
+		} catch (IOException e) {
+			//a StringWriter never throws
+			throw new IllegalStateException(e);
+		}
+		return w.toString();
+	}
+	/**
+	 * Writes the same xml as {@link #toXML()} to w.
+	 * @param w - Writer to write to
+	 * @throws IOException
+	 * 		If w fails
+	 */
+	public void writeXML(Writer w) throws IOException{
+		w.write("<"+classTag+">"+'\n');
+		xmlStatics.writeElement(w, "first", First.toString());
+		xmlStatics.writeElement(w, "second", Second.toString());
+		w.write("</"+classTag+">"+'\n');
 	}
 }
@@ -0,0 +1,384 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import controller.GestureController.CompressionType;
+
+/**
+ * The relations of a single joint pair of a gesture in step order, the path
+ * that following the prev link of the pair walks. The chain of each pair is
+ * compressed on its own as no pair's nodes depend on another pair, the
+ * results are placed into a table of slots shared by every chain and zipped
+ * back into steps by the gesture.
+ * <p>
+ * A slot is the position of a relation in the sequence of the gesture read
+ * step by step, so the chains of a gesture never share a slot and each chain
+ * may write its results without locking. The relations of the chain are only
+ * read, so the gesture they belong to is left as it was.
+ *
+ * @see GestureController#compress(int)
+ * @author Levi Lindsley
+ *
+ */
+class PairChain {
+	/**Joint pair of every relation in the chain*/
+	Pair J;
+
+	/**Slot of each relation*/
+	int slot[] = new int[16];
+
+	/**Step of each relation*/
+	int step[] = new int[16];
+
+	/**Relations in step order*/
+	JointRelation rel[] = new JointRelation[16];
+
+	/**Number of relations held*/
+	int size;
+
+	/**Values of each relation laid out stride at a time, filled by
+	 * {@link #values()} so comparing and averaging never unbox a Euclidean*/
+	private double v[];
+
+	/**Values held by each relation*/
+	private int width[];
+
+	/**Room for the values of each relation, the widest relation*/
+	private int stride;
+
+	/**Epsilon when the values were filled*/
+	private double eps;
+
+	PairChain(Pair J){
+		this.J = J;
+	}
+	/**
+	 * Places jR at the end of the chain.
+	 * @param s - Slot of jR
+	 * @param t - Step of jR
+	 * @param jR - Next relation of the pair
+	 */
+	void add(int s, int t, JointRelation jR){
+		if (size == rel.length){
+			slot = Arrays.copyOf(slot, size*2);
+			step = Arrays.copyOf(step, size*2);
+			rel = Arrays.copyOf(rel, size*2);
+		}
+		slot[size] = s;
+		step[size] = t;
+		rel[size++] = jR;
+	}
+	/**
+	 * Compresses the chain as every type held by out. The nodes are found a
+	 * single time for SIMPLE, AVG and DBL_AVG, and the average of each node
+	 * is found a single time for AVG and DBL_AVG. The relation that stands
+	 * for each node is placed into the slot of the last relation of the node.
+	 * @param out - Slots of the gesture for each type to produce, SIMPLE, AVG
+	 * or DBL_AVG
+	 * @param keep - Steps kept by PIECEWISE, null if it is not produced
+	 * @param max - Greatest deviation allowed by PIECEWISE
+	 */
+	void compress(Map<CompressionType, JointRelation[]> out, boolean keep[], double max){
+		values();
+		if (keep != null)
+			simplify(keep, max);
+		if (out.isEmpty())
+			return;
+
+		int end[] = nodes();
+		JointRelation o[] = out.get(CompressionType.SIMPLE);
+		if (o != null){
+			for (int k=0;k<end.length;k++){
+				//a copy so the relation keeps its prev link
+				o[slot[end[k]]] = rel[end[k]].copy();
+			}
+		}
+		JointRelation avg[] = out.get(CompressionType.AVG);
+		JointRelation dbl[] = out.get(CompressionType.DBL_AVG);
+		if (avg == null && dbl == null)
+			return;
+
+		//average of each node, stride values each
+		double alpha[] = new double[end.length*stride];
+		int w[] = new int[end.length];
+		double sum[] = new double[stride];
+		int count[] = new int[stride/3];
+		for (int k=0;k<end.length;k++){
+			int start = k == 0 ? 0 : end[k-1]+1;
+			clear(sum, count);
+			for (int i=end[k];i>=start;i--){
+				sum(sum, count, i);
+			}
+			average(sum, count, alpha, k*stride);
+			w[k] = width(count);
+			if (avg != null)
+				avg[slot[end[k]]] = relation(alpha, k*stride, w[k], rel[end[k]]);
+		}
+		if (dbl != null)
+			doubleAverage(end, alpha, w, dbl);
+	}
+	/**
+	 * Splits the chain into nodes. Starting at the end of the chain the last
+	 * relation not in a node is the seed of a new node, and the relations
+	 * before it are added while they are within Epsilon of the seed.
+	 * @return
+	 * 		Index of the last relation, the seed, of each node in step order.
+	 * Node k holds the relations after end[k-1] through end[k].
+	 */
+	int[] nodes(){
+		if (v == null)
+			values();
+		int end[] = new int[Math.max(1, size)];
+		int n = 0;
+		int i = size-1;
+		while (i >= 0){
+			end[n++] = i;
+			int j = i-1;
+			while (j >= 0 && about(v, i*stride, width[i], j)){
+				j--;
+			}
+			i = j;
+		}
+		//nodes were found from the end
+		for (int k=0;k<n/2;k++){
+			int t = end[k];
+			end[k] = end[n-1-k];
+			end[n-1-k] = t;
+		}
+		return Arrays.copyOf(end, n);
+	}
+	/**
+	 * Copies the values of every relation into {@link #v}.
+	 */
+	private void values(){
+		eps = Euclidean.getEpsilon();
+		stride = 0;
+		for (int i=0;i<size;i++){
+			stride = Math.max(stride, rel[i].angle.size()*3);
+		}
+		v = new double[size*stride];
+		width = new int[size];
+		for (int i=0;i<size;i++){
+			List<Euclidean> angle = rel[i].angle;
+			int at = i*stride;
+			for (int e=0;e<angle.size();e++){
+				Euclidean a = angle.get(e);
+				v[at++] = a.x;
+				v[at++] = a.y;
+				v[at++] = a.z;
+			}
+			width[i] = angle.size()*3;
+		}
+	}
+	/**
+	 * Same as {@link JointRelation#equalsCoordinates(JointRelation)} with
+	 * the values of the first relation held by a at from.
+	 * @param a - Values of the first relation
+	 * @param from - Position of the first value in a
+	 * @param w - Number of values of the first relation
+	 * @param j - Relation of the chain to compare to
+	 * @return
+	 * 		True if every value is within Epsilon of the value of j
+	 */
+	private boolean about(double a[], int from, int w, int j){
+		int at = j*stride;
+		for (int k=0;k<w;k++){
+			double b = v[at+k];
+			//compared as Euclidean.isAbout compares
+			if (Double.compare(b+eps, a[from+k]) < 0 || Double.compare(b-eps, a[from+k]) > 0)
+				return false;
+		}
+		return true;
+	}
+	/**
+	 * Places the average of each node grown by its neighbours into out. An
+	 * average is used as a new seed, the relations of the nodes on either
+	 * side are added from the edge nearest the node while they are within
+	 * Epsilon of it, and the grown node is averaged again. A relation may be
+	 * part of two grown nodes.
+	 * <p>
+	 * Node k is grown with the average of node size-1-k and the last node is
+	 * not grown, this is how DBL_AVG has always paired the averages with the
+	 * nodes and gestures generated with it depend on it.
+	 * @param alpha - Average of each node
+	 * @param w - Values of each average
+	 */
+	private void doubleAverage(int end[], double alpha[], int w[], JointRelation out[]){
+		double sum[] = new double[stride];
+		int count[] = new int[stride/3];
+		for (int k=0;k<end.length;k++){
+			int start = k == 0 ? 0 : end[k-1]+1;
+			int m = end.length-1-k;
+			int a = m*stride;
+			clear(sum, count);
+			//the following node from its first relation
+			if (k < end.length-1){
+				for (int i=end[k]+1;i<=end[k+1] && about(alpha, a, w[m], i);i++){
+					sum(sum, count, i);
+				}
+			}
+			for (int i=end[k];i>=start;i--){
+				sum(sum, count, i);
+			}
+			//the preceding node from its last relation, the average of the
+			//first node has no previous relation to grow from
+			if (k > 0 && m > 0){
+				int first = k == 1 ? 0 : end[k-2]+1;
+				for (int i=start-1;i>=first && about(alpha, a, w[m], i);i--){
+					sum(sum, count, i);
+				}
+			}
+			average(sum, count, sum, 0);
+			out[slot[end[k]]] = relation(sum, 0, width(count), rel[end[k]]);
+		}
+	}
+	private static void clear(double sum[], int count[]){
+		Arrays.fill(sum, 0);
+		Arrays.fill(count, 0);
+	}
+	/**
+	 * Adds the values of relation i to sum.
+	 */
+	private void sum(double sum[], int count[], int i){
+		int at = i*stride;
+		for (int k=0;k<width[i];k++){
+			sum[k] += v[at+k];
+		}
+		for (int e=0;e<width[i]/3;e++){
+			count[e]++;
+		}
+	}
+	/**
+	 * Places the averages of sum into dst at from, scaled by the inverse as
+	 * Euclidean.average does. dst may be sum.
+	 */
+	private static void average(double sum[], int count[], double dst[], int from){
+		for (int e=0;e<count.length && count[e] > 0;e++){
+			double inv = 1.0/count[e];
+			for (int k=e*3;k<e*3+3;k++){
+				dst[from+k] = sum[k]*inv;
+			}
+		}
+	}
+	/**
+	 * @return
+	 * 		Number of values averaged
+	 */
+	private static int width(int count[]){
+		int e = 0;
+		while (e < count.length && count[e] > 0){
+			e++;
+		}
+		return e*3;
+	}
+	/**
+	 * @return
+	 * 		New relation of the pair of seed holding the w values of avg at from,
+	 * the pair and angle types are copies so nothing is shared with seed
+	 */
+	private static JointRelation relation(double avg[], int from, int w, JointRelation seed){
+		JointRelation a = new JointRelation();
+		a.J = new Pair(seed.J.First, seed.J.Second);
+		a.angleType = new ArrayList<Integer>(seed.angleType);
+		a.angle = new ArrayList<Euclidean>(w/3);
+		for (int k=from;k<from+w;k+=3){
+			a.angle.add(new Euclidean(avg[k], avg[k+1], avg[k+2]));
+		}
+		return a;
+	}
+	/**
+	 * Marks the steps of the relations kept by a Douglas-Peucker
+	 * simplification of the chain, a relation is dropped if it lies within
+	 * max of the line between the kept relations on either side of it at the
+	 * same point along the line. The first and last relations are always kept.
+	 * @param keep - Steps kept, only ever set to true
+	 * @param max - Greatest deviation allowed in any value
+	 */
+	void simplify(boolean keep[], double max){
+		if (size == 0)
+			return;
+		keep[step[0]] = true;
+		keep[step[size-1]] = true;
+
+		//stretches left to check, held as start and end pairs
+		int stack[] = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = size-1;
+		while (top > 0){
+			int b = stack[--top];
+			int a = stack[--top];
+			if (b-a < 2)
+				continue;
+			int w = worst(a, b);
+			if (deviation(a, b, w) <= max)
+				continue;
+			keep[step[w]] = true;
+			if (top+4 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length*2);
+			stack[top++] = a;
+			stack[top++] = w;
+			stack[top++] = w;
+			stack[top++] = b;
+		}
+	}
+	/**
+	 * Checks the stretches between the kept steps of this chain, the worst
+	 * relation of a stretch that strays past max is kept. A step kept for
+	 * another pair adds a point to this chain that may move a line away from
+	 * relations it used to pass near.
+	 * @return
+	 * 		True if a step was added to keep
+	 */
+	boolean repair(boolean keep[], double max){
+		boolean changed = false;
+		int a = -1;
+		for (int j=0;j<size;j++){
+			if (!keep[step[j]])
+				continue;
+			if (a >= 0 && j-a > 1){
+				int w = worst(a, j);
+				if (deviation(a, j, w) > max){
+					keep[step[w]] = true;
+					changed = true;
+				}
+			}
+			a = j;
+		}
+		return changed;
+	}
+	/**
+	 * @return
+	 * 		Relation between a and b that lies furthest from the line between them
+	 */
+	private int worst(int a, int b){
+		int w = a+1;
+		double d = -1;
+		for (int i=a+1;i<b;i++){
+			double e = deviation(a, b, i);
+			if (e > d){
+				d = e;
+				w = i;
+			}
+		}
+		return w;
+	}
+	/**
+	 * @return
+	 * 		Greatest difference in any value between relation i and the line
+	 * from relation a to relation b at the same fraction of the way along
+	 */
+	private double deviation(int a, int b, int i){
+		double t = (double)(i-a)/(b-a);
+		double d = 0;
+		int va = a*stride, vb = b*stride, vi = i*stride;
+		for (int k=0;k<width[i];k++){
+			double line = v[va+k]+(v[vb+k]-v[va+k])*t;
+			d = Math.max(d, Math.abs(v[vi+k]-line));
+		}
+		return d;
+	}
+}
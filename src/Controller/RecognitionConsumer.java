@@ -0,0 +1,52 @@
+package controller;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Runs a {@link GestureEngine} over every frame of a {@link FrameRing} on its
+ * own thread so recognition keeps up with the camera no matter how long the
+ * render loop takes. Completions are queued for other threads to collect
+ * with {@link #poll()}.
+ * <p>
+ * The engine may be changed from other threads while this runs, the engine
+ * is locked while a frame is processed.
+ *
+ * @author Levi Lindsley
+ *
+ */
+public class RecognitionConsumer extends FrameConsumer{
+	/**Engine frames are processed by, its functions are synchronized*/
+	private GestureEngine engine;
+
+	/**Completions waiting to be collected*/
+	private Queue<GestureEvent> events;
+
+	/**
+	 * @param r - Ring to read frames from
+	 * @param e - Engine to process frames with
+	 */
+	public RecognitionConsumer(FrameRing r, GestureEngine e){
+		super(r);
+		engine = e;
+		events = new ConcurrentLinkedQueue<GestureEvent>();
+	}
+	@Override
+	protected void accept(SkeletonFrame f){
+		events.addAll(engine.processEvents(f));
+	}
+	/**
+	 * @return
+	 * 		Oldest completion not yet collected, null if there is none
+	 */
+	public GestureEvent poll(){
+		return events.poll();
+	}
+	/**
+	 * @return
+	 * 		Engine frames are processed by
+	 */
+	public GestureEngine getEngine(){
+		return engine;
+	}
+}
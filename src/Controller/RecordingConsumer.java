@@ -0,0 +1,60 @@
+package controller;
+
+/**
+ * Records the frames of a single user from a {@link FrameRing} into a
+ * {@link JointRecorder} on its own thread. Frames are only recorded while
+ * recording is enabled, see {@link #setRecording(boolean)}.
+ *
+ * @author Levi Lindsley
+ *
+ */
+public class RecordingConsumer extends FrameConsumer{
+	/**Recorder frames are added to*/
+	private JointRecorder recorder;
+
+	/**User being recorded, -1 records every user*/
+	private volatile int user;
+
+	/**Set while frames should be recorded*/
+	private volatile boolean recording;
+
+	/**
+	 * @param r - Ring to read frames from
+	 * @param j - Recorder to add frames to
+	 */
+	public RecordingConsumer(FrameRing r, JointRecorder j){
+		super(r);
+		recorder = j;
+		user = -1;
+		recording = false;
+	}
+	@Override
+	protected void accept(SkeletonFrame f){
+		if (!recording || (user >= 0 && f.getUser() != user))
+			return;
+		synchronized (recorder){
+			recorder.record(f);
+		}
+	}
+	/**
+	 * Enables or disables recording. The recorder is locked while a frame is
+	 * added so other threads should synchronize on it while recording.
+	 * @param r - True to record frames
+	 */
+	public void setRecording(boolean r){
+		recording = r;
+	}
+	/**
+	 * @return
+	 * 		True if frames are being recorded
+	 */
+	public boolean isRecording(){
+		return recording;
+	}
+	/**
+	 * @param u - User to record, -1 to record every user
+	 */
+	public void setUser(int u){
+		user = u;
+	}
+}
@@ -0,0 +1,94 @@
+package controller;
+
+import processing.core.PVector;
+
+/**
+ * {@link SkeletonSource} playing back a {@link JointRecorder} as fast as it
+ * is read, one tick per frame. The recording holds a single user with id
+ * {@link SkeletonFrame#RECORDING_USER}. The frame number is the tick and the
+ * timestamp is the tick converted with the frame rate of the recording.
+ *
+ * @author Levi Lindsley
+ *
+ */
+public class RecordingSource implements SkeletonSource{
+	/**Frame rate used to convert ticks into time, the rate of a Kinect*/
+	public static final int DEFAULT_FRAME_RATE = 30;
+
+	/**Recording being played*/
+	private JointRecorder recording;
+
+	/**Tick being viewed, -1 before the first update*/
+	private int tick;
+
+	/**Ticks per second of recording*/
+	private int frameRate;
+
+	/**Users of every frame*/
+	private static final int USERS[] = {SkeletonFrame.RECORDING_USER};
+
+	/**
+	 * @param r - Recording to play
+	 */
+	public RecordingSource(JointRecorder r){
+		recording = r;
+		tick = -1;
+		frameRate = r.getFrameRate();
+	}
+	/**
+	 * @param rate - Ticks per second the recording was taken at
+	 */
+	public void setFrameRate(int rate){
+		if (rate <= 0)
+			throw new IllegalArgumentException("rate must be positive: "+rate);
+		frameRate = rate;
+	}
+	/**
+	 * Restarts play back, the next update shows tick 0.
+	 */
+	public void rewind(){
+		tick = -1;
+	}
+	@Override
+	public boolean update(){
+		if (tick+1 >= recording.getTicks())
+			return false;
+		tick++;
+		return true;
+	}
+	@Override
+	public int[] getUsers(){
+		return USERS.clone();
+	}
+	@Override
+	public boolean isTracking(int user){
+		return user == SkeletonFrame.RECORDING_USER && tick >= 0 && tick < recording.getTicks();
+	}
+	@Override
+	public boolean getJoint(int user, int joint, PVector dst){
+		if (!isTracking(user))
+			return false;
+		return recording.getJoint(tick, joint, dst);
+	}
+	@Override
+	public float getConfidence(int user, int joint){
+		if (!isTracking(user) || !recording.getJoint(tick, joint, new PVector()))
+			return 0;
+		return 1;
+	}
+	@Override
+	public long getFrame(){
+		return tick;
+	}
+	@Override
+	public long getTimestamp(){
+		return tick < 0 ? 0 : (tick*1000L)/frameRate;
+	}
+	/**
+	 * @return
+	 * 		Recording being played
+	 */
+	public JointRecorder getRecording(){
+		return recording;
+	}
+}
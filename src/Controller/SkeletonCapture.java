@@ -0,0 +1,124 @@
+package controller;
+
+import SimpleOpenNI.SimpleOpenNI;
+
+/**
+ * The producer for a {@link FrameRing}. Runs a {@link SkeletonSource} on its
+ * own thread, waiting on each new frame and publishing a snapshot of every
+ * tracked user into the ring. Capturing stops when the source runs out of
+ * frames.
+ * <p>
+ * While the capture is running it is the only thread that should touch the
+ * source, SimpleOpenNI is not safe to use from more than one thread so other
+ * threads should read frames from the ring rather than the context.
+ *
+ * @see FrameConsumer
+ * @author Levi Lindsley
+ *
+ */
+public class SkeletonCapture implements Runnable{
+	/**Source frames are read from*/
+	private SkeletonSource source;
+
+	/**Ring frames are published to*/
+	private FrameRing ring;
+
+	/**Joints captured for each user*/
+	private volatile int joints[];
+
+	/**Number of camera frames read*/
+	private volatile long frames;
+
+	/**Thread running this, null if not started*/
+	private Thread thread;
+
+	/**Cleared to stop the thread*/
+	private volatile boolean running;
+
+	/**
+	 * @param c - SimpleOpenNI instance to read from
+	 * @param r - Ring to publish to
+	 * @param j - Joints to capture for each user
+	 */
+	public SkeletonCapture(SimpleOpenNI c, FrameRing r, int j[]){
+		this(new OpenNISource(c), r, j);
+	}
+	/**
+	 * @param s - Source to read from
+	 * @param r - Ring to publish to
+	 * @param j - Joints to capture for each user
+	 */
+	public SkeletonCapture(SkeletonSource s, FrameRing r, int j[]){
+		source = s;
+		ring = r;
+		joints = j.clone();
+		frames = 0;
+		running = false;
+	}
+	/**
+	 * Changes the joints captured, takes effect on the next camera frame.
+	 * @param j - Joints to capture for each user
+	 */
+	public void setJoints(int j[]){
+		joints = j.clone();
+	}
+	/**
+	 * Starts a daemon thread capturing frames.
+	 */
+	public synchronized void start(){
+		if (thread != null)
+			return;
+		running = true;
+		thread = new Thread(this, "SkeletonCapture");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	/**
+	 * Stops capturing after the current camera frame and waits for the
+	 * thread to finish.
+	 */
+	public synchronized void stop(){
+		if (thread == null)
+			return;
+		running = false;
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+	@Override
+	public void run(){
+		while (running){
+			//blocks until the camera has a new frame
+			if (!source.update()){
+				running = false;
+				break;
+			}
+			int j[] = joints;
+			int users[] = source.getUsers();
+			for (int i=0;i<users.length;i++){
+				SkeletonFrame s = ring.claim();
+				if (!s.capture(source, users[i], j))
+					continue; //not tracked, the slot is reused for the next user
+				ring.publish();
+			}
+			frames++;
+		}
+	}
+	/**
+	 * @return
+	 * 		True if frames are being captured
+	 */
+	public boolean isRunning(){
+		return running;
+	}
+	/**
+	 * @return
+	 * 		Number of camera frames read
+	 */
+	public long getFrames(){
+		return frames;
+	}
+}
@@ -0,0 +1,302 @@
+package controller;
+
+import java.util.Arrays;
+
+import processing.core.PVector;
+
+import SimpleOpenNI.SimpleOpenNI;
+
+/**
+ * A snapshot of the joint positions of a single user taken at one point in
+ * time. The snapshot is filled once per frame and then handed to every gesture
+ * that needs to be checked so the joints are only fetched from the source a
+ * single time no matter how many gestures read them.
+ * <p>
+ * Coordinates are stored in a flat float array indexed by the SimpleOpenNI
+ * joint constant so reading a joint does not require a lookup or any boxing.
+ * A frame may be reused from frame to frame by calling one of the capture
+ * functions again.
+ *
+ * @see GestureEngine
+ * @author Levi Lindsley
+ *
+ */
+public class SkeletonFrame {
+	/**
+	 * Number of joint slots allocated by default, OpenNI numbers the skeletal
+	 * joints 1 through 24 so this covers all of them. Larger joint values
+	 * will grow the frame as they are set.
+	 */
+	static final int DEFAULT_SLOTS = 25;
+
+	/**
+	 * User id given to frames captured from a {@link JointRecorder}, OpenNI
+	 * starts numbering users at 1 so this never collides with a live user.
+	 */
+	public static final int RECORDING_USER = 0;
+
+	/**User id the snapshot was taken for*/
+	private int user;
+
+	/**Determines if the user had a tracked skeleton when the snapshot was taken*/
+	private boolean tracked;
+
+	/**Number of the frame the snapshot was taken at, tick for recordings*/
+	private long frame;
+
+	/**System.nanoTime() when the snapshot was captured, 0 if it never was*/
+	private long captured;
+
+	/**Joint coordinates, joint j is stored at [3j, 3j+1, 3j+2]*/
+	private float coords[];
+
+	/**Marks which joint slots hold valid data*/
+	private boolean present[];
+
+	/**
+	 * Default constructor, creates an empty untracked frame with room for
+	 * all the SimpleOpenNI joints.
+	 */
+	public SkeletonFrame(){
+		coords = new float[DEFAULT_SLOTS*3];
+		present = new boolean[DEFAULT_SLOTS];
+		user = -1;
+		tracked = false;
+		frame = -1;
+	}
+	/**
+	 * Removes all joint data and marks the frame as not tracked.
+	 * @param u - User the frame now represents
+	 */
+	public void clear(int u){
+		Arrays.fill(present, false);
+		user = u;
+		tracked = false;
+	}
+	/**
+	 * Fills this with the joints listed in joints for user as retrieved from
+	 * context. The tracking check is done once for the whole frame rather than
+	 * once per joint. SimpleOpenNI does not number its frames so the frame
+	 * number is one past the frame number this held before.
+	 *
+	 * @param context - SimpleOpenNI instance to retrieve joints from
+	 * @param u - User to retrieve joints for
+	 * @param joints - Joints to retrieve
+	 * @return
+	 * 		True if the user is tracked and the frame was filled.
+	 * <p> False if the user is not tracked, the frame is left empty.
+	 */
+	public boolean capture(SimpleOpenNI context, int u, int joints[]){
+		clear(u);
+		frame++;
+		captured = System.nanoTime();
+		if (!context.isTrackingSkeleton(u))
+			return false;
+
+		tracked = true;
+		PVector proj = new PVector();
+		PVector real = new PVector();
+		for (int i=0;i<joints.length;i++){
+			set(joints[i], GestureController.getCoordinites(context, u, joints[i], proj, real));
+		}
+		return true;
+	}
+	/**
+	 * Fills this with the joints listed in joints for user as given by source.
+	 * The frame number is taken from source.
+	 *
+	 * @param source - Source to retrieve joints from
+	 * @param u - User to retrieve joints for
+	 * @param joints - Joints to retrieve
+	 * @return
+	 * 		True if the user is tracked and the frame was filled.
+	 * <p> False if the user is not tracked, the frame is left empty.
+	 */
+	public boolean capture(SkeletonSource source, int u, int joints[]){
+		clear(u);
+		frame = source.getFrame();
+		captured = System.nanoTime();
+		if (!source.isTracking(u))
+			return false;
+
+		tracked = true;
+		PVector p = new PVector();
+		for (int i=0;i<joints.length;i++){
+			if (source.getJoint(u, joints[i], p))
+				set(joints[i], p);
+		}
+		return true;
+	}
+	/**
+	 * Fills this with the joints listed in joints as they were recorded at
+	 * tick in context. Joints that context did not record are left empty.
+	 * The frame number is set to tick.
+	 *
+	 * @param context - JointRecorder to retrieve joints from
+	 * @param tick - Tick of context to view
+	 * @param joints - Joints to retrieve
+	 * @return
+	 * 		True if tick is a recorded tick.
+	 * <p> False otherwise, the frame is left empty.
+	 */
+	public boolean capture(JointRecorder context, int tick, int joints[]){
+		clear(RECORDING_USER);
+		frame = tick;
+		captured = System.nanoTime();
+		if (tick < 0 || tick >= context.getTicks())
+			return false;
+
+		tracked = true;
+		PVector p = new PVector();
+		for (int i=0;i<joints.length;i++){
+			if (context.getJoint(tick, joints[i], p))
+				set(joints[i], p);
+		}
+		return true;
+	}
+	/**
+	 * Makes this a copy of src without allocating unless src holds more joint
+	 * slots than this. The copy is safe to take while src is being written by
+	 * another thread, the result is then garbage but no exception is thrown,
+	 * see {@link FrameRing} for how such copies are detected.
+	 * @param src - Frame to copy
+	 */
+	public void copy(SkeletonFrame src){
+		float c[] = src.coords;
+		boolean p[] = src.present;
+		if (present.length < p.length){
+			present = new boolean[p.length];
+			coords = new float[p.length*3];
+		}
+		int n = Math.min(p.length, c.length/3);
+		System.arraycopy(p, 0, present, 0, n);
+		System.arraycopy(c, 0, coords, 0, n*3);
+		Arrays.fill(present, n, present.length, false);
+		user = src.user;
+		tracked = src.tracked;
+		frame = src.frame;
+		captured = src.captured;
+	}
+	/**
+	 * Sets the coordinates of joint to the value of v, if v is null the
+	 * joint is marked as missing.
+	 * @param joint - SimpleOpenNI joint constant
+	 * @param v - Position of the joint
+	 */
+	public void set(int joint, PVector v){
+		if (v == null){
+			if (joint < present.length)
+				present[joint] = false;
+			return;
+		}
+		set(joint, v.x, v.y, v.z);
+	}
+	/**
+	 * Sets the coordinates of joint to (x, y, z) and marks the frame as tracked.
+	 * @param joint - SimpleOpenNI joint constant
+	 * @param x - x coordinate
+	 * @param y - y coordinate
+	 * @param z - z coordinate
+	 */
+	public void set(int joint, float x, float y, float z){
+		if (joint >= present.length){
+			present = Arrays.copyOf(present, joint+1);
+			coords = Arrays.copyOf(coords, (joint+1)*3);
+		}
+		coords[joint*3] = x;
+		coords[joint*3+1] = y;
+		coords[joint*3+2] = z;
+		present[joint] = true;
+		tracked = true;
+	}
+	/**
+	 * @param joint - SimpleOpenNI joint constant
+	 * @return
+	 * 		True if this holds a position for joint
+	 */
+	public boolean has(int joint){
+		return joint >= 0 && joint < present.length && present[joint];
+	}
+	/**
+	 * @param joint - SimpleOpenNI joint constant
+	 * @return
+	 * 		New PVector holding the position of joint
+	 * <p> null if joint is not present
+	 */
+	public PVector getJoint(int joint){
+		if (!has(joint))
+			return null;
+		return new PVector(coords[joint*3], coords[joint*3+1], coords[joint*3+2]);
+	}
+	/**
+	 * Places the position of joint into dst without creating a new PVector.
+	 * @param joint - SimpleOpenNI joint constant
+	 * @param dst - PVector to place the position into
+	 * @return
+	 * 		True if the joint was present and dst was set.
+	 * <p> False otherwise, dst is unchanged.
+	 */
+	public boolean getJoint(int joint, PVector dst){
+		if (!has(joint))
+			return false;
+		dst.set(coords[joint*3], coords[joint*3+1], coords[joint*3+2]);
+		return true;
+	}
+	/**@return x coordinate of joint, undefined if joint is not present*/
+	public float x(int joint){
+		return coords[joint*3];
+	}
+	/**@return y coordinate of joint, undefined if joint is not present*/
+	public float y(int joint){
+		return coords[joint*3+1];
+	}
+	/**@return z coordinate of joint, undefined if joint is not present*/
+	public float z(int joint){
+		return coords[joint*3+2];
+	}
+	/**@return User id this frame represents*/
+	public int getUser(){
+		return user;
+	}
+	/**
+	 * @return
+	 * 		Number of the frame the snapshot was taken at, -1 if it was never set
+	 */
+	public long getFrame(){
+		return frame;
+	}
+	/**
+	 * Sets the number of the frame the snapshot was taken at, frame numbers
+	 * are expected to increase from one capture of a user to the next.
+	 * @param f - Frame number
+	 */
+	public void setFrame(long f){
+		frame = f;
+	}
+	/**
+	 * @return
+	 * 		System.nanoTime() when the snapshot was last captured, 0 if it never
+	 * was. Used to measure how long a completion took to detect.
+	 */
+	public long getCaptured(){
+		return captured;
+	}
+	/**
+	 * @return
+	 * 		True if the user was tracked when the frame was captured
+	 */
+	public boolean isTracked(){
+		return tracked;
+	}
+	@Override
+	public String toString(){
+		String ret = new String();
+		ret += "Frame: "+frame+" User: "+user+(tracked ? " tracked" : " not tracked")+" {";
+		for (int j=0;j<present.length;j++){
+			if (present[j])
+				ret += j+"=<"+x(j)+", "+y(j)+", "+z(j)+"> ";
+		}
+		ret += "}";
+		return ret;
+	}
+}
@@ -0,0 +1,75 @@
+package controller;
+
+import processing.core.PVector;
+
+/**
+ * Anything that can supply skeleton frames: a live camera, a recording played
+ * back, a synthetic generator or frames built in memory. Recognition and
+ * recording only need the functions here so they may run without a Kinect,
+ * faster than real time, or on a machine with no SimpleOpenNI at all.
+ * <p>
+ * A source holds one frame at a time, {@link #update()} moves to the next
+ * frame and every other function describes the current frame.
+ *
+ * @see OpenNISource
+ * @see RecordingSource
+ * @see MemorySource
+ * @author Levi Lindsley
+ *
+ */
+public interface SkeletonSource {
+	/**
+	 * Moves to the next frame, waiting on it if the source is live.
+	 * @return
+	 * 		True if there is a new frame.
+	 * <p> False if the source has no more frames.
+	 */
+	public boolean update();
+
+	/**
+	 * @return
+	 * 		Ids of the users present in the current frame
+	 */
+	public int[] getUsers();
+
+	/**
+	 * @param user - Id of user
+	 * @return
+	 * 		True if the skeleton of user is tracked in the current frame
+	 */
+	public boolean isTracking(int user);
+
+	/**
+	 * Places the position of joint of user into dst, the coordinates are the
+	 * same kind returned by {@link GestureController#getRealCoordinites}.
+	 * @param user - Id of user
+	 * @param joint - SimpleOpenNI joint constant
+	 * @param dst - Vector to place the position into
+	 * @return
+	 * 		True if the joint is known, dst is unchanged otherwise
+	 */
+	public boolean getJoint(int user, int joint, PVector dst);
+
+	/**
+	 * @param user - Id of user
+	 * @param joint - SimpleOpenNI joint constant
+	 * @return
+	 * 		Confidence in the position of joint from 0 to 1, 0 if the joint is
+	 * not known
+	 */
+	public float getConfidence(int user, int joint);
+
+	/**
+	 * @return
+	 * 		Number of the current frame, numbers increase from frame to frame.
+	 * -1 before the first call to update
+	 */
+	public long getFrame();
+
+	/**
+	 * @return
+	 * 		Time the current frame was taken in milliseconds, recorded sources
+	 * give the time since the start of the recording
+	 */
+	public long getTimestamp();
+}
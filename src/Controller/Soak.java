@@ -0,0 +1,180 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import processing.core.PVector;
+
+/**
+ * Soak test of a {@link GestureEngine} fed by a {@link SyntheticSource}. A
+ * library of gestures is built from the synthetic motions, then every user
+ * moves and now and then plays a gesture of the library while the engine
+ * checks each frame. Throughput, the time taken per frame, the number of
+ * gestures recognized and the heap are printed when done.
+ * <p>
+ * Arguments, all optional: users gestures seconds fps threads
+ * <p> Defaults to 20 users, 1000 gestures, 60 seconds of frames at 30 fps
+ * and one thread per processor. Frames are generated as fast as the engine
+ * takes them, seconds is of simulated time.
+ *
+ * @author Levi Lindsley
+ *
+ */
+class Soak {
+	/**Chance each frame that a user who is not playing a gesture starts one*/
+	static final double PLAY = .02;
+
+	/**Seconds between heap samples*/
+	static final int SAMPLE = 10;
+
+	int users;
+	int gestures;
+	int seconds;
+	int fps;
+	int threads;
+
+	Soak(String args[]){
+		users = arg(args, 0, 20);
+		gestures = arg(args, 1, 1000);
+		seconds = arg(args, 2, 60);
+		fps = arg(args, 3, RecordingSource.DEFAULT_FRAME_RATE);
+		threads = arg(args, 4, Runtime.getRuntime().availableProcessors());
+	}
+	/**
+	 * @return
+	 * 		args[i] as an int, def if it is not given
+	 */
+	static int arg(String args[], int i, int def){
+		return i < args.length ? Integer.parseInt(args[i]) : def;
+	}
+	void run(){
+		Random random = new Random(1);
+		SyntheticSource source = new SyntheticSource(users, 2);
+		source.setFrameRate(fps);
+		source.setDropout(.001, .005);
+
+		long start = System.nanoTime();
+		List<GestureController> library = library(gestures, random);
+		System.out.println("Built "+library.size()+" gestures in "+ms(System.nanoTime()-start)+" ms");
+
+		GestureEngine engine = new GestureEngine();
+		engine.addAll(library);
+		engine.setParallelism(threads);
+
+		int frames = seconds*fps;
+		long took[] = new long[frames];
+		long heap[] = new long[frames/(SAMPLE*fps)+2];
+		int samples = 0;
+		heap[samples++] = usedHeap();
+		long recognized = 0;
+		int ids[] = source.getUsers();
+
+		long began = System.nanoTime();
+		for (int f=0;f<frames;f++){
+			for (int u : ids){
+				if (!source.isPlaying(u) && random.nextDouble() < PLAY)
+					source.play(u, library.get(random.nextInt(library.size())));
+			}
+			long t = System.nanoTime();
+			source.update();
+			recognized += engine.processEvents(source).size();
+			took[f] = System.nanoTime()-t;
+
+			if ((f+1)%(SAMPLE*fps) == 0){
+				//the collection is not counted in the time of any frame
+				began += heap(heap, samples++);
+			}
+		}
+		long elapsed = System.nanoTime()-began;
+		heap[samples++] = usedHeap();
+		engine.shutdown();
+
+		Arrays.sort(took);
+		System.out.println("users: "+users+" gestures: "+library.size()+" frames: "+frames+" threads: "+threads);
+		System.out.println("frames/s: "+(int)(frames/(elapsed/1e9))+" user frames/s: "+(int)((long)frames*users/(elapsed/1e9)));
+		System.out.println("frame us p50: "+us(took[frames/2])+" p99: "+us(took[(int)(frames*.99)])+" max: "+us(took[frames-1]));
+		System.out.println("played: "+source.getPlayed()+" recognized: "+recognized);
+		String s = "heap MB:";
+		for (int i=0;i<samples;i++){
+			s += " "+(heap[i]>>20);
+		}
+		System.out.println(s);
+		double minutes = seconds/60.0;
+		System.out.println("heap growth KB/min: "+(int)(((heap[samples-1]-heap[0])>>10)/minutes));
+	}
+	/**
+	 * Places a heap sample into heap[i].
+	 * @return
+	 * 		Nanoseconds taken
+	 */
+	static long heap(long heap[], int i){
+		long t = System.nanoTime();
+		heap[i] = usedHeap();
+		return System.nanoTime()-t;
+	}
+	/**
+	 * @return
+	 * 		Bytes of heap in use after a collection
+	 */
+	static long usedHeap(){
+		Runtime r = Runtime.getRuntime();
+		System.gc();
+		return r.totalMemory()-r.freeMemory();
+	}
+	static long ms(long nanos){
+		return nanos/1000000;
+	}
+	static long us(long nanos){
+		return nanos/1000;
+	}
+	/**
+	 * Builds n gestures by sampling arm joints of the synthetic motions, a
+	 * gesture takes 3 to 6 samples of one or two joint pairs a few frames apart.
+	 */
+	List<GestureController> library(int n, Random random){
+		SyntheticSource gen = new SyntheticSource(0, 3);
+		gen.setFrameRate(fps);
+		SyntheticSource.Motion motions[] = SyntheticSource.Motion.values();
+		for (SyntheticSource.Motion m : motions){
+			gen.addUser(m);
+		}
+		SyntheticSource.Part pairs[][] = {
+			{SyntheticSource.Part.RIGHT_SHOULDER, SyntheticSource.Part.RIGHT_HAND},
+			{SyntheticSource.Part.RIGHT_ELBOW, SyntheticSource.Part.RIGHT_HAND},
+			{SyntheticSource.Part.LEFT_SHOULDER, SyntheticSource.Part.LEFT_HAND},
+			{SyntheticSource.Part.LEFT_ELBOW, SyntheticSource.Part.LEFT_HAND},
+			{SyntheticSource.Part.NECK, SyntheticSource.Part.RIGHT_HAND},
+			{SyntheticSource.Part.TORSO, SyntheticSource.Part.LEFT_HAND}
+		};
+
+		List<GestureController> library = new Vector<GestureController>();
+		PVector a = new PVector(), b = new PVector();
+		for (int i=0;i<n;i++){
+			GestureController g = new GestureController("soak-"+i);
+			int user = 1+random.nextInt(motions.length);
+			int p0 = random.nextInt(pairs.length);
+			int p1 = random.nextBoolean() ? -1 : (p0+1+random.nextInt(pairs.length-1))%pairs.length;
+			int samples = 3+random.nextInt(4);
+			int gap = 2+random.nextInt(4);
+			for (int s=0;s<samples;s++){
+				for (int k=0;k<gap;k++){
+					gen.update();
+				}
+				for (int p : new int[]{p0, p1}){
+					if (p < 0)
+						continue;
+					int j1 = gen.getJoint(pairs[p][0]), j2 = gen.getJoint(pairs[p][1]);
+					if (gen.getJoint(user, j1, a) && gen.getJoint(user, j2, b))
+						g.addPoint(new Pair(j1, j2), new Euclidean(a.x, a.y, a.z), new Euclidean(b.x, b.y, b.z));
+				}
+			}
+			library.add(g);
+		}
+		return library;
+	}
+	public static void main(String args[]){
+		new Soak(args).run();
+	}
+}
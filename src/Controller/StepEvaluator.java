@@ -0,0 +1,29 @@
+package controller;
+
+/**
+ * Something that can decide whether a frame matches, holds or fails a step of
+ * a gesture. {@link CompiledGesture} evaluates its own steps, a
+ * {@link GestureTrie} evaluates the steps of many gestures sharing the result
+ * of any step they have in common.
+ *
+ * @author Levi Lindsley
+ *
+ */
+interface StepEvaluator {
+	/**
+	 * @return
+	 * 		Number of steps of the gesture
+	 */
+	public int steps();
+	/**
+	 * Checks step against frame.
+	 *
+	 * @param frame - Snapshot of the user
+	 * @param step - Step to check
+	 * @param buf - Scratch space of at least {@link CompiledGesture#bufferSize()} values
+	 * @return
+	 * 		{@link CompiledGesture#MATCH}, {@link CompiledGesture#HOLD} or
+	 * {@link CompiledGesture#FAIL}
+	 */
+	public int evaluate(SkeletonFrame frame, int step, double buf[]);
+}
@@ -0,0 +1,667 @@
+package controller;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.TreeMap;
+
+import processing.core.PVector;
+
+/**
+ * {@link SkeletonSource} that generates the skeletons of any number of
+ * simulated users, used to put load on recognition without anyone standing
+ * in front of a Kinect. Each user follows a parametric {@link Motion} at its
+ * own speed and phase, joints are shaken by gaussian noise and both whole
+ * users and single joints drop out the way a real tracker loses them.
+ * <p>
+ * A user may also be told to {@link #play(int, GestureController)} a gesture,
+ * the joints of each step are then placed so the relations of the step hit
+ * their targets exactly and the gesture completes on purpose. Joints placed
+ * by a gesture are neither noised nor dropped, the joints they are placed
+ * against still are.
+ * <p>
+ * Joint ids are taken from {@link Skeleton}, which needs the SimpleOpenNI
+ * library to be loaded. On a machine without it the ids OpenNI gives the
+ * joints are used instead, any id may also be set with
+ * {@link #setJoint(Part, int)}.
+ *
+ * @author Levi Lindsley
+ *
+ */
+public class SyntheticSource implements SkeletonSource{
+	/**Movement a simulated user makes when not playing a gesture*/
+	public enum Motion{
+		/**Right forearm swings side to side above the elbow*/
+		WAVE,
+		/**Right hand circles flat in front of the body as if stirring a pot*/
+		STIR,
+		/**Both arms held out to the side and swung in circles*/
+		CIRCLE,
+		/**Standing still with a slow sway*/
+		IDLE
+	}
+	/**Joints of the simulated body*/
+	public enum Part{
+		HEAD, NECK, TORSO,
+		LEFT_SHOULDER, LEFT_ELBOW, LEFT_HAND,
+		RIGHT_SHOULDER, RIGHT_ELBOW, RIGHT_HAND,
+		LEFT_HIP, LEFT_KNEE, LEFT_FOOT,
+		RIGHT_HIP, RIGHT_KNEE, RIGHT_FOOT
+	}
+	/**Position of each Part at rest in mm from the torso, in Part order*/
+	private static final float REST[][] = {
+		{0, 450, 0}, {0, 300, 0}, {0, 0, 0},
+		{-170, 280, 0}, {-200, 20, 0}, {-210, -230, -30},
+		{170, 280, 0}, {200, 20, 0}, {210, -230, -30},
+		{-100, -220, 0}, {-105, -650, 0}, {-110, -1050, -60},
+		{100, -220, 0}, {105, -650, 0}, {110, -1050, -60}
+	};
+
+	/**OpenNI joint id of each Part in Part order, used when Skeleton can not
+	 * be loaded*/
+	private static final int OPENNI[] = {
+		1, 2, 3,
+		6, 7, 9,
+		12, 13, 15,
+		17, 18, 20,
+		21, 22, 24
+	};
+
+	/**Joint id of each Part, -1 until taken from Skeleton*/
+	private int ids[];
+
+	/**Simulated users keyed by user id*/
+	private TreeMap<Integer, User> users;
+
+	/**Source of all randomness so a run can be repeated with the same seed*/
+	private Random random;
+
+	/**Frames generated per second*/
+	private int frameRate;
+
+	/**Number of the current frame*/
+	private long frame;
+
+	/**If set update() sleeps so frames come at frameRate in real time*/
+	private boolean realTime;
+
+	/**Value of System.nanoTime() at the first frame when running in real time*/
+	private long began;
+
+	/**Standard deviation of the noise added to every joint in mm*/
+	private double noise;
+
+	/**Chance each frame that a tracked user is lost*/
+	private double trackingLoss;
+
+	/**Chance each frame that a single joint is missing*/
+	private double jointLoss;
+
+	/**Number of frames each step of a played gesture is held for*/
+	private int stepFrames;
+
+	/**Number of gestures whose last step has been generated*/
+	private long played;
+
+	/**
+	 * Creates a source of simulated users each making a random motion.
+	 * Frames are generated as fast as they are asked for, at
+	 * {@link RecordingSource#DEFAULT_FRAME_RATE} frames per second of
+	 * simulated time.
+	 * @param users - Number of users, given ids 1 to users
+	 * @param seed - Seed of the random generator
+	 */
+	public SyntheticSource(int users, long seed){
+		this.users = new TreeMap<Integer, User>();
+		random = new Random(seed);
+		ids = new int[Part.values().length];
+		Arrays.fill(ids, -1);
+		frameRate = RecordingSource.DEFAULT_FRAME_RATE;
+		frame = -1;
+		noise = 3;
+		trackingLoss = 0;
+		jointLoss = 0;
+		stepFrames = 1;
+		Motion m[] = Motion.values();
+		for (int i=0;i<users;i++){
+			addUser(m[random.nextInt(m.length)]);
+		}
+	}
+	/**
+	 * Adds a user standing beside the users already present.
+	 * @param m - Motion of the user
+	 * @return
+	 * 		Id of the new user
+	 */
+	public int addUser(Motion m){
+		int id = users.isEmpty() ? 1 : users.lastKey()+1;
+		users.put(id, new User(id, m));
+		return id;
+	}
+	/**
+	 * @param user - Id of user
+	 * @return
+	 * 		True if user was present and removed
+	 */
+	public boolean removeUser(int user){
+		return users.remove(user) != null;
+	}
+	/**
+	 * @param user - Id of user
+	 * @param m - Motion user makes when not playing a gesture
+	 */
+	public void setMotion(int user, Motion m){
+		getUser(user).motion = m;
+	}
+	/**
+	 * Queues g to be played by user, the gesture starts once every gesture
+	 * queued before it has been played.
+	 * <p>
+	 * Each step is placed by solving the CROSS_PRODUCT of its relations in
+	 * order, a joint already placed by an earlier relation of the step is
+	 * kept so a step whose relations disagree on a joint is only approached.
+	 * @param user - Id of user
+	 * @param g - Gesture to complete
+	 */
+	public void play(int user, GestureController g){
+		getUser(user).queue.add(g.compiled());
+	}
+	/**
+	 * @param user - Id of user
+	 * @return
+	 * 		True if user is playing or has queued a gesture
+	 */
+	public boolean isPlaying(int user){
+		User u = getUser(user);
+		return u.playing != null || !u.queue.isEmpty();
+	}
+	/**
+	 * @return
+	 * 		Number of gestures played to the end by all users
+	 */
+	public long getPlayed(){
+		return played;
+	}
+	/**
+	 * @param fps - Frames generated per second
+	 */
+	public void setFrameRate(int fps){
+		if (fps < 1)
+			throw new IllegalArgumentException("frame rate must be positive: "+fps);
+		frameRate = fps;
+		began = 0;
+	}
+	/**
+	 * @return
+	 * 		Frames generated per second
+	 */
+	public int getFrameRate(){
+		return frameRate;
+	}
+	/**
+	 * @param r - True to have update() wait so frames come at the frame rate,
+	 * false to generate frames as fast as they are asked for
+	 */
+	public void setRealTime(boolean r){
+		realTime = r;
+		began = 0;
+	}
+	/**
+	 * @param mm - Standard deviation of the noise added to each joint each frame
+	 */
+	public void setNoise(double mm){
+		noise = mm;
+	}
+	/**
+	 * @param tracking - Chance each frame that a tracked user is lost for a
+	 * short while
+	 * @param joint - Chance each frame that a single joint is missing
+	 */
+	public void setDropout(double tracking, double joint){
+		trackingLoss = tracking;
+		jointLoss = joint;
+	}
+	/**
+	 * @param frames - Number of frames each step of a played gesture is held,
+	 * held frames only match if the relations of the next step have previous
+	 * relations to hold between
+	 */
+	public void setStepFrames(int frames){
+		stepFrames = Math.max(1, frames);
+	}
+	/**
+	 * Overrides the joint id of p, used to run without SimpleOpenNI.
+	 * @param p - Part of the body
+	 * @param joint - Joint id to report p as
+	 */
+	public void setJoint(Part p, int joint){
+		ids[p.ordinal()] = joint;
+	}
+	/**
+	 * @return
+	 * 		Joint id of p, taken from Skeleton the first time it is needed or
+	 * the OpenNI id if the SimpleOpenNI library is missing
+	 */
+	public int getJoint(Part p){
+		int i = p.ordinal();
+		if (ids[i] < 0)
+			ids[i] = openNI(p);
+		return ids[i];
+	}
+	/**
+	 * @return
+	 * 		SimpleOpenNI joint constant of p
+	 */
+	private static int openNI(Part p){
+		try {
+			return skeleton(p);
+		} catch (LinkageError e) {
+			//Skeleton loads SimpleOpenNI, without the native library it can not
+			return OPENNI[p.ordinal()];
+		}
+	}
+	/**
+	 * @return
+	 * 		Joint constant of p in Skeleton
+	 */
+	private static int skeleton(Part p){
+		switch (p){
+		case HEAD: return Skeleton.HEAD.get();
+		case NECK: return Skeleton.NECK.get();
+		case TORSO: return Skeleton.TORSO.get();
+		case LEFT_SHOULDER: return Skeleton.SHOULDER.left();
+		case LEFT_ELBOW: return Skeleton.ELBOW.left();
+		case LEFT_HAND: return Skeleton.HAND.left();
+		case RIGHT_SHOULDER: return Skeleton.SHOULDER.right();
+		case RIGHT_ELBOW: return Skeleton.ELBOW.right();
+		case RIGHT_HAND: return Skeleton.HAND.right();
+		case LEFT_HIP: return Skeleton.HIP.left();
+		case LEFT_KNEE: return Skeleton.KNEE.left();
+		case LEFT_FOOT: return Skeleton.FOOT.left();
+		case RIGHT_HIP: return Skeleton.HIP.right();
+		case RIGHT_KNEE: return Skeleton.KNEE.right();
+		default: return Skeleton.FOOT.right();
+		}
+	}
+	/**
+	 * @return
+	 * 		Joint ids of every Part in Part order
+	 */
+	public int[] getJoints(){
+		int j[] = new int[ids.length];
+		for (Part p : Part.values()){
+			j[p.ordinal()] = getJoint(p);
+		}
+		return j;
+	}
+	/**
+	 * @param user - Id of user
+	 * @return
+	 * 		User with id user
+	 */
+	private User getUser(int user){
+		User u = users.get(user);
+		if (u == null)
+			throw new IllegalArgumentException("No such user: "+user);
+		return u;
+	}
+	@Override
+	public boolean update(){
+		if (realTime){
+			//sleep until the frame is due rather than a fixed time so the rate does not drift
+			long now = System.nanoTime();
+			if (began == 0)
+				began = now-((frame+1)*1000000000L/frameRate);
+			long due = began+((frame+1)*1000000000L/frameRate);
+			if (due > now){
+				try {
+					Thread.sleep((due-now)/1000000, (int)((due-now)%1000000));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		frame++;
+		double t = frame/(double)frameRate;
+		for (User u : users.values()){
+			u.next(t);
+		}
+		return true;
+	}
+	@Override
+	public int[] getUsers(){
+		int u[] = new int[users.size()];
+		int i=0;
+		for (Integer id : users.keySet()){
+			u[i++] = id;
+		}
+		return u;
+	}
+	@Override
+	public boolean isTracking(int user){
+		User u = users.get(user);
+		return u != null && u.pose.isTracked();
+	}
+	@Override
+	public boolean getJoint(int user, int joint, PVector dst){
+		User u = users.get(user);
+		if (u == null)
+			return false;
+		return u.pose.getJoint(joint, dst);
+	}
+	@Override
+	public float getConfidence(int user, int joint){
+		User u = users.get(user);
+		return u != null && u.pose.has(joint) ? 1 : 0;
+	}
+	@Override
+	public long getFrame(){
+		return frame;
+	}
+	@Override
+	public long getTimestamp(){
+		return frame < 0 ? 0 : frame*1000/frameRate;
+	}
+	@Override
+	public String toString(){
+		String s = "{users: "+users.size()+" frame: "+frame+" fps: "+frameRate+" noise: "+noise;
+		s += " dropout: "+trackingLoss+"/"+jointLoss+" played: "+played+"}";
+		return s;
+	}
+	/**
+	 * A single simulated user.
+	 */
+	private class User{
+		/**Id of the user*/
+		int id;
+
+		/**Movement made when not playing a gesture*/
+		Motion motion;
+
+		/**Cycles of the motion per second*/
+		double rate;
+
+		/**Offset into the cycle of the motion, from 0 to 1*/
+		double phase;
+
+		/**Position of the torso*/
+		float origin[];
+
+		/**Joints of the current frame*/
+		SkeletonFrame pose;
+
+		/**Frames left before a lost user is found again*/
+		int lost;
+
+		/**Gestures waiting to be played*/
+		LinkedList<CompiledGesture> queue;
+
+		/**Gesture being played, null if none*/
+		CompiledGesture playing;
+
+		/**Step of playing being generated*/
+		int step;
+
+		/**Frames step has been held for*/
+		int held;
+
+		/**Joints placed by the current step, marked with the frame they were placed at*/
+		long placed[];
+
+		User(int i, Motion m){
+			id = i;
+			motion = m;
+			rate = 0.5+random.nextDouble();
+			phase = random.nextDouble();
+			//users stand side by side in staggered rows in front of the camera
+			origin = new float[]{(i%7-3)*700f, 100f, 2200f+(i/7%3)*600f};
+			pose = new SkeletonFrame();
+			pose.clear(id);
+			queue = new LinkedList<CompiledGesture>();
+			placed = new long[SkeletonFrame.DEFAULT_SLOTS];
+		}
+		/**
+		 * Generates the frame at t seconds.
+		 */
+		void next(double t){
+			pose.clear(id);
+			pose.setFrame(frame);
+			if (lost > 0){
+				lost--;
+				return;
+			}
+			if (random.nextDouble() < trackingLoss){
+				//lost users come back after a third to one second
+				lost = frameRate/3+random.nextInt(frameRate);
+				return;
+			}
+
+			double a = 2*Math.PI*(rate*t+phase);
+			for (Part p : Part.values()){
+				float r[] = REST[p.ordinal()];
+				set(p, r[0], r[1], r[2]);
+			}
+			switch (motion){
+			case WAVE:{
+				//upper arm raised out to the side, forearm swings about upright
+				double th = .6*Math.sin(a);
+				set(Part.RIGHT_ELBOW, 370, 340, -40);
+				set(Part.RIGHT_HAND, (float)(370+260*Math.sin(th)), (float)(340+260*Math.cos(th)), -40);
+				break;
+			}
+			case STIR:{
+				//forearm forward, hand circles in the horizontal plane
+				set(Part.RIGHT_ELBOW, 200, 20, -40);
+				set(Part.RIGHT_HAND, (float)(200+90*Math.cos(a)), 50, (float)(-260+90*Math.sin(a)));
+				break;
+			}
+			case CIRCLE:{
+				//straight arms out to the side tracing circles
+				double dy = .4*Math.sin(a), dz = .4*Math.cos(a);
+				double l = Math.sqrt(1+dy*dy+dz*dz);
+				float x = (float)(1/l), y = (float)(dy/l), z = (float)(dz/l);
+				set(Part.LEFT_ELBOW, -170-270*x, 280+270*y, 270*z);
+				set(Part.LEFT_HAND, -170-540*x, 280+540*y, 540*z);
+				set(Part.RIGHT_ELBOW, 170+270*x, 280+270*y, 270*z);
+				set(Part.RIGHT_HAND, 170+540*x, 280+540*y, 540*z);
+				break;
+			}
+			default:{
+				//whole body sways slowly
+				float sx = (float)(20*Math.sin(a*.3)), sz = (float)(12*Math.cos(a*.3));
+				for (Part p : Part.values()){
+					float r[] = REST[p.ordinal()];
+					set(p, r[0]+sx, r[1], r[2]+sz);
+				}
+			}
+			}
+
+			if (noise > 0){
+				for (Part p : Part.values()){
+					int j = getJoint(p);
+					pose.set(j, (float)(pose.x(j)+random.nextGaussian()*noise),
+							(float)(pose.y(j)+random.nextGaussian()*noise),
+							(float)(pose.z(j)+random.nextGaussian()*noise));
+				}
+			}
+
+			if (playing == null && !queue.isEmpty()){
+				playing = queue.removeFirst();
+				step = 0;
+				held = 0;
+			}
+			if (playing != null)
+				place();
+
+			if (jointLoss > 0){
+				for (Part p : Part.values()){
+					int j = getJoint(p);
+					if (!isPlaced(j) && random.nextDouble() < jointLoss)
+						pose.set(j, null);
+				}
+			}
+		}
+		/**
+		 * Sets the joint of p relative to the torso.
+		 */
+		void set(Part p, float x, float y, float z){
+			pose.set(getJoint(p), origin[0]+x, origin[1]+y, origin[2]+z);
+		}
+		/**
+		 * @return
+		 * 		True if joint was placed by the gesture this frame
+		 */
+		boolean isPlaced(int joint){
+			return playing != null && joint < placed.length && placed[joint] == frame+1;
+		}
+		/**
+		 * Marks joint as placed this frame.
+		 */
+		void mark(int joint){
+			if (joint >= placed.length)
+				placed = Arrays.copyOf(placed, joint+1);
+			placed[joint] = frame+1;
+		}
+		/**
+		 * Places the joints of the current step of playing and moves on to
+		 * the next step once the step has been held long enough.
+		 */
+		void place(){
+			CompiledGesture c = playing;
+			if (JointRelation.hasCrossProduct()){
+				for (int r=c.stepStart[step];r<c.stepStart[step+1];r++){
+					if (c.width[r] >= 3)
+						solve(c, r);
+				}
+			}
+			if (++held < stepFrames)
+				return;
+			held = 0;
+			if (++step == c.steps){
+				playing = null;
+				played++;
+			}
+		}
+		/**
+		 * Places the joints of relation r of c so the cross product of their
+		 * unit vectors is the target of r. A joint that is not placed yet keeps
+		 * its length and is turned about the cross product to the angle it must
+		 * make.
+		 */
+		void solve(CompiledGesture c, int r){
+			int a = c.first[r], b = c.second[r];
+			boolean pa = isPlaced(a), pb = isPlaced(b);
+			if (pa && pb)
+				return;
+			double v[] = cross(c, r);
+			PVector A = position(a), B = position(b);
+			if (!pa && !pb){
+				//a joint shared with another relation of the step must be normal to
+				//both cross products, so that joint is placed first
+				int o = shared(c, r, a);
+				if (o < 0 && (o = shared(c, r, b)) >= 0){
+					anchor(B, v, cross(c, o));
+					pose.set(b, B);
+					mark(b);
+					pb = true;
+				}
+				else{
+					anchor(A, v, o < 0 ? null : cross(c, o));
+					pose.set(a, A);
+					mark(a);
+					pa = true;
+				}
+			}
+			if (pa){
+				turn(A, v[0], v[1], v[2], B);
+				pose.set(b, B);
+				mark(b);
+			}
+			else{
+				//a x b = c is b x a = -c
+				turn(B, -v[0], -v[1], -v[2], A);
+				pose.set(a, A);
+				mark(a);
+			}
+		}
+		/**
+		 * @return
+		 * 		Cross product of the unit vectors held by relation r of c
+		 */
+		double[] cross(CompiledGesture c, int r){
+			double unit = Euclidean.unitSize();
+			int off = r*c.stride;
+			return new double[]{c.target[off]/(unit*unit), c.target[off+1]/(unit*unit), c.target[off+2]/(unit*unit)};
+		}
+		/**
+		 * @return
+		 * 		Another relation of the current step that uses joint, -1 if none
+		 */
+		int shared(CompiledGesture c, int r, int joint){
+			for (int k=c.stepStart[step];k<c.stepStart[step+1];k++){
+				if (k != r && c.width[k] >= 3 && (c.first[k] == joint || c.second[k] == joint))
+					return k;
+			}
+			return -1;
+		}
+		/**
+		 * Turns p, keeping its length, so it is normal to the cross product c
+		 * and when d is given also normal to d, staying on the side p was on.
+		 */
+		void anchor(PVector p, double c[], double d[]){
+			float m = p.mag();
+			if (d != null){
+				double nx = c[1]*d[2]-c[2]*d[1], ny = c[2]*d[0]-c[0]*d[2], nz = c[0]*d[1]-c[1]*d[0];
+				double l = Math.sqrt(nx*nx+ny*ny+nz*nz);
+				if (l > 0){
+					if (nx*p.x+ny*p.y+nz*p.z < 0)
+						l = -l;
+					p.set((float)(nx*m/l), (float)(ny*m/l), (float)(nz*m/l));
+					return;
+				}
+			}
+			double l = c[0]*c[0]+c[1]*c[1]+c[2]*c[2];
+			if (l > 0){
+				double k = (p.x*c[0]+p.y*c[1]+p.z*c[2])/l;
+				p.set((float)(p.x-k*c[0]), (float)(p.y-k*c[1]), (float)(p.z-k*c[2]));
+				if (p.mag() > 0)
+					p.mult(m/p.mag());
+			}
+		}
+		/**
+		 * Turns dst so that the cross product of the unit vectors of from and
+		 * dst is (cx,cy,cz), keeping the length of dst.
+		 */
+		void turn(PVector from, double cx, double cy, double cz, PVector dst){
+			double s = Math.min(1, Math.sqrt(cx*cx+cy*cy+cz*cz));
+			double fl = from.mag();
+			double ux = from.x/fl, uy = from.y/fl, uz = from.z/fl;
+			//w is c x u, perpendicular to u and turning u towards it gives the cross product c
+			double wx = cy*uz-cz*uy, wy = cz*ux-cx*uz, wz = cx*uy-cy*ux;
+			double wl = Math.sqrt(wx*wx+wy*wy+wz*wz);
+			double k = Math.sqrt(1-s*s);
+			double vx = k*ux, vy = k*uy, vz = k*uz;
+			if (wl > 0){
+				vx += s*wx/wl;
+				vy += s*wy/wl;
+				vz += s*wz/wl;
+			}
+			float m = dst.mag();
+			dst.set((float)(vx*m), (float)(vy*m), (float)(vz*m));
+		}
+		/**
+		 * @return
+		 * 		Copy of the position of joint, joints the body does not have
+		 * are put at the neck
+		 */
+		PVector position(int joint){
+			PVector p = new PVector();
+			if (!pose.getJoint(joint, p)){
+				float r[] = REST[Part.NECK.ordinal()];
+				p.set(origin[0]+r[0], origin[1]+r[1], origin[2]+r[2]);
+			}
+			return p;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package controller;
+
+import java.io.Serializable;
+import java.util.Scanner;
+
+import controller.xmlGestureParser.xmlStatics;
+
+/**
+ * A mutable point in 3D space backed by primitive doubles. This is the working
+ * counterpart of {@link Euclidean}, the math is the same but every operation
+ * either changes this or writes into a destination given by the caller so no
+ * boxing or new objects are involved. It is meant for code that runs every
+ * frame or over every point of a recording.
+ * <p>
+ * The xml form is the same as the xml form of a Euclidean so either class
+ * may load what the other saved.
+ *
+ * @see Euclidean
+ * @author Levi Lindsley
+ *
+ */
+class Vector3 implements Serializable{
+	/**Generated serialVersionUID for serialization*/
+	private static final long serialVersionUID = -3165473082145917340L;
+
+	/**Class tag for XML documents, shared with Euclidean*/
+	private static final String classTag = "Euclidean";
+
+	double x;
+	double y;
+	double z;
+
+	/**
+	 * Default constructor, x,y, and z are set to 0.0
+	 */
+	Vector3(){
+		x = 0.0;
+		y = 0.0;
+		z = 0.0;
+	}
+	/**
+	 * Sets x to i, y to j, and z to k
+	 * @param i - value for x
+	 * @param j - value for y
+	 * @param k - value for z
+	 */
+	Vector3(double i, double j, double k){
+		x = i;
+		y = j;
+		z = k;
+	}
+	/**
+	 * Sets this to the same values as o
+	 * @param o - Euclidean values to use
+	 */
+	Vector3(Euclidean o){
+		set(o);
+	}
+	/**
+	 * Sets this to the same values as o
+	 * @param o - Vector3 values to use
+	 */
+	Vector3(Vector3 o){
+		set(o);
+	}
+	/**
+	 * Sets x to i, y to j, and z to k
+	 * @return this
+	 */
+	Vector3 set(double i, double j, double k){
+		x = i;
+		y = j;
+		z = k;
+		return this;
+	}
+	/**
+	 * Sets this to the same values as o
+	 * @return this
+	 */
+	Vector3 set(Vector3 o){
+		return set(o.x, o.y, o.z);
+	}
+	/**
+	 * Sets this to the same values as o
+	 * @return this
+	 */
+	Vector3 set(Euclidean o){
+		return set(o.x, o.y, o.z);
+	}
+	/**
+	 * @return
+	 * 		New Euclidean with the values of this
+	 */
+	Euclidean toEuclidean(){
+		return new Euclidean(x, y, z);
+	}
+	/**
+	 * Calculates the length of the vector represented by this in the same
+	 * fashion as {@link Euclidean#length()}.
+	 * @return
+	 * 		length of this.
+	 */
+	double length(){
+		return Math.sqrt((x*x)+(y*y)+(z*z));
+	}
+	/**
+	 * @param o - Vector3 to take dot product with
+	 * @return
+	 * 		Dot product between this and o
+	 */
+	double dotProduct(Vector3 o){
+		return (this.x*o.x)+(this.y*o.y)+(this.z*o.z);
+	}
+	/**
+	 * @param o - Vector3 to compare this with
+	 * @return
+	 * 		Distance between this and o
+	 */
+	double distance(Vector3 o){
+		double dx = this.x-o.x;
+		double dy = this.y-o.y;
+		double dz = this.z-o.z;
+		return Math.sqrt((dx*dx)+(dy*dy)+(dz*dz));
+	}
+	/**
+	 * Translates coordinate of this by the coordinates of o
+	 * @return this
+	 */
+	Vector3 translate(Vector3 o){
+		this.x += o.x;
+		this.y += o.y;
+		this.z += o.z;
+		return this;
+	}
+	/**
+	 * Translates coordinate of this by the coordinates of o, used to sum
+	 * Euclideans without boxing the running total.
+	 * @return this
+	 */
+	Vector3 translate(Euclidean o){
+		this.x += o.x;
+		this.y += o.y;
+		this.z += o.z;
+		return this;
+	}
+	/**
+	 * Scales this by a constant value
+	 * @return this
+	 */
+	Vector3 scale(double s){
+		this.x *= s;
+		this.y *= s;
+		this.z *= s;
+		return this;
+	}
+	/**
+	 * Scales each value of this by the corresponding value of o
+	 * @return this
+	 */
+	Vector3 scale(Vector3 o){
+		this.x *= o.x;
+		this.y *= o.y;
+		this.z *= o.z;
+		return this;
+	}
+	/**
+	 * Multiplies the coordinates of this by -1.
+	 * @return this
+	 * @see Euclidean#inverse()
+	 */
+	Vector3 invert(){
+		x = x*-1;
+		y = y*-1;
+		z = z*-1;
+		return this;
+	}
+	/**
+	 * Places the inverse of this into dst, this is unchanged.
+	 * @return dst
+	 */
+	Vector3 inverse(Vector3 dst){
+		return dst.set(x*-1, y*-1, z*-1);
+	}
+	/**
+	 * Scales this to a unit vector of {@link Euclidean#unitSize}.
+	 * @return this
+	 * @see Euclidean#unitVector()
+	 */
+	Vector3 normalize(){
+		double l = length();
+		double unit = Euclidean.unitSize();
+		return set((x/l)*unit, (y/l)*unit, (z/l)*unit);
+	}
+	/**
+	 * Places the unit vector of this into dst, this is unchanged.
+	 * @return dst
+	 * @see Euclidean#unitVector()
+	 */
+	Vector3 unitVector(Vector3 dst){
+		return dst.set(this).normalize();
+	}
+	/**
+	 * Places this cross o into dst, dst may be this or o.
+	 * @return dst
+	 * @see Euclidean#crossProcuct(Euclidean)
+	 */
+	Vector3 crossProduct(Vector3 o, Vector3 dst){
+		double i = this.y*o.z - this.z*o.y;
+		double j = this.z*o.x - this.x*o.z;
+		double k = this.x*o.y - this.y*o.x;
+		return dst.set(i, j, k);
+	}
+	/**
+	 * Compares the coordinates of this with the coordinates of o +-
+	 * {@link Euclidean#Epsilon} in the same way as {@link Euclidean#isAbout(Euclidean)}.
+	 * @return
+	 * 		True if the coordinates of this = the coordinates of o +- Epsilon.
+	 */
+	boolean isAbout(Vector3 o){
+		return isAbout(x, o.x) && isAbout(y, o.y) && isAbout(z, o.z);
+	}
+	/**
+	 * @see #isAbout(Vector3)
+	 */
+	boolean isAbout(Euclidean o){
+		return isAbout(x, o.x) && isAbout(y, o.y) && isAbout(z, o.z);
+	}
+	/**
+	 * @return
+	 * 		True if a == b +- Epsilon
+	 */
+	private static boolean isAbout(double a, double b){
+		double epsilon = Euclidean.epsilon();
+		return Double.compare(b+epsilon, a) >= 0 && Double.compare(b-epsilon, a) <= 0;
+	}
+	public boolean equals(Object o){
+		if (!(o instanceof Vector3))
+			return false;
+		Vector3 other = (Vector3)o;
+		return Double.compare(x, other.x) == 0 && Double.compare(y, other.y) == 0
+				&& Double.compare(z, other.z) == 0;
+	}
+	public int hashCode(){
+		long bits = Double.doubleToLongBits(x);
+		bits = bits ^ Double.doubleToLongBits(y);
+		bits = bits ^ Double.doubleToLongBits(z);
+		return (int)(bits ^ (bits >>>32));
+	}
+	public String toString(){
+		return "<"+x+", "+y+", "+z+">";
+	}
+	public static Vector3 load(Scanner xmlInput){
+		Euclidean e = Euclidean.load(xmlInput);
+		if (e == null)
+			return null;
+		return new Vector3(e);
+	}
+	public String toXML(){
+		String content = new String();
+		content += "<"+classTag+">"+'\n';
+		content += xmlStatics.createElement("x", Double.toString(x));
+		content += xmlStatics.createElement("y", Double.toString(y));
+		content += xmlStatics.createElement("z", Double.toString(z));
+		content += "</"+classTag+">"+'\n';
+		return content;
+	}
+}
@@ -1,8 +1,13 @@
 package controller;
 
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collection;
 import java.util.List;
 import java.util.Scanner;
 
@@ -11,14 +16,23 @@ import processing.core.PVector;
 /**
  * Interface specifying that implementing can save and load to/from xml format.
  * Contains an abstract helper class with static functions cause laziness.
+ * <p>
+ * Saving streams each element to a buffered Writer as it is produced, the
+ * whole document is never held in memory and the file is flushed once when
+ * it is closed.
  * 
  * @author Levi Lindsley
  *
  */
 public interface xmlGestureParser<E> extends Serializable{
 	public abstract class xmlStatics implements xmlGestureParser<Object>{
+		/**Size of the buffer used when saving to a file*/
+		static final int BUFFER = 1<<16;
+		
 		/**
 		 * Creates a basic text element in xml format with beginning and end tags.
+		 * The body is used as is so it may hold other elements, text that may
+		 * contain &amp;, &lt; or &gt; should be passed through {@link #escape(String)}.
 		 * @param tag : tag to open and close
 		 * @param text : element body
 		 * @return
@@ -44,22 +58,136 @@ public interface xmlGestureParser<E> extends Serializable{
 			elem += "</"+tag+">"+'\n';
 			return elem;
 		}
-		public static String parseElement(Scanner xmlInput){
-			xmlInput.next();
-			String val = xmlInput.next();
-			xmlInput.next();
-			return val;
+		/**
+		 * Writes a basic text element to w, the text is escaped so any name
+		 * may be read back.
+		 * @param w : Writer to write to
+		 * @param tag : tag to open and close
+		 * @param text : element body, written as "null" if null
+		 * @throws IOException
+		 * 		If w fails
+		 */
+		public static void writeElement(Writer w, String tag, String text) throws IOException{
+			w.write("<"+tag+">"+'\n');
+			w.write(escape(String.valueOf(text)));
+			w.write('\n');
+			w.write("</"+tag+">"+'\n');
 		}
-
-		public static void write(BufferedWriter wr, String s){
+		/**
+		 * @return
+		 * 		text with &amp;, &lt; and &gt; replaced by their entities, text
+		 * itself if it holds none of them
+		 */
+		public static String escape(String text){
+			int i = 0;
+			while (i < text.length() && "&<>".indexOf(text.charAt(i)) < 0){
+				i++;
+			}
+			if (i == text.length())
+				return text;
+			StringBuilder b = new StringBuilder(text.length()+16);
+			b.append(text, 0, i);
+			for (;i<text.length();i++){
+				char c = text.charAt(i);
+				if (c == '&')
+					b.append("&amp;");
+				else if (c == '<')
+					b.append("&lt;");
+				else if (c == '>')
+					b.append("&gt;");
+				else
+					b.append(c);
+			}
+			return b.toString();
+		}
+		/**
+		 * @return
+		 * 		text with the entities written by {@link #escape(String)} replaced
+		 * by the characters they stand for
+		 */
+		public static String unescape(String text){
+			if (text.indexOf('&') < 0)
+				return text;
+			return text.replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&");
+		}
+		/**
+		 * Writes the element built by {@link #createPVectorElem(String, String, PVector)}
+		 * to w without building it first.
+		 * @throws IOException
+		 * 		If w fails
+		 */
+		public static void writePVectorElem(Writer w, String tag, String text, PVector e) throws IOException{
+			w.write("<"+tag+">"+'\n');
+			w.write(String.valueOf(text));
+			writeElement(w, "x", Float.toString(e.x));
+			writeElement(w, "y", Float.toString(e.y));
+			writeElement(w, "z", Float.toString(e.z));
+			w.write("</"+tag+">"+'\n');
+		}
+		/**
+		 * Builds the xml of x as a String, for callers that need the whole
+		 * element at once.
+		 * @param x : Object to write
+		 * @return
+		 * 		The xml written by x.writeXML()
+		 */
+		public static String toXML(xmlGestureParser<?> x){
+			StringWriter w = new StringWriter();
+			try {
+				x.writeXML(w);
+			} catch (IOException e) {
+				//a StringWriter never throws
+				throw new IllegalStateException(e);
+			}
+			return w.toString();
+		}
+		/**
+		 * Streams the xml of each element of items inside a root element to
+		 * fileName as UTF-8 through a single buffered writer that is closed
+		 * when done.
+		 * IOExceptions are printed rather than thrown as the save functions
+		 * have always done.
+		 * @param fileName : File to write, replaced if it exists
+		 * @param items : Elements to write in order
+		 * @param end : Text closing the document
+		 */
+		public static void save(String fileName, Collection<? extends xmlGestureParser<?>> items, String end){
+			Writer wr = null;
+			try {
+				//UTF-8 as GestureLoader reads it, not the platform charset
+				wr = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8"), BUFFER);
+				wr.write("<?xml version=\"1.0\"?>"+'\n');
+				wr.write("<root>"+'\n');
+				for (xmlGestureParser<?> x : items){
+					x.writeXML(wr);
+				}
+				wr.write(end);
+			} catch (IOException e) {
+				System.out.println("IOException: "+e.getMessage());
+				e.printStackTrace();
+			} finally {
+				close(wr);
+			}
+		}
+		/**
+		 * Closes w printing rather than throwing any IOException.
+		 */
+		private static void close(Writer w){
+			if (w == null)
+				return;
 			try {
-				wr.write(s);
-				wr.flush();
+				w.close();
 			} catch (IOException e) {
 				System.out.println("IOException: "+e.getMessage());
 				e.printStackTrace();
 			}
 		}
+		public static String parseElement(Scanner xmlInput){
+			xmlInput.next();
+			String val = unescape(xmlInput.next());
+			xmlInput.next();
+			return val;
+		}
 	}
 	
 	//TODO add load functions
@@ -71,4 +199,12 @@ public interface xmlGestureParser<E> extends Serializable{
 	void save(String fileName);
 	
 	String toXML();
+	
+	/**
+	 * Writes the same xml as {@link #toXML()} to w as it is produced.
+	 * @param w : Writer to write to, it is neither flushed nor closed
+	 * @throws IOException
+	 * 		If w fails
+	 */
+	void writeXML(Writer w) throws IOException;
 }
@@ -1,11 +1,13 @@
 import java.io.BufferedWriter;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -33,6 +35,12 @@ public class Main extends PApplet{
 	boolean selectorActive = true;
 	boolean kitchenActive = false;
 	boolean ghost = true;
+	/**Captures frames on their own thread and recognizes and records them
+	 * from a FrameRing instead of on the animation thread. The capture thread
+	 * is then the only one touching context, skeletons are drawn from the
+	 * latest frame in the ring and the depth image and unit mode are not
+	 * drawn*/
+	boolean threaded = false;
 	
 	/**Compression type used to compress gesture into different types to 
 	 * view values and differences see {@link CompressionType}*/
@@ -41,8 +49,9 @@ public class Main extends PApplet{
 	//
 	//GestureController and friends
 	//
-	/**Vector of gesture controllers that hold all gestures to track*/
-	Vector<GestureController> gesture;
+	/**Engine holding all gestures to track, the engine retrieves the joints
+	 * of each user once per frame and checks every gesture against them*/
+	GestureEngine gesture;
 	
 	/**A gesture recorder instance, used for direct recording or parsing
 	 * the JointRecorder*/
@@ -53,6 +62,26 @@ public class Main extends PApplet{
 	 * what is tracked by this.*/
 	JointRecorder jR;
 
+	/**Frames published by capture when threaded*/
+	FrameRing ring;
+	/**Reads the camera when threaded*/
+	SkeletonCapture capture;
+	/**Checks gestures against ring when threaded*/
+	RecognitionConsumer recognizer;
+	/**Records frames from ring into jR when threaded*/
+	RecordingConsumer recorder;
+	/**Latest frame of the user being drawn when threaded*/
+	SkeletonFrame view = new SkeletonFrame();
+	/**Users present, kept by the user events as getUsers can not be called
+	 * on context while the capture thread updates it*/
+	Set<Integer> users = Collections.synchronizedSet(new TreeSet<Integer>());
+	/**Center and scale of the projection of context, read before capture
+	 * starts so frames holding real world positions can be drawn*/
+	float projCenterX, projCenterY, projScaleX, projScaleY;
+	/**Size of the depth image, read once so it is never asked of context
+	 * while the capture thread updates it*/
+	int depthWidth, depthHeight;
+
 	//instances of other things that may draw on a PApplet
 	VirtualKitchen vK;
 	Sidebar s;
@@ -63,7 +92,9 @@ public class Main extends PApplet{
 	{	
 		context = new SimpleOpenNI(this);
 		
-		gesture = new Vector<GestureController>();
+		gesture = new GestureEngine();
+		gesture.setShared(true); //processRecording adds variants that start the same
+		gesture.setParallelism(Runtime.getRuntime().availableProcessors());
 		log = new GestureRecord();
 		jR = new JointRecorder();
 		jR.addJoint(SimpleOpenNI.SKEL_LEFT_ELBOW);
@@ -129,6 +160,9 @@ public class Main extends PApplet{
 		skelSel = new SkeletalSelector(this, new Sidebar(this), width(), height());
 		activateSelector();
 		
+		if (threaded)
+			startCapture();
+		
 		System.out.println("Setup complete");
 	}
 	public void draw()
@@ -140,60 +174,128 @@ public class Main extends PApplet{
 			return;
 		}
 		
-		// update the cam
-		context.update();
-		// draw depthImageMap
-		image(context.depthImage(),0,0);
-		
-		//if unitMode is active then draw whatever it wants
-		//as opposed to the standard screen image.
-		if (unitMode){
-			unitDraw();
-			return;
+		// update the cam, the capture thread does this when threaded
+		if (threaded){
+			background(0);
+		}
+		else{
+			context.update();
+			// draw depthImageMap
+			image(context.depthImage(),0,0);
+			
+			//if unitMode is active then draw whatever it wants
+			//as opposed to the standard screen image.
+			if (unitMode){
+				unitDraw();
+				return;
+			}
 		}
 
 		// draw the skeleton if it's available
-		int[] userList = context.getUsers();
+		synchronized (jR){
+			drawUsers();
+		}
+		if (threaded){
+			for (GestureEvent e = recognizer.poll(); e != null; e = recognizer.poll()){
+				System.out.println(e.getGesture().Name);
+				s.update("Completed Gesture", e.getGesture().Name+'\n'+"At: "+System.currentTimeMillis()+"");
+			}
+		}
+		synchronized (jR){
+			drawSidebar();
+		}
+	}
+	/**
+	 * Draws the skeleton of every tracked user and checks and records them
+	 * when not threaded. jR must be locked by the caller.
+	 */
+	private void drawUsers(){
+		int[] userList = getUsers();
 		for(int i=0;i<userList.length;i++)
 		{
-			if(context.isTrackingSkeleton(userList[i])){
+			if(isTracking(userList[i])){
 				
 				//get the things the virtualKitchen needs
-				PVector leftHand = new PVector(), projLeftHand = new PVector();
-				PVector rightHand = new PVector(), projRightHand = new PVector();
-				context.getJointPositionSkeleton(userList[i], SimpleOpenNI.SKEL_LEFT_HAND, leftHand);
-				context.getJointPositionSkeleton(userList[i], SimpleOpenNI.SKEL_RIGHT_HAND, rightHand);
-
-				context.convertRealWorldToProjective(rightHand, projRightHand);
-				context.convertRealWorldToProjective(leftHand, projLeftHand);
+				PVector projLeftHand = new PVector();
+				PVector projRightHand = new PVector();
+				getProjective(userList[i], SimpleOpenNI.SKEL_LEFT_HAND, projLeftHand);
+				getProjective(userList[i], SimpleOpenNI.SKEL_RIGHT_HAND, projRightHand);
 
 				if (kitchenActive)
 					vK.drawContext(userList[i], projLeftHand, projRightHand,width(), height());
 
 				if(playback){
 					viewRecord();
-					for (int j=0;j<gesture.size();j++)
-						if (gesture.get(j).isComplete(jR, jR.getPlayBackTick())){
-							System.out.println("R:"+gesture.get(j).Name);
-						}
+					for (GestureController g : gesture.process(jR, jR.getPlayBackTick())){
+						System.out.println("R:"+g.Name);
+					}
 					if (ghost)
 						drawSkeletonPrime(userList[i]);
 				}
 				 else
 					  drawSkeletonPrime(userList[i]);
 
+				if (threaded)
+					continue; //recognition and recording are done by the consumers
+
 				//check the gesture for completion
-				for (int j=0;j<gesture.size();j++)
-					if (gesture.get(j).isComplete(context, userList[i])){
-						System.out.println(gesture.get(j).Name);
-						s.update("Completed Gesture", gesture.get(j).Name+'\n'+"At: "+System.currentTimeMillis()+"");
-					}
+				for (GestureController g : gesture.process(context, userList[i])){
+					System.out.println(g.Name);
+					s.update("Completed Gesture", g.Name+'\n'+"At: "+System.currentTimeMillis()+"");
+				}
 				if (Recording){
 					jR.record(context, userList[i]);
 				}
 			}
 		}    
-		drawSidebar();
+	}
+	/**
+	 * @return
+	 * 		Users to draw, from context or when threaded from the user events
+	 */
+	private int[] getUsers(){
+		if (!threaded)
+			return context.getUsers();
+		synchronized (users){
+			int u[] = new int[users.size()];
+			int i=0;
+			for (Integer k : users){
+				u[i++] = k;
+			}
+			return u;
+		}
+	}
+	/**
+	 * Checks if user is tracked, when threaded the latest frame of user in
+	 * ring is copied into view to be drawn.
+	 * @return
+	 * 		True if the skeleton of user can be drawn
+	 */
+	private boolean isTracking(int user){
+		if (!threaded)
+			return context.isTrackingSkeleton(user);
+		return ring.latest(user, view);
+	}
+	/**
+	 * Places the screen position of joint of user into dst, from context or
+	 * when threaded from view.
+	 * @return
+	 * 		False if the position is not known, dst is unchanged
+	 */
+	private boolean getProjective(int user, int joint, PVector dst){
+		if (!threaded){
+			PVector real = new PVector();
+			context.getJointPositionSkeleton(user, joint, real);
+			context.convertRealWorldToProjective(real, dst);
+			return true;
+		}
+		if (!view.getJoint(joint, dst))
+			return false;
+		//frames hold projected positions unless the projection type is PROJ
+		if (GestureController.getProjectionType().equals("PROJ")){
+			dst.set(projCenterX+projScaleX*dst.x/dst.z, projCenterY+projScaleY*dst.y/dst.z, dst.z);
+		}
+		return true;
 	}
 	void initHelp(){
 		
@@ -204,15 +306,19 @@ public class Main extends PApplet{
 		s.draw();
 	}
 	private void activateSelector(){
-		jR.getJoints(skelSel.selected);
-		skelSel.selectedPair.addAll(log.getFocus());
-		jR.clearFocus();
+		synchronized (jR){
+			jR.getJoints(skelSel.selected);
+			skelSel.selectedPair.addAll(log.getFocus());
+			jR.clearFocus();
+		}
 		log = new GestureRecord();
 		
 		selectorActive = true;
 	}
 	private void deactivateSelector(){
-		jR.addAll(skelSel.selected);
+		synchronized (jR){
+			jR.addAll(skelSel.selected);
+		}
 		
 		Iterator<Pair> iter = skelSel.selectedPair.iterator();
 		while (iter.hasNext()){
@@ -330,16 +436,13 @@ public class Main extends PApplet{
 
 	}
 	void drawLimb(int user, int First, int Second){
-		//PVectors to store joint position data and converted position data
-		PVector Joint = new PVector();
+		//PVectors to store converted position data
 		PVector R1 = new PVector();
 		PVector R2 = new PVector();
 		
-		//get joint data from context and convert to projection
-		context.getJointPositionSkeleton(user, First, Joint);
-		context.convertRealWorldToProjective(Joint, R1);
-		context.getJointPositionSkeleton(user, Second, Joint);
-		context.convertRealWorldToProjective(Joint, R2);
+		//get joint data and convert to projection
+		if (!getProjective(user, First, R1) || !getProjective(user, Second, R2))
+			return;
 		
 		pushStyle();
 		
@@ -470,7 +573,16 @@ public class Main extends PApplet{
 			togglePlayBack();
 		}
 		if (key == 'c'){
-			jR.clear();
+			synchronized (jR){
+				jR.clear();
+			}
+		}
+		if (key == 'r'){ //search the whole recording at once
+			synchronized (jR){
+				for (GestureEvent e : gesture.recognize(jR, Runtime.getRuntime().availableProcessors())){
+					System.out.println(e);
+				}
+			}
 		}
 		if (key == 32){ //space
 			if (selectorActive){
@@ -479,11 +591,19 @@ public class Main extends PApplet{
 			else if (Recording){
 				System.out.println("Recording End");
 				Recording = false;
+				if (threaded)
+					recorder.setRecording(false);
 			}
 			else if (!Recording){
-				if (jR.isEmpty()){
+				boolean empty;
+				synchronized (jR){
+					empty = jR.isEmpty();
+				}
+				if (empty){
 					System.out.println("Recording Start");
 					Recording = true;
+					if (threaded)
+						recorder.setRecording(true);
 				}
 				else{
 					processRecording();
@@ -501,9 +621,7 @@ public class Main extends PApplet{
 					out.write(xF.format(log));
 					out.flush();
 					out.close();
-					//					fos = new FileOutputStream("gesture.tmp");
-					//					ObjectOutputStream oos = new ObjectOutputStream(fos);
-					//					oos.writeObject(gesture);
+					GestureController.saveBinary("gesture.lib", gesture.getLibrary());
 				} catch (FileNotFoundException e) {
 					// TODO Auto-generated catch block
 					e.printStackTrace();
@@ -519,14 +637,11 @@ public class Main extends PApplet{
 		}
 		if (key == 'l'){
 			gesture.clear();
-			FileInputStream fos;
 			try {
-				fos = new FileInputStream("gesture.tmp");
-				ObjectInputStream oin = new ObjectInputStream(fos);
-				gesture = (Vector<GestureController>) oin.readObject();
+				gesture.addAll(GestureController.loadBinary("gesture.lib"));
 				System.out.println("Gestures Loaded: "+gesture.size());
 				System.out.println(gesture);
-			} catch (Exception e) {
+			} catch (IOException e) {
 				e.printStackTrace();
 			} 
 		}
@@ -539,59 +654,58 @@ public class Main extends PApplet{
 			}
 		}
 	}
-	private GestureController compressRecord(CompressionType type){
-		GestureController g;
-		
-		log.record(jR);
-		g = log.generateGesture(CompressionType.NONE);
-		if (g == null)
-			return g;
-		
-		log.clear();
-		g.Name = "Gesture "+gesture.size()+ " (generated)";
-		System.out.println(g);
-		return g;
-	}
-	private void processRecording(){
-		GestureController g;
-		if ((compressionMask & CompressionType.NONE.getMask()) != 0){
-			g = compressRecord(CompressionType.NONE);
-			if (g != null){
-				gesture.add(g);
-				System.out.println("Gesture "+gesture.size()+" generated");
-			}
-			else
-				return;
+	/**
+	 * Starts reading the camera on its own thread along with a thread
+	 * checking gestures and a thread recording, all fed from ring.
+	 */
+	private void startCapture(){
+		//the projection of context, frames may hold real world positions
+		PVector real = new PVector(0, 0, 1000), proj = new PVector();
+		context.convertRealWorldToProjective(real, proj);
+		projCenterX = proj.x;
+		projCenterY = proj.y;
+		real.set(1000, 1000, 1000);
+		context.convertRealWorldToProjective(real, proj);
+		projScaleX = proj.x-projCenterX;
+		projScaleY = proj.y-projCenterY;
+
+		Set<Integer> all = new TreeSet<Integer>();
+		all.addAll(Skeleton.getAllLeft());
+		all.addAll(Skeleton.getAllRight());
+		all.addAll(Skeleton.getAllCenter());
+		int joints[] = new int[all.size()];
+		int i=0;
+		for (Integer j : all){
+			joints[i++] = j;
 		}
 
-		if ((compressionMask & CompressionType.SIMPLE.getMask()) != 0){
-			g = compressRecord(CompressionType.SIMPLE);
-			if (g != null){
-				gesture.add(g);
-				System.out.println("Gesture "+gesture.size()+" generated");
-			}
-			else
-				return;
-		}
-
-		if ((compressionMask & CompressionType.AVG.getMask()) != 0){
-			g = compressRecord(CompressionType.AVG);
-			if (g != null){
-				gesture.add(g);
-				System.out.println("Gesture "+gesture.size()+" generated");
-			}
-			else
-				return;
+		ring = new FrameRing();
+		capture = new SkeletonCapture(context, ring, joints);
+		recognizer = new RecognitionConsumer(ring, gesture);
+		recorder = new RecordingConsumer(ring, jR);
+		recognizer.start("Recognition");
+		recorder.start("Recording");
+		capture.start();
+	}
+	/**
+	 * Records jR into log a single time and adds a gesture of each type in
+	 * compressionMask to gesture, every type is generated from the same pass.
+	 */
+	private void processRecording(){
+		synchronized (jR){
+			log.record(jR);
 		}
-
-		if ((compressionMask & CompressionType.DBL_AVG.getMask()) != 0){
-			g = compressRecord(CompressionType.DBL_AVG);
-			if (g != null){
-				gesture.add(g);
-				System.out.println("Gesture "+gesture.size()+" generated");
-			}
-			else
-				return;
+		Map<CompressionType, GestureController> generated = log.generateGestures(compressionMask);
+		log.clear();
+		if (generated == null)
+			return;
+		
+		for (CompressionType type : generated.keySet()){
+			GestureController g = generated.get(type);
+			g.Name = "Gesture "+gesture.size()+ " ("+type+")";
+			System.out.println(g);
+			gesture.add(g);
+			System.out.println("Gesture "+gesture.size()+" generated");
 		}
 
 //		jR.clear();
@@ -600,6 +714,8 @@ public class Main extends PApplet{
 	{
 		println("onNewUser - userId: " + userId);
 		println("  start pose detection");
+		gesture.addUser(userId);
+		users.add(userId);
 
 		if(autoCalib)
 			context.requestCalibrationSkeleton(userId,true);
@@ -610,6 +726,8 @@ public class Main extends PApplet{
 	public void onLostUser(int userId)
 	{
 		println("onLostUser - userId: " + userId);
+		gesture.removeUser(userId);
+		users.remove(userId);
 	}
 
 	public void onExitUser(int userId)
@@ -660,10 +778,14 @@ public class Main extends PApplet{
 	}
 	public int width(){
 //		return 500;
-		return context.depthWidth();
+		if (depthWidth == 0)
+			depthWidth = context.depthWidth();
+		return depthWidth;
 	}
 	public int height(){
 //		return 500;
-		return context.depthHeight();
+		if (depthHeight == 0)
+			depthHeight = context.depthHeight();
+		return depthHeight;
 	}
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package controller;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Scanner;
 
@@ -266,8 +269,8 @@ class Euclidean implements Serializable{
 	 * 		Average of all Euclideans in c
 	 */
 	static Euclidean average(Collection<Euclidean> c){
-		//new empty Euclidean
-		Euclidean a = new Euclidean();
+		//new empty sum, a Vector3 is used so the running total is not boxed
+		Vector3 a = new Vector3();
 		
 		//for all elements in c translate e by that value, in other words
 		//add all the coordinates together.
@@ -278,11 +281,19 @@ class Euclidean implements Serializable{
 		//divided by the number of elements that are in the collection
 		//as scale is a multiply operation the value must be the inverse to 
 		//divide
-		Double inv = 1.0/c.size();
+		double inv = 1.0/c.size();
 		
 		//divide a by the size of the collection
 		a.scale(inv);
-		return a;
+		return a.toEuclidean();
+	}
+	/**
+	 * @return
+	 * 		New Vector3 with the values of this
+	 * @see Vector3
+	 */
+	Vector3 toVector3(){
+		return new Vector3(this);
 	}
 	/**
 	 * Compares the coordinates of this with the coordinates of o. The comparison
@@ -424,6 +435,15 @@ class Euclidean implements Serializable{
 	public static Double getEpsilon(){
 		return Epsilon.doubleValue();
 	}
+	/**
+	 * Primitive version of {@link #getEpsilon()} for use in matching code
+	 * that is run every frame.
+	 * @return
+	 * 	double value of {@link #Epsilon}
+	 */
+	static double epsilon(){
+		return Epsilon;
+	}
 	/**
 	 * Changes {@link #Epsilon} by the value of delta.
 	 * @param delta - Amount to change Epsilon by
@@ -435,6 +455,14 @@ class Euclidean implements Serializable{
 	public static Double getUnitSize(){
 		return unitSize.doubleValue();
 	}
+	/**
+	 * Primitive version of {@link #getUnitSize()} for use in code that is
+	 * run every frame.
+	 * @return double value of unitSize
+	 */
+	static double unitSize(){
+		return unitSize;
+	}
 	/**
 	 * Changes unitSize by delta (unitSize += delta).
 	 * @param delta value to change unitSize by
@@ -468,12 +496,26 @@ class Euclidean implements Serializable{
 		return e;
 	}
 	public String toXML(){
-		String content = new String();
-		content += "<"+classTag+">"+'\n';
-		content += xmlStatics.createElement("x", x.toString());
-		content += xmlStatics.createElement("y", y.toString());
-		content += xmlStatics.createElement("z", z.toString());
-		content += "</"+classTag+">"+'\n';
-		return content;
+		StringWriter w = new StringWriter();
+		try {
+			writeXML(w);
+		} catch (IOException e) {
+			//a StringWriter never throws
+			throw new IllegalStateException(e);
+		}
+		return w.toString();
+	}
+	/**
+	 * Writes the same xml as {@link #toXML()} to w.
+	 * @param w - Writer to write to
+	 * @throws IOException
+	 * 		If w fails
+	 */
+	public void writeXML(Writer w) throws IOException{
+		w.write("<"+classTag+">"+'\n');
+		xmlStatics.writeElement(w, "x", x.toString());
+		xmlStatics.writeElement(w, "y", y.toString());
+		xmlStatics.writeElement(w, "z", z.toString());
+		w.write("</"+classTag+">"+'\n');
 	}
 }
\ No newline at end of file